@@ -1,7 +1,9 @@
 package solcolator.io.readers;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 import org.apache.solr.common.util.NamedList;
 import solcolator.io.api.IQueryReader;
 import solcolator.io.api.SolcolatorQuery;
@@ -13,9 +15,11 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -34,8 +38,21 @@ import java.util.stream.Collectors;
 			"query_id": "1",
 			"query_name": "test",
 			"query": "q=price:[100 TO 200]"
+		},
+		{
+			"query_id": "2",
+			"query_name": "templated",
+			"template": "category_brand",
+			"params": { "c": "shoes", "b": "nike" }
+		},
+		{
+			"query_id": "3",
+			"query_name": "routed",
+			"query": "q=title:shoes",
+			"metadata": { "marketplace": "us" }
 		}
    ]
+ * Query metadata (optional) is added to the request handler metadata of the query
  */
 public class FileReader implements IQueryReader {
 	public static final String FILE_PATH = "filePath";
@@ -72,7 +89,7 @@ public class FileReader implements IQueryReader {
 			
 			solcolatorQueries = new ArrayList<>(queriesObjects.length);
 			for (FileQueryObject obj : queriesObjects) {
-				solcolatorQueries.add(new SolcolatorQuery(obj.query_id, obj.query_name, obj.query, reqHandlerMetadata));
+				solcolatorQueries.add(toSolcolatorQuery(obj, reqHandlerMetadata));
 			}			
 		} catch (Exception e) {
 			throw new ExceptionInInitializerError(String.format("Failed to read queries from file %s due to %s", filePath, e));
@@ -81,6 +98,52 @@ public class FileReader implements IQueryReader {
 		return solcolatorQueries;
 	}
 
+	/**
+	 * Stream queries from the file, only the current chunk is kept in memory
+	 */
+	@Override
+	public void readQueriesInChunks(Map<String, String> reqHandlerMetadata, int chunkSize, Consumer<List<SolcolatorQuery>> chunkConsumer) throws IOException {
+		if (file == null) {
+			return;
+		}
+		
+		List<SolcolatorQuery> chunk = new ArrayList<>(chunkSize);
+		String filePath = file.getAbsolutePath();
+		
+		try (JsonReader jsonReader = new JsonReader(Files.newBufferedReader(Paths.get(filePath), StandardCharsets.UTF_8))) {
+			jsonReader.beginArray();
+			
+			while (jsonReader.hasNext()) {
+				FileQueryObject obj = gson.fromJson(jsonReader, FileQueryObject.class);
+				chunk.add(toSolcolatorQuery(obj, reqHandlerMetadata));
+				
+				if (chunk.size() == chunkSize) {
+					chunkConsumer.accept(chunk);
+					chunk = new ArrayList<>(chunkSize);
+				}
+			}
+			
+			jsonReader.endArray();
+		} catch (JsonParseException | IllegalStateException e) {
+			throw new IOException(String.format("Failed to read queries from file %s due to %s", filePath, e), e);
+		}
+		
+		if (!chunk.isEmpty()) {
+			chunkConsumer.accept(chunk);
+		}
+	}
+	
+	private static SolcolatorQuery toSolcolatorQuery(FileQueryObject obj, Map<String, String> reqHandlerMetadata) {
+		Map<String, String> queryMetadata = reqHandlerMetadata;
+		
+		if (obj.metadata != null && !obj.metadata.isEmpty()) {
+			queryMetadata = reqHandlerMetadata == null ? new HashMap<>() : new HashMap<>(reqHandlerMetadata);
+			queryMetadata.putAll(obj.metadata);
+		}
+		
+		return new SolcolatorQuery(obj.query_id, obj.query_name, obj.query, queryMetadata, obj.template, obj.params);
+	}
+
 	//TODO: remove queryName from signature
 	//TODO: return Optional.of(SolcolatorQuery) instead of throwing exceptions
 	public SolcolatorQuery readByQueryId(final String queryId, String queryName, Map<String, String> reqHandlerMetadata) throws IOException {
@@ -104,6 +167,9 @@ public class FileReader implements IQueryReader {
 		public String query_id;
 		public String query_name;
 		public String query;
+		public String template;
+		public Map<String, String> params;
+		public Map<String, String> metadata;
 	}
 
 	public File getFile() {
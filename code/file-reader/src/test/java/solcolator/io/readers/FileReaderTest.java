@@ -6,7 +6,10 @@ import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
@@ -21,6 +24,8 @@ class FileReaderTest {
   private static final String NO_FILE = "nonexistingFile";
   private static final String QUERY_FILE = "testQueryFile.json";
   private static final String MALFORMED_FILE = "malformedQueryFile.json";
+  private static final String TEMPLATED_FILE = "templatedQueryFile.json";
+  private static final String METADATA_FILE = "metadataQueryFile.json";
   private static final int TEST_QUERY_COUNT = 4;
 
   @Test()
@@ -64,6 +69,14 @@ class FileReaderTest {
     assertTrue(exception.getMessage().contains("JsonSyntaxException"));
   }
 
+  @Test
+  void shouldReadQueriesInChunks() throws IOException {
+    var fileReader = createTestFileReader(QUERY_FILE);
+    var chunkSizes = new ArrayList<Integer>();
+    fileReader.readQueriesInChunks(Collections.singletonMap("key", "value"), 3, chunk -> chunkSizes.add(chunk.size()));
+    assertEquals(List.of(3, TEST_QUERY_COUNT - 3), chunkSizes);
+  }
+
   @Test
   void shouldReadByQueryId() throws IOException {
     var fileReader = createTestFileReader(QUERY_FILE);
@@ -72,6 +85,23 @@ class FileReaderTest {
     assertEquals("test2", query.getQueryName());
   }
 
+  @Test
+  void shouldReadTemplatedQuery() {
+    var fileReader = createTestFileReader(TEMPLATED_FILE);
+    var query = fileReader.readAllQueries(Collections.singletonMap("key", "value")).get(0);
+    assertTrue(query.isTemplated());
+    assertEquals("category_brand", query.getTemplateName());
+    assertEquals(Map.of("c", "shoes", "b", "nike"), query.getTemplateParams());
+  }
+
+  @Test
+  void shouldAddQueryMetadataToRequestHandlerMetadata() {
+    var fileReader = createTestFileReader(METADATA_FILE);
+    var queries = fileReader.readAllQueries(Collections.singletonMap("key", "value"));
+    assertEquals(Map.of("key", "value", "marketplace", "us"), queries.get(0).getQueryMetadata());
+    assertEquals(Map.of("key", "value"), queries.get(1).getQueryMetadata());
+  }
+
   @Test
   void shouldThrowExceptionIfQueryIdNotFound() {
     var fileReader = createTestFileReader(QUERY_FILE);
@@ -3,6 +3,7 @@ package solcolator.io.api;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.apache.solr.common.util.NamedList;
 
@@ -15,4 +16,20 @@ public interface IQueryReader extends AutoCloseable{
 	List<SolcolatorQuery> readAllQueries(Map<String, String> reqHandlerMetadata) throws IOException;
 	
 	SolcolatorQuery readByQueryId(String queryId, String queryName, Map<String, String> reqHandlerMetadata) throws IOException;
+	
+	/**
+	 * Read all queries chunk by chunk, so they can be loaded while the rest is still read.
+	 * By default all queries are read at once and split into chunks, readers that can stream their source should override it
+	 * @param reqHandlerMetadata - request handler metadata (default args)
+	 * @param chunkSize - max number of queries in a chunk
+	 * @param chunkConsumer - called with every chunk in the reading order
+	 * @throws IOException
+	 */
+	default void readQueriesInChunks(Map<String, String> reqHandlerMetadata, int chunkSize, Consumer<List<SolcolatorQuery>> chunkConsumer) throws IOException {
+		List<SolcolatorQuery> queries = readAllQueries(reqHandlerMetadata);
+		
+		for (int from = 0; from < queries.size(); from += chunkSize) {
+			chunkConsumer.accept(queries.subList(from, Math.min(from + chunkSize, queries.size())));
+		}
+	}
 }
@@ -7,12 +7,24 @@ public class SolcolatorQuery {
 	private final String queryName;
 	private final String query;
 	private final Map<String, String> queryMetadata;
+	private final String templateName;
+	private final Map<String, String> templateParams;
 	
 	public SolcolatorQuery(String queryId, String queryName, String query, Map<String, String> queryMetadata) {
+		this(queryId, queryName, query, queryMetadata, null, null);
+	}
+	
+	/**
+	 * Templated query: the query is given by a template (see templates in the processor config) and values of its params
+	 */
+	public SolcolatorQuery(String queryId, String queryName, String query, Map<String, String> queryMetadata,
+			String templateName, Map<String, String> templateParams) {
 		this.queryId = queryId;
 		this.queryName = queryName;
 		this.query = query;
 		this.queryMetadata = queryMetadata;
+		this.templateName = templateName;
+		this.templateParams = templateParams;
 	}
 	
 	public String getQueryId() {
@@ -30,4 +42,16 @@ public class SolcolatorQuery {
 	public Map<String, String> getQueryMetadata() {
 		return queryMetadata;
 	}
+
+	public String getTemplateName() {
+		return templateName;
+	}
+
+	public Map<String, String> getTemplateParams() {
+		return templateParams;
+	}
+
+	public boolean isTemplated() {
+		return templateName != null;
+	}
 }
@@ -0,0 +1,158 @@
+package solcolator.common;
+
+import org.apache.solr.common.util.NamedList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded executors of matching with named threads:
+ * 		batch executor - matches whole batches (the update returns before its batch is matched), at most queueSize batches
+ * 			wait for a thread. When the queue is full, the update waits for a place up to the submit timeout and is rejected after it,
+ * 			so indexing slows down instead of pending batches filling the heap
+ * 		matcher executor - runs candidate queries of batches (see LuwakMatchStrategy), it's separate from the batch executor,
+ * 			so a matched batch never waits for a thread held by another batch
+ * 		partition executor - runs monitor partitions of batches (see PartitionedMonitor), every lane has its own one,
+ * 			so partitions of a realtime batch never wait behind partitions of bulk batches
+ */
+public class MatchExecutor {
+	private final static Logger log = LoggerFactory.getLogger(MatchExecutor.class);
+	private final ThreadPoolExecutor batchExecutor;
+	private final ThreadPoolExecutor matcherExecutor;
+	private final ThreadPoolExecutor partitionExecutor;
+	private final Semaphore batchPermits;			// running and queued batches
+	private final int queueSize;
+	private final long submitTimeoutMs;
+	private final LongAdder blockedBatches = new LongAdder();
+	private final LongAdder rejectedBatches = new LongAdder();
+
+	/**
+	 * @param name - name of the executor threads (solcolator-[name]-match-batch-N)
+	 * @param batchThreads - number of batches are matched concurrently
+	 * @param queueSize - max number of batches wait for matching
+	 * @param matcherThreads - number of threads run candidate queries of all batches
+	 * @param partitionThreads - number of threads run monitor partitions of all batches
+	 * @param submitTimeoutMs - max time an update waits for a place in the full queue (0 - it's rejected at once)
+	 */
+	public MatchExecutor(String name, int batchThreads, int queueSize, int matcherThreads, int partitionThreads, long submitTimeoutMs) {
+		this.batchExecutor = new ThreadPoolExecutor(batchThreads, batchThreads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+				new NamedThreadFactory(String.format("solcolator-%s-match-batch", name)));
+		this.matcherExecutor = new ThreadPoolExecutor(matcherThreads, matcherThreads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+				new NamedThreadFactory(String.format("solcolator-%s-matcher", name)));
+		this.partitionExecutor = new ThreadPoolExecutor(partitionThreads, partitionThreads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+				new NamedThreadFactory(String.format("solcolator-%s-monitor-partition", name)));
+		this.batchPermits = new Semaphore(batchThreads + queueSize);
+		this.queueSize = queueSize;
+		this.submitTimeoutMs = submitTimeoutMs;
+	}
+
+	/**
+	 * Submit batch for matching, waits for a place in the queue if it's full
+	 * @param batchTask - matching of a batch
+	 * @throws RejectedExecutionException if the queue is still full after the submit timeout
+	 * @throws InterruptedException
+	 */
+	public void submitBatch(Runnable batchTask) throws InterruptedException {
+		reserveBatch();
+		executeBatch(batchTask);
+	}
+
+	/**
+	 * Reserve a place in the queue for a batch is still collected (see MicroBatcher), waits for it if the queue is full.
+	 * The reservation is used by executeBatch or given back by cancelReservation
+	 * @throws RejectedExecutionException if the queue is still full after the submit timeout
+	 * @throws InterruptedException
+	 */
+	public void reserveBatch() throws InterruptedException {
+		if (!batchPermits.tryAcquire()) {
+			blockedBatches.increment();
+
+			if (!batchPermits.tryAcquire(submitTimeoutMs, TimeUnit.MILLISECONDS)) {
+				rejectedBatches.increment();
+
+				throw new RejectedExecutionException(String.format("Match queue is full (%d batches) for %d ms", queueSize, submitTimeoutMs));
+			}
+		}
+	}
+
+	public void cancelReservation() {
+		batchPermits.release();
+	}
+
+	/**
+	 * Execute batch in the place was reserved for it
+	 * @param batchTask - matching of a batch
+	 */
+	public void executeBatch(Runnable batchTask) {
+		try {
+			batchExecutor.execute(() -> {
+				try {
+					batchTask.run();
+				} finally {
+					batchPermits.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			batchPermits.release();								// the executor is shut down
+
+			throw e;
+		}
+	}
+
+	/**
+	 * @return executor of candidate queries of matched batches
+	 */
+	public ExecutorService getMatcherExecutor() {
+		return matcherExecutor;
+	}
+
+	/**
+	 * @return executor of monitor partitions of matched batches
+	 */
+	public ExecutorService getPartitionExecutor() {
+		return partitionExecutor;
+	}
+
+	public NamedList<Object> toNamedList() {
+		NamedList<Object> stats = new NamedList<>();
+		stats.add("batchThreads", batchExecutor.getCorePoolSize());
+		stats.add("queueDepth", batchExecutor.getQueue().size());
+		stats.add("queueSize", queueSize);
+		stats.add("activeBatches", batchExecutor.getActiveCount());
+		stats.add("completedBatches", batchExecutor.getCompletedTaskCount());
+		stats.add("blockedBatches", blockedBatches.sum());
+		stats.add("rejectedBatches", rejectedBatches.sum());
+		stats.add("activeMatcherThreads", matcherExecutor.getActiveCount());
+		stats.add("activePartitionThreads", partitionExecutor.getActiveCount());
+
+		return stats;
+	}
+
+	/**
+	 * Wait for queued batches to be matched and stop the executors
+	 */
+	public void shutdown() {
+		try {
+			batchExecutor.shutdown();
+			batchExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			log.error("Stopping of match executor is interrupted");
+		} finally {
+			if (!batchExecutor.isTerminated()) {
+				log.error("Stopping of match executor is interrupted: cancel non-finished batches");
+			}
+
+			batchExecutor.shutdownNow();
+			matcherExecutor.shutdownNow();
+			partitionExecutor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package solcolator.common;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Lanes of matching, every lane has its own executors and micro batcher, so updates of one lane never wait
+ * behind batches of the other:
+ * 		realtime - fresh documents, their matches are expected within the micro batch latency
+ * 		bulk - reindexing, its documents may be sampled or not matched at all
+ * An update is tagged by the solcolator.lane request param, otherwise by the lane of the update chain (see defaultMatchLane)
+ */
+public enum MatchLane {
+	REALTIME,
+	BULK;
+
+	public static final String LANE_PARAM = "solcolator.lane";
+
+	/**
+	 * If given lane exists, function will return its enum value otherwise will throw exception.
+	 * Function is case insensitive to value of kindName
+	 * @param kindName
+	 * @return enum value of kind name or exception
+	 * @throws Exception
+	 */
+	public static MatchLane get(String kindName) throws Exception {
+		for (MatchLane kind : MatchLane.values()) {
+			if (kind.name().equalsIgnoreCase(kindName)) {
+				return kind;
+			}
+		}
+
+		throw new Exception(String.format("Not existing match lane - %s. Legal kinds: %s",
+				kindName, Arrays.asList(MatchLane.values())));
+	}
+
+	/**
+	 * @return lower case name of the lane (for thread names and stats)
+	 */
+	public String getName() {
+		return name().toLowerCase(Locale.ROOT);
+	}
+}
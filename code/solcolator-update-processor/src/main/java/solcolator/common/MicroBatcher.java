@@ -0,0 +1,233 @@
+package solcolator.common;
+
+import org.apache.solr.common.util.NamedList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Collects documents of concurrent updates to shared batches, so many small updates are matched as one batch.
+ * A batch is matched (see MatchExecutor) when it reaches the batch size limit, its max bytes or its max latency, whichever is first.
+ * Documents of a huge update are split to several batches, which are matched concurrently and write their results
+ * as soon as they are matched, so memory of pending documents is bounded by the match queue instead of the update size.
+ * The size limit adapts to the target match time: it shrinks when batches are matched slower than the target
+ * and grows when full batches are matched much faster.
+ * The update opening a batch reserves its place in the match queue, so it waits (or is rejected) when the queue is full,
+ * while updates joining an open batch never wait.
+ */
+public class MicroBatcher<T> {
+	private final static Logger log = LoggerFactory.getLogger(MicroBatcher.class);
+	private final static double SHRINK_FACTOR = 0.75;
+	private final static double GROW_FACTOR = 1.25;
+
+	private final MatchExecutor matchExecutor;
+	private final Consumer<List<T>> batchMatcher;
+	private final ToLongFunction<T> weigher;
+	private final int maxBatchSize;
+	private final long maxBatchBytes;
+	private final long maxLatencyMs;
+	private final long targetMatchMs;
+	private final ScheduledExecutorService timer;
+	private final Object lock = new Object();
+	private final LongAdder sizeFlushes = new LongAdder();
+	private final LongAdder deadlineFlushes = new LongAdder();
+	private Batch<T> pending;							// batch is collected (guarded by lock)
+	private volatile int batchSizeLimit;
+
+	/**
+	 * @param name - name of the timer thread (solcolator-[name]-micro-batch)
+	 * @param matchExecutor - executor of matched batches
+	 * @param batchMatcher - matches a batch
+	 * @param weigher - estimated bytes of a document
+	 * @param maxBatchSize - max number of documents in a batch
+	 * @param maxBatchBytes - max estimated bytes of documents in a batch
+	 * @param maxLatencyMs - max time the first document of a batch waits for the others (0 - every update is a batch)
+	 * @param targetMatchMs - target time of matching a batch
+	 */
+	public MicroBatcher(String name, MatchExecutor matchExecutor, Consumer<List<T>> batchMatcher, ToLongFunction<T> weigher, int maxBatchSize,
+			long maxBatchBytes, long maxLatencyMs, long targetMatchMs) {
+		this.timer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory(String.format("solcolator-%s-micro-batch", name)));
+		this.matchExecutor = matchExecutor;
+		this.batchMatcher = batchMatcher;
+		this.weigher = weigher;
+		this.maxBatchSize = maxBatchSize;
+		this.maxBatchBytes = maxBatchBytes;
+		this.maxLatencyMs = maxLatencyMs;
+		this.targetMatchMs = targetMatchMs;
+		this.batchSizeLimit = maxBatchSize;
+	}
+
+	/**
+	 * Add documents of an update to the open batch or open a new one, documents which don't fit the batch go to the next one
+	 * @param docs - documents of the update
+	 * @throws RejectedExecutionException if a new batch has no place in the match queue after the submit timeout
+	 * @throws InterruptedException
+	 */
+	public void add(List<T> docs) throws InterruptedException {
+		for (T doc : docs) {
+			add(doc);
+		}
+
+		if (maxLatencyMs == 0) {						// the update is a batch
+			List<T> batch;
+
+			synchronized (lock) {
+				batch = take();
+			}
+
+			if (batch != null) {
+				execute(batch);
+			}
+		}
+	}
+
+	private void add(T doc) throws InterruptedException {
+		List<T> fullBatch = null;
+		boolean isJoined;
+
+		synchronized (lock) {
+			isJoined = pending != null;
+
+			if (isJoined) {
+				fullBatch = append(doc);
+			}
+		}
+
+		if (!isJoined) {
+			matchExecutor.reserveBatch();
+
+			synchronized (lock) {
+				if (pending != null) {										// another update opened a batch meanwhile
+					matchExecutor.cancelReservation();
+				} else {
+					Batch<T> batch = new Batch<>();
+					pending = batch;
+
+					if (maxLatencyMs > 0) {
+						timer.schedule(() -> flushOnDeadline(batch), maxLatencyMs, TimeUnit.MILLISECONDS);
+					}
+				}
+
+				fullBatch = append(doc);
+			}
+		}
+
+		if (fullBatch != null) {
+			execute(fullBatch);
+		}
+	}
+
+	private List<T> append(T doc) {
+		pending.items.add(doc);
+		pending.bytes += weigher.applyAsLong(doc);
+
+		if (pending.items.size() < batchSizeLimit && pending.bytes < maxBatchBytes) {
+			return null;
+		}
+
+		sizeFlushes.increment();
+
+		return take();
+	}
+
+	private List<T> take() {
+		if (pending == null) {
+			return null;
+		}
+
+		List<T> batch = pending.items;
+		pending = null;
+
+		return batch;
+	}
+
+	private void flushOnDeadline(Batch<T> batch) {
+		synchronized (lock) {
+			if (pending != batch) {										// the batch was already flushed by its size
+				return;
+			}
+
+			pending = null;
+		}
+
+		deadlineFlushes.increment();
+
+		try {
+			execute(batch.items);
+		} catch (RejectedExecutionException e) {
+			log.error(String.format("Batch of %d docs wasn't matched, match executor is shut down", batch.items.size()), e);
+		}
+	}
+
+	private void execute(List<T> batch) {
+		matchExecutor.executeBatch(() -> {
+			long start = System.currentTimeMillis();
+			batchMatcher.accept(batch);
+			adaptBatchSizeLimit(batch.size(), System.currentTimeMillis() - start);
+		});
+	}
+
+	private void adaptBatchSizeLimit(int batchSize, long matchMs) {
+		int limit = batchSizeLimit;
+
+		if (matchMs > targetMatchMs) {
+			batchSizeLimit = Math.max(1, Math.min(limit, (int) (batchSize * SHRINK_FACTOR)));
+		} else if (matchMs < targetMatchMs / 2 && batchSize >= limit) {
+			batchSizeLimit = Math.min(maxBatchSize, (int) (limit * GROW_FACTOR) + 1);
+		}
+	}
+
+	/**
+	 * @return max estimated bytes of documents in a batch
+	 */
+	public long getMaxBatchBytes() {
+		return maxBatchBytes;
+	}
+
+	int getBatchSizeLimit() {
+		return batchSizeLimit;
+	}
+
+	public NamedList<Object> toNamedList() {
+		NamedList<Object> stats = new NamedList<>();
+		stats.add("batchSizeLimit", batchSizeLimit);
+		stats.add("maxBatchSize", maxBatchSize);
+		stats.add("maxBatchBytes", maxBatchBytes);
+		stats.add("maxLatencyMs", maxLatencyMs);
+		stats.add("sizeFlushes", sizeFlushes.sum());
+		stats.add("deadlineFlushes", deadlineFlushes.sum());
+
+		return stats;
+	}
+
+	/**
+	 * Match the open batch and stop the timer (the match executor is shut down after it)
+	 */
+	public void close() {
+		List<T> batch;
+
+		synchronized (lock) {
+			batch = take();
+		}
+
+		timer.shutdownNow();
+
+		if (batch != null) {
+			execute(batch);
+		}
+	}
+
+	private static class Batch<T> {
+		private final List<T> items = new ArrayList<>();
+		private long bytes;
+	}
+}
@@ -0,0 +1,24 @@
+package solcolator.common;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Daemon threads named by their pool (name-1, name-2, ...)
+ */
+public class NamedThreadFactory implements ThreadFactory {
+	private final String name;
+	private final AtomicInteger threadCount = new AtomicInteger();
+
+	public NamedThreadFactory(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public Thread newThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+		thread.setDaemon(true);
+
+		return thread;
+	}
+}
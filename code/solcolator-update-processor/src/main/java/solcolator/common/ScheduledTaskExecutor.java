@@ -10,7 +10,9 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
-
+/**
+ * Runs a task at the target time (UTC) and then repeatedly every interval
+ */
 public class ScheduledTaskExecutor {
 	private final static Logger log = LoggerFactory.getLogger(ScheduledTaskExecutor.class);
 	private final ScheduledExecutorService executorService = Executors.newScheduledThreadPool(1);
@@ -18,29 +20,43 @@ public class ScheduledTaskExecutor {
 	private final int targetHour;
 	private final int targetMin;
 	private final int targetSec;
+	private final long intervalSec;
 	
-	public ScheduledTaskExecutor(IScheduledTask task, int targetHour, int targetMin, int targetSec) {
+	public ScheduledTaskExecutor(IScheduledTask task, int targetHour, int targetMin, int targetSec, long intervalSec) {
 		this.task = task;
 		this.targetHour = targetHour;
 		this.targetMin = targetMin;
 		this.targetSec = targetSec;
+		this.intervalSec = intervalSec;
 	}
 
 	public void startExecutionAt() {
+		startExecution(computeNextDelay(LocalDateTime.now(ZoneId.of("UTC")), targetHour, targetMin, targetSec), intervalSec, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Run the task after the delay and then every period
+	 */
+	void startExecution(long delay, long period, TimeUnit unit) {
 		Runnable taskWrapper = new Runnable() {
 			
 			@Override
 			public void run() {
-				task.scheduledMethod();
+				try {
+					task.scheduledMethod();
+				} catch (Exception e) {
+					log.error("Scheduled task is failed", e);		// an exception would cancel next executions
+				}
 			}
 		};
 		
-		long delay = computeNextDelay(targetHour, targetMin, targetSec);
-		executorService.schedule(taskWrapper, delay, TimeUnit.SECONDS);
+		executorService.scheduleAtFixedRate(taskWrapper, delay, period, unit);
 	}
 
-	private long computeNextDelay(int targetHour, int targetMin, int targetSec) {
-		LocalDateTime localNow = LocalDateTime.now(ZoneId.of("UTC"));
+	/**
+	 * @return seconds from now to the next target time
+	 */
+	static long computeNextDelay(LocalDateTime localNow, int targetHour, int targetMin, int targetSec) {
 		LocalDateTime localNextTarget = localNow.withHour(targetHour).withMinute(targetMin).withSecond(targetSec);
 		
 		if (localNow.compareTo(localNextTarget) > 0) {
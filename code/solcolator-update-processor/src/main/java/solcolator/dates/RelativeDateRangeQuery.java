@@ -0,0 +1,133 @@
+package solcolator.dates;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.NumberType;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.util.DateMathParser;
+import solcolator.filters.FilterBatch;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Objects;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Range clause over a date field relative to NOW (date:[NOW-1DAY TO NOW], date:[NOW/DAY TO *]).
+ * The date math is kept unresolved in the registered query and is resolved when the query is rewritten against
+ * a matched batch, with the timestamp of the batch (see FilterBatch) as NOW. So the query is always accurate
+ * to the batch and never needs to be registered again. Rounding (NOW/DAY) is done in the time zone of the query's TZ param.
+ * The presearcher can't select such a query by its terms, it's selected by the other clauses of the query (or always).
+ */
+public class RelativeDateRangeQuery extends Query {
+	private static final Pattern RANGE = Pattern.compile("([\\w.\\-]+):([\\[{])\\s*(\\S+)\\s+TO\\s+(\\S+)\\s*([\\]}])");
+	private static final String NOW = "NOW";
+	private static final String OPEN_BOUND = "*";
+
+	private final SchemaField field;
+	private final String lower;
+	private final String upper;
+	private final boolean includeLower;
+	private final boolean includeUpper;
+	private final TimeZone timeZone;
+
+	private RelativeDateRangeQuery(SchemaField field, String lower, String upper, boolean includeLower, boolean includeUpper, TimeZone timeZone) {
+		this.field = field;
+		this.lower = lower;
+		this.upper = upper;
+		this.includeLower = includeLower;
+		this.includeUpper = includeUpper;
+		this.timeZone = timeZone;
+	}
+
+	/**
+	 * Parse q/fq clause into relative date range resolved in UTC
+	 * @param clause - q/fq clause
+	 * @param schema - schema of the core
+	 * @return relative date range or null if the clause isn't a range over a date field relative to NOW
+	 */
+	public static RelativeDateRangeQuery parse(String clause, IndexSchema schema) {
+		return parse(clause, schema, DateMathParser.UTC);
+	}
+
+	/**
+	 * Parse q/fq clause into relative date range
+	 * @param clause - q/fq clause
+	 * @param schema - schema of the core
+	 * @param timeZone - time zone the date math is rounded in (TZ param of the query)
+	 * @return relative date range or null if the clause isn't a range over a date field relative to NOW
+	 */
+	public static RelativeDateRangeQuery parse(String clause, IndexSchema schema, TimeZone timeZone) {
+		Matcher rangeMatcher = RANGE.matcher(clause.trim());
+
+		if (!rangeMatcher.matches() || !(rangeMatcher.group(3).contains(NOW) || rangeMatcher.group(4).contains(NOW))) {
+			return null;
+		}
+
+		SchemaField field = schema.getFieldOrNull(rangeMatcher.group(1));
+		if (field == null || field.getType().getNumberType() != NumberType.DATE) {
+			return null;
+		}
+
+		RelativeDateRangeQuery query = new RelativeDateRangeQuery(field, rangeMatcher.group(3), rangeMatcher.group(4),
+				rangeMatcher.group(2).equals("["), rangeMatcher.group(5).equals("]"), timeZone);
+
+		try {
+			query.resolve(new Date());		// validate date math
+		} catch (Exception e) {
+			return null;
+		}
+
+		return query;
+	}
+
+	public String getField() {
+		return field.getName();
+	}
+
+	@Override
+	public Query rewrite(IndexReader reader) throws IOException {
+		Date now = FilterBatch.getNow(reader);
+
+		return resolve(now == null ? new Date() : now);
+	}
+
+	Query resolve(Date now) {
+		return field.getType().getRangeQuery(null, field, resolveBound(lower, now), resolveBound(upper, now), includeLower, includeUpper);
+	}
+
+	private String resolveBound(String bound, Date now) {
+		return OPEN_BOUND.equals(bound) ? null : DateMathParser.parseMath(now, bound, timeZone).toInstant().toString();
+	}
+
+	@Override
+	public void visit(QueryVisitor visitor) {
+		visitor.visitLeaf(this);
+	}
+
+	@Override
+	public String toString(String defaultField) {
+		return String.format("%s:%s%s TO %s%s", field.getName(), includeLower ? "[" : "{", lower, upper, includeUpper ? "]" : "}");
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!sameClassAs(other)) {
+			return false;
+		}
+
+		RelativeDateRangeQuery otherQuery = (RelativeDateRangeQuery) other;
+
+		return field.getName().equals(otherQuery.field.getName()) && lower.equals(otherQuery.lower) && upper.equals(otherQuery.upper)
+				&& includeLower == otherQuery.includeLower && includeUpper == otherQuery.includeUpper && timeZone.equals(otherQuery.timeZone);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(classHash(), field.getName(), lower, upper, includeLower, includeUpper, timeZone);
+	}
+}
@@ -0,0 +1,205 @@
+package solcolator.filters;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.schema.BoolField;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.StrField;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Simple fq clause (status:active, country:"US", price:[100 TO 200]) evaluated directly on the raw values
+ * of SolrInputDocument, without analysis and without the monitor.
+ * Term clauses are supported on string, boolean, numeric and date fields, range clauses on numeric and date fields.
+ * The filter is conservative: a document is rejected only if it surely doesn't match the clause.
+ */
+public class FieldFilter {
+	private static final Pattern TERM = Pattern.compile("([\\w.\\-]+):(?:\"([^\"\\\\]*)\"|([^\\s\"\\\\*?:\\[\\]{}()^~!+&|/]+))");
+	private static final Pattern RANGE = Pattern.compile("([\\w.\\-]+):([\\[{])\\s*(\\S+)\\s+TO\\s+(\\S+)\\s*([\\]}])");
+	private static final String OPEN_BOUND = "*";
+
+	private final String clause;
+	private final SchemaField field;
+	private final Object lower;
+	private final Object upper;
+	private final boolean includeLower;
+	private final boolean includeUpper;
+	private final boolean isTerm;
+
+	private FieldFilter(String clause, SchemaField field, Object lower, Object upper, boolean includeLower, boolean includeUpper, boolean isTerm) {
+		this.clause = clause;
+		this.field = field;
+		this.lower = lower;
+		this.upper = upper;
+		this.includeLower = includeLower;
+		this.includeUpper = includeUpper;
+		this.isTerm = isTerm;
+	}
+
+	/**
+	 * Parse fq clause into field filter
+	 * @param fq - fq clause
+	 * @param schema - schema of the core
+	 * @return field filter or null if the clause isn't simple enough to be evaluated on raw values
+	 */
+	public static FieldFilter parse(String fq, IndexSchema schema) {
+		String clause = fq.trim();
+
+		try {
+			Matcher termMatcher = TERM.matcher(clause);
+			if (termMatcher.matches()) {
+				SchemaField field = getSupportedField(schema, termMatcher.group(1), false);
+				String value = termMatcher.group(2) != null ? termMatcher.group(2) : termMatcher.group(3);
+
+				if (field == null) {
+					return null;
+				}
+
+				Object nativeValue = toNativeType(field, value);
+				return new FieldFilter(clause, field, nativeValue, nativeValue, true, true, true);
+			}
+
+			Matcher rangeMatcher = RANGE.matcher(clause);
+			if (rangeMatcher.matches()) {
+				SchemaField field = getSupportedField(schema, rangeMatcher.group(1), true);
+
+				if (field == null) {
+					return null;
+				}
+
+				return new FieldFilter(clause, field, toBound(field, rangeMatcher.group(3)), toBound(field, rangeMatcher.group(4)),
+						rangeMatcher.group(2).equals("["), rangeMatcher.group(5).equals("]"), false);
+			}
+		} catch (Exception e) {
+			// the clause will be evaluated by the monitor only
+		}
+
+		return null;
+	}
+
+	/**
+	 * @param doc - indexed document
+	 * @return false if the document surely doesn't match the clause
+	 */
+	public boolean accept(SolrInputDocument doc) {
+		Collection<Object> values = doc.getFieldValues(field.getName());
+
+		if (values == null || values.isEmpty()) {
+			return field.getDefaultValue() != null;		// default value is added when the document is indexed
+		}
+
+		for (Object value : values) {
+			try {
+				if (acceptValue(toNativeType(field, value))) {
+					return true;
+				}
+			} catch (Exception e) {
+				return true;								// the value can't be compared, the monitor will decide
+			}
+		}
+
+		return false;
+	}
+
+	private boolean acceptValue(Object value) {
+		if (isTerm && !(value instanceof Number) && !(value instanceof Date)) {
+			return Objects.equals(lower.toString(), value.toString());
+		}
+
+		if (lower != null) {
+			int cmp = compare(value, lower);
+
+			if (cmp < 0 || (cmp == 0 && !includeLower)) {
+				return false;
+			}
+		}
+
+		if (upper != null) {
+			int cmp = compare(value, upper);
+
+			if (cmp > 0 || (cmp == 0 && !includeUpper)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static int compare(Object value, Object bound) {
+		if (value instanceof Date) {
+			return Long.compare(((Date) value).getTime(), ((Date) bound).getTime());
+		}
+
+		Number number = (Number) value;
+		Number boundNumber = (Number) bound;
+		if (isIntegral(number) && isIntegral(boundNumber)) {
+			return Long.compare(number.longValue(), boundNumber.longValue());
+		}
+
+		return Double.compare(number.doubleValue(), boundNumber.doubleValue());
+	}
+
+	private static boolean isIntegral(Number number) {
+		return number instanceof Long || number instanceof Integer;
+	}
+
+	/**
+	 * Native value of a term or a raw value. Booleans are normalized like BoolField indexes them (true if the value starts
+	 * with t, T or 1), since BoolField.toNativeType parses only "true"
+	 */
+	public static Object toNativeType(SchemaField field, Object value) {
+		if (!(field.getType() instanceof BoolField) || value instanceof Boolean) {
+			return field.getType().toNativeType(value);
+		}
+
+		String str = value.toString();
+		char first = str.isEmpty() ? 0 : str.charAt(0);
+
+		return first == 't' || first == 'T' || first == '1';
+	}
+
+	private static Object toBound(SchemaField field, String bound) {
+		return OPEN_BOUND.equals(bound) ? null : field.getType().toNativeType(bound);
+	}
+
+	private static SchemaField getSupportedField(IndexSchema schema, String fieldName, boolean isRange) {
+		SchemaField field = schema.getFieldOrNull(fieldName);
+
+		// values of copy field targets aren't in the SolrInputDocument
+		if (field == null || schema.isCopyFieldTarget(field)) {
+			return null;
+		}
+
+		boolean isNumeric = field.getType().getNumberType() != null;
+		boolean isSupported = isRange ? isNumeric : isNumeric || field.getType() instanceof StrField || field.getType() instanceof BoolField;
+
+		return isSupported ? field : null;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof FieldFilter)) {
+			return false;
+		}
+
+		FieldFilter otherFilter = (FieldFilter) other;
+
+		// bounds are compared too, date math (NOW) of the same clause could be resolved differently
+		return clause.equals(otherFilter.clause) && Objects.equals(lower, otherFilter.lower) && Objects.equals(upper, otherFilter.upper);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(clause, lower, upper);
+	}
+
+	@Override
+	public String toString() {
+		return clause;
+	}
+}
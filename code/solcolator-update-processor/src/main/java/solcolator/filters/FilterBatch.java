@@ -0,0 +1,173 @@
+package solcolator.filters;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.SolrInputDocument;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Documents of a matched batch for evaluating field filters and required fields (see PrefilteredQuery).
+ * Every monitor document of the batch gets the batch id and its ordinal as extra fields, so a query rewritten
+ * against the batch can find the batch and restrict itself to the documents passed its filters.
+ * Results of a filter are computed once per batch and shared by all queries with the same filter.
+ * The batch also fixes the NOW of relative date ranges (see RelativeDateRangeQuery) when it's opened.
+ */
+public class FilterBatch implements AutoCloseable {
+	private static final String BATCH_FIELD = "__solcolator_batch";
+	private static final String ORDINAL_FIELD = "__solcolator_ordinal";
+	private static final Map<String, FilterBatch> idToBatch = new ConcurrentHashMap<>();
+
+	private final String id = UUID.randomUUID().toString();
+	private final List<SolrInputDocument> docs = new ArrayList<>();
+	private final Map<FieldFilter, BitSet> filterToAcceptedDocs = new ConcurrentHashMap<>();
+	private final Map<String, BitSet> fieldToDocs = new HashMap<>();		// filled before the batch is opened
+	private final Map<Set<String>, BitSet> requiredFieldsToAcceptedDocs = new ConcurrentHashMap<>();
+	private final LongAdder rejectedPairs = new LongAdder();
+	private volatile Date now;
+
+	/**
+	 * Add document to the batch, batch fields are added to the monitor document
+	 * @param solrDoc - indexed document
+	 * @param luceneDoc - monitor document built from solrDoc
+	 */
+	public void add(SolrInputDocument solrDoc, Document luceneDoc) {
+		for (IndexableField field : luceneDoc) {
+			fieldToDocs.computeIfAbsent(field.name(), name -> new BitSet()).set(docs.size());
+		}
+
+		luceneDoc.add(new StringField(BATCH_FIELD, id, Store.NO));
+		luceneDoc.add(new StringField(ORDINAL_FIELD, Integer.toString(docs.size()), Store.NO));
+		docs.add(solrDoc);
+	}
+
+	/**
+	 * Make the batch visible for queries are matched against it (must be called before matching)
+	 */
+	public void open() {
+		now = new Date();
+		idToBatch.put(id, this);
+	}
+
+	@Override
+	public void close() {
+		idToBatch.remove(id);
+	}
+
+	/**
+	 * @return number of (query, document) pairs were rejected by filters
+	 */
+	public long getRejectedCount() {
+		return rejectedPairs.sum();
+	}
+
+	/**
+	 * Find the batch of the documents the reader was built from
+	 * @param reader - reader of the monitor documents
+	 * @return the batch or null if the documents aren't of an open batch
+	 * @throws IOException
+	 */
+	static FilterBatch get(IndexReader reader) throws IOException {
+		Terms terms = MultiTerms.getTerms(reader, BATCH_FIELD);
+
+		if (terms == null) {
+			return null;
+		}
+
+		BytesRef batchId = terms.iterator().next();
+
+		return batchId == null ? null : idToBatch.get(batchId.utf8ToString());
+	}
+
+	/**
+	 * @param reader - reader of the monitor documents
+	 * @return timestamp of the batch the reader was built from or null if the documents aren't of an open batch
+	 * @throws IOException
+	 */
+	public static Date getNow(IndexReader reader) throws IOException {
+		FilterBatch batch = get(reader);
+
+		return batch == null ? null : batch.now;
+	}
+
+	int size() {
+		return docs.size();
+	}
+
+	/**
+	 * @param filters - filters of a query
+	 * @param requiredFields - fields a document must have to match the query
+	 * @return ordinals of the documents passed all the filters and have all the required fields
+	 */
+	BitSet accept(List<FieldFilter> filters, Set<String> requiredFields) {
+		BitSet acceptedDocs = new BitSet(docs.size());
+		acceptedDocs.set(0, docs.size());
+
+		if (!requiredFields.isEmpty()) {
+			acceptedDocs.and(requiredFieldsToAcceptedDocs.computeIfAbsent(requiredFields, this::evaluate));
+		}
+
+		for (FieldFilter filter : filters) {
+			acceptedDocs.and(filterToAcceptedDocs.computeIfAbsent(filter, this::evaluate));
+		}
+
+		rejectedPairs.add(docs.size() - acceptedDocs.cardinality());
+
+		return acceptedDocs;
+	}
+
+	/**
+	 * @param acceptedDocs - ordinals of documents
+	 * @return query matches the documents with the ordinals
+	 */
+	Query getOrdinalsQuery(BitSet acceptedDocs) {
+		List<BytesRef> ordinals = new ArrayList<>(acceptedDocs.cardinality());
+
+		for (int ordinal = acceptedDocs.nextSetBit(0); ordinal >= 0; ordinal = acceptedDocs.nextSetBit(ordinal + 1)) {
+			ordinals.add(new BytesRef(Integer.toString(ordinal)));
+		}
+
+		return new TermInSetQuery(ORDINAL_FIELD, ordinals);
+	}
+
+	private BitSet evaluate(Set<String> requiredFields) {
+		BitSet acceptedDocs = new BitSet(docs.size());
+		acceptedDocs.set(0, docs.size());
+
+		for (String field : requiredFields) {
+			acceptedDocs.and(fieldToDocs.getOrDefault(field, new BitSet()));
+		}
+
+		return acceptedDocs;
+	}
+
+	private BitSet evaluate(FieldFilter filter) {
+		BitSet acceptedDocs = new BitSet(docs.size());
+
+		for (int ordinal = 0; ordinal < docs.size(); ordinal++) {
+			if (filter.accept(docs.get(ordinal))) {
+				acceptedDocs.set(ordinal);
+			}
+		}
+
+		return acceptedDocs;
+	}
+}
@@ -0,0 +1,95 @@
+package solcolator.filters;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Query with field filters (simple fq clauses) are evaluated on the raw values of the batch documents
+ * before the query itself. When the query is rewritten against a batch (see FilterBatch) it's restricted to
+ * the documents passed the filters and have all the fields the query requires (see RequiredFields),
+ * and it isn't run at all if no document passed them.
+ * The fq clauses stay in the wrapped query, so matching without a batch is the same.
+ */
+public class PrefilteredQuery extends Query {
+	private final Query query;
+	private final List<FieldFilter> filters;
+	private final Set<String> requiredFields;
+
+	/**
+	 * @param query - parsed query
+	 * @param filters - field filters of the query
+	 * @param requiredFields - fields a document must have to match the query
+	 */
+	public PrefilteredQuery(Query query, List<FieldFilter> filters, Set<String> requiredFields) {
+		this.query = query;
+		this.filters = filters;
+		this.requiredFields = requiredFields;
+	}
+
+	public Query getQuery() {
+		return query;
+	}
+
+	public List<FieldFilter> getFilters() {
+		return filters;
+	}
+
+	public Set<String> getRequiredFields() {
+		return requiredFields;
+	}
+
+	@Override
+	public Query rewrite(IndexReader reader) throws IOException {
+		FilterBatch batch = FilterBatch.get(reader);
+
+		if (batch == null) {
+			return query;
+		}
+
+		BitSet acceptedDocs = batch.accept(filters, requiredFields);
+
+		if (acceptedDocs.isEmpty()) {
+			return new MatchNoDocsQuery(String.format("No document passed filters %s with required fields %s", filters, requiredFields));
+		}
+
+		if (acceptedDocs.cardinality() == batch.size()) {
+			return query;
+		}
+
+		return new BooleanQuery.Builder()
+				.add(query, Occur.MUST)
+				.add(batch.getOrdinalsQuery(acceptedDocs), Occur.FILTER)
+				.build();
+	}
+
+	@Override
+	public void visit(QueryVisitor visitor) {
+		query.visit(visitor);
+	}
+
+	@Override
+	public String toString(String defaultField) {
+		return query.toString(defaultField);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return sameClassAs(other) && query.equals(((PrefilteredQuery) other).query) && filters.equals(((PrefilteredQuery) other).filters)
+				&& requiredFields.equals(((PrefilteredQuery) other).requiredFields);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(classHash(), query, filters, requiredFields);
+	}
+}
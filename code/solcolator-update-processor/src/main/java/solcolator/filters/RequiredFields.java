@@ -0,0 +1,166 @@
+package solcolator.filters;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.IndexOrDocValuesQuery;
+import org.apache.lucene.search.MultiPhraseQuery;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.PointInSetQuery;
+import org.apache.lucene.search.PointRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SynonymQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.solr.query.FilterQuery;
+import org.apache.solr.search.WrappedQuery;
+import solcolator.dates.RelativeDateRangeQuery;
+import solcolator.presearcher.GeoShapeQuery;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Fields a document must have to match a query: fields of its required clauses (MUST/FILTER) and fields common
+ * to all its alternatives (SHOULD clauses of a pure disjunction, disjuncts of DisjunctionMaxQuery).
+ * The fields are conservative: a query of an unknown type doesn't require any field.
+ */
+public final class RequiredFields {
+	private RequiredFields() {
+	}
+
+	/**
+	 * @param query - parsed query
+	 * @return sorted names of the fields required by the query (empty if the query can match any document)
+	 */
+	public static Set<String> of(Query query) {
+		return Collections.unmodifiableSet(new TreeSet<>(collect(query)));
+	}
+
+	private static Set<String> collect(Query query) {
+		if (query instanceof PrefilteredQuery) {
+			return collect(((PrefilteredQuery) query).getQuery());
+		}
+
+		if (query instanceof BoostQuery) {
+			return collect(((BoostQuery) query).getQuery());
+		}
+
+		if (query instanceof ConstantScoreQuery) {
+			return collect(((ConstantScoreQuery) query).getQuery());
+		}
+
+		if (query instanceof IndexOrDocValuesQuery) {
+			return collect(((IndexOrDocValuesQuery) query).getIndexQuery());
+		}
+
+		if (query instanceof WrappedQuery) {
+			return collect(((WrappedQuery) query).getWrappedQuery());
+		}
+
+		if (query instanceof FilterQuery) {
+			return collect(((FilterQuery) query).getQuery());
+		}
+
+		if (query instanceof GeoShapeQuery) {
+			return collect(((GeoShapeQuery) query).getQuery());
+		}
+
+		if (query instanceof TermQuery) {
+			return Set.of(((TermQuery) query).getTerm().field());
+		}
+
+		if (query instanceof SynonymQuery) {
+			return Set.of(((SynonymQuery) query).getField());
+		}
+
+		if (query instanceof PhraseQuery) {
+			return fieldOf(((PhraseQuery) query).getField());
+		}
+
+		if (query instanceof MultiPhraseQuery) {
+			Term[][] termArrays = ((MultiPhraseQuery) query).getTermArrays();
+
+			return termArrays.length == 0 || termArrays[0].length == 0 ? Set.of() : Set.of(termArrays[0][0].field());
+		}
+
+		if (query instanceof MultiTermQuery) {
+			return fieldOf(((MultiTermQuery) query).getField());
+		}
+
+		if (query instanceof PointRangeQuery) {
+			return Set.of(((PointRangeQuery) query).getField());
+		}
+
+		if (query instanceof PointInSetQuery) {
+			return Set.of(((PointInSetQuery) query).getField());
+		}
+
+		if (query instanceof SpanQuery) {
+			return fieldOf(((SpanQuery) query).getField());
+		}
+
+		if (query instanceof RelativeDateRangeQuery) {
+			return Set.of(((RelativeDateRangeQuery) query).getField());
+		}
+
+		if (query instanceof DisjunctionMaxQuery) {
+			return intersect(((DisjunctionMaxQuery) query).getDisjuncts().stream().map(RequiredFields::collect).collect(Collectors.toList()));
+		}
+
+		if (query instanceof BooleanQuery) {
+			return collect((BooleanQuery) query);
+		}
+
+		return Set.of();
+	}
+
+	private static Set<String> collect(BooleanQuery query) {
+		Set<String> fields = new HashSet<>();
+		boolean hasRequiredClauses = false;
+
+		for (BooleanClause clause : query.clauses()) {
+			if (clause.getOccur() == Occur.MUST || clause.getOccur() == Occur.FILTER) {
+				fields.addAll(collect(clause.getQuery()));
+				hasRequiredClauses = true;
+			}
+		}
+
+		if (hasRequiredClauses) {
+			return fields;
+		}
+
+		List<Set<String>> alternatives = query.clauses().stream()
+				.filter(clause -> clause.getOccur() == Occur.SHOULD)
+				.map(clause -> collect(clause.getQuery()))
+				.collect(Collectors.toList());
+
+		return intersect(alternatives);
+	}
+
+	private static Set<String> intersect(List<Set<String>> alternatives) {
+		if (alternatives.isEmpty()) {
+			return Set.of();
+		}
+
+		Set<String> fields = new HashSet<>(alternatives.get(0));
+		for (Set<String> alternative : alternatives) {
+			fields.retainAll(alternative);
+		}
+
+		return fields;
+	}
+
+	private static Set<String> fieldOf(String field) {
+		return field == null ? Set.of() : Set.of(field);
+	}
+}
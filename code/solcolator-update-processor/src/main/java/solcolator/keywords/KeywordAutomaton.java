@@ -0,0 +1,131 @@
+package solcolator.keywords;
+
+import org.apache.lucene.util.BytesRef;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Aho-Corasick automaton over token sequences (terms and phrases of a field).
+ * A token stream is matched against all the patterns in one pass.
+ * Tokens of the same position (synonyms) are handled by tracking a set of states instead of a single one.
+ */
+class KeywordAutomaton {
+	private static final int ROOT = 0;
+
+	private final List<Map<BytesRef, Integer>> transitions = new ArrayList<>();
+	private final List<List<String>> outputs = new ArrayList<>();
+	private int[] fail;
+	private int[] outputLink;	// nearest state with outputs on the fail chain (-1 if none)
+
+	/**
+	 * @param patterns - map between pattern (sequence of terms) and ids of the queries contain the pattern
+	 */
+	KeywordAutomaton(Map<List<BytesRef>, Set<String>> patterns) {
+		newState();
+
+		for (Map.Entry<List<BytesRef>, Set<String>> pattern : patterns.entrySet()) {
+			int state = ROOT;
+
+			for (BytesRef term : pattern.getKey()) {
+				Integer next = transitions.get(state).get(term);
+
+				if (next == null) {
+					next = newState();
+					transitions.get(state).put(term, next);
+				}
+
+				state = next;
+			}
+
+			outputs.get(state).addAll(pattern.getValue());
+		}
+
+		buildLinks();
+	}
+
+	/**
+	 * Start matching of a token stream
+	 * @return initial states
+	 */
+	Set<Integer> start() {
+		Set<Integer> states = new HashSet<>();
+		states.add(ROOT);
+
+		return states;
+	}
+
+	/**
+	 * Move all the states by the tokens of the next position and collect outputs of the new states
+	 * @param states - current states
+	 * @param tokens - tokens of the next position (more than one for synonyms)
+	 * @param matchedQueryIds - collector of matched query ids
+	 * @return new states
+	 */
+	Set<Integer> step(Set<Integer> states, Collection<BytesRef> tokens, Set<String> matchedQueryIds) {
+		Set<Integer> nextStates = new HashSet<>();
+
+		for (int state : states) {
+			for (BytesRef token : tokens) {
+				int nextState = next(state, token);
+				nextStates.add(nextState);
+
+				for (int output = outputs.get(nextState).isEmpty() ? outputLink[nextState] : nextState; output != -1; output = outputLink[output]) {
+					matchedQueryIds.addAll(outputs.get(output));
+				}
+			}
+		}
+
+		return nextStates;
+	}
+
+	int size() {
+		return transitions.size();
+	}
+
+	private int next(int state, BytesRef token) {
+		while (state != ROOT && !transitions.get(state).containsKey(token)) {
+			state = fail[state];
+		}
+
+		return transitions.get(state).getOrDefault(token, ROOT);
+	}
+
+	private int newState() {
+		transitions.add(new HashMap<>());
+		outputs.add(new ArrayList<>());
+
+		return transitions.size() - 1;
+	}
+
+	private void buildLinks() {
+		fail = new int[transitions.size()];
+		outputLink = new int[transitions.size()];
+		outputLink[ROOT] = -1;
+		Deque<Integer> queue = new ArrayDeque<>();
+
+		for (int child : transitions.get(ROOT).values()) {
+			fail[child] = ROOT;
+			outputLink[child] = -1;
+			queue.add(child);
+		}
+
+		while (!queue.isEmpty()) {
+			int state = queue.poll();
+
+			for (Map.Entry<BytesRef, Integer> transition : transitions.get(state).entrySet()) {
+				int child = transition.getValue();
+				fail[child] = next(fail[state], transition.getKey());
+				outputLink[child] = outputs.get(fail[child]).isEmpty() ? outputLink[fail[child]] : fail[child];
+				queue.add(child);
+			}
+		}
+	}
+}
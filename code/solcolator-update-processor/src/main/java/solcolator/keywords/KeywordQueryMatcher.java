@@ -0,0 +1,405 @@
+package solcolator.keywords;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SynonymQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.StrField;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import solcolator.common.NamedThreadFactory;
+import solcolator.filters.PrefilteredQuery;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fast path for keyword queries (red shoes, title:"red shoes").
+ * Keyword queries aren't registered in the monitor: their terms and phrases are compiled to an Aho-Corasick automaton
+ * per field, and all of them are matched in one pass over the field's token stream of a document.
+ *
+ * Keyword query is a TermQuery, SynonymQuery, PhraseQuery (no slop, consecutive positions) or a disjunction of them
+ * (BooleanQuery of SHOULD clauses, DisjunctionMaxQuery), boosts are ignored. Its fields must be text or string fields
+ * which aren't copyField targets, since documents are analyzed from their raw values. All other queries go to the monitor.
+ * Automatons are rebuilt in the background after queries were changed (changes of a bulk update are rebuilt together).
+ * Until the new ones are published, queries changed since the last build are matched by small automatons of the changes
+ * only, so a registered query is matched by the next document already.
+ */
+public class KeywordQueryMatcher {
+	private static final Logger log = LoggerFactory.getLogger(KeywordQueryMatcher.class);
+	private static final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("solcolator-keyword-automaton"));
+
+	private final IndexSchema schema;
+	private final Map<String, Map<String, List<List<BytesRef>>>> queryIdToFieldPatterns = new HashMap<>();	// guarded by this
+	private final Map<String, Long> changedQueryIdToVersion = new HashMap<>();	// guarded by this, changes the built automatons don't have
+	private final Object buildLock = new Object();					// automatons are published in the order of their snapshots
+	private final AtomicBoolean isRebuildScheduled = new AtomicBoolean();
+	private long version;											// guarded by this
+	private Map<String, KeywordAutomaton> builtAutomatons = Collections.emptyMap();	// guarded by this
+	private volatile Automatons automatons = new Automatons(Collections.emptyMap(), Collections.emptySet(), Collections.emptyMap());	// null if changed
+
+	public KeywordQueryMatcher(IndexSchema schema) {
+		this.schema = schema;
+	}
+
+	/**
+	 * Add/update the query if it's a keyword query
+	 * @param queryId - query id
+	 * @param query - parsed query
+	 * @return true if the query is a keyword query and was added
+	 */
+	public synchronized boolean register(String queryId, Query query) {
+		Map<String, List<List<BytesRef>>> fieldToPatterns = new HashMap<>();
+
+		if (!extractPatterns(query, fieldToPatterns)) {
+			return false;
+		}
+
+		queryIdToFieldPatterns.put(queryId, fieldToPatterns);
+		onChange(queryId);
+
+		return true;
+	}
+
+	/**
+	 * Delete keyword query
+	 * @param queryId - query id
+	 * @return true if the query existed
+	 */
+	public synchronized boolean delete(String queryId) {
+		boolean isDeleted = queryIdToFieldPatterns.remove(queryId) != null;
+
+		if (isDeleted) {
+			onChange(queryId);
+		}
+
+		return isDeleted;
+	}
+
+	public synchronized boolean contains(String queryId) {
+		return queryIdToFieldPatterns.containsKey(queryId);
+	}
+
+	public synchronized int getQueryCount() {
+		return queryIdToFieldPatterns.size();
+	}
+
+	/**
+	 * Match document against all keyword queries
+	 * @param doc - indexed document
+	 * @return ids of matched queries
+	 */
+	public Set<String> match(SolrInputDocument doc) {
+		Automatons current = getAutomatons();
+		Set<String> matchedQueryIds = new HashSet<>();
+
+		match(doc, current.built, matchedQueryIds);
+		matchedQueryIds.removeAll(current.changedQueryIds);		// built automatons may have old patterns of changed queries
+		match(doc, current.changed, matchedQueryIds);
+
+		return matchedQueryIds;
+	}
+
+	private void match(SolrInputDocument doc, Map<String, KeywordAutomaton> fieldToAutomaton, Set<String> matchedQueryIds) {
+		for (Map.Entry<String, KeywordAutomaton> fieldToAutomatonEntry : fieldToAutomaton.entrySet()) {
+			Collection<Object> values = doc.getFieldValues(fieldToAutomatonEntry.getKey());
+
+			if (values == null) {
+				continue;
+			}
+
+			try {
+				matchField(fieldToAutomatonEntry.getKey(), values, fieldToAutomatonEntry.getValue(), matchedQueryIds);
+			} catch (IOException e) {
+				log.warn(String.format("Failed to analyze field %s for keyword matching", fieldToAutomatonEntry.getKey()), e);
+			}
+		}
+	}
+
+	/**
+	 * @return built automatons and automatons of the queries changed since their snapshot
+	 */
+	private Automatons getAutomatons() {
+		Automatons current = automatons;
+
+		if (current != null) {
+			return current;
+		}
+
+		synchronized (this) {
+			if (automatons == null) {
+				Map<String, Map<String, List<List<BytesRef>>>> changedQueries = new HashMap<>();
+
+				for (String queryId : changedQueryIdToVersion.keySet()) {
+					Map<String, List<List<BytesRef>>> fieldToPatterns = queryIdToFieldPatterns.get(queryId);
+
+					if (fieldToPatterns != null) {							// deleted queries are just excluded
+						changedQueries.put(queryId, fieldToPatterns);
+					}
+				}
+
+				automatons = new Automatons(builtAutomatons, new HashSet<>(changedQueryIdToVersion.keySet()), compile(changedQueries));
+			}
+
+			return automatons;
+		}
+	}
+
+	private void matchField(String field, Collection<Object> values, KeywordAutomaton automaton, Set<String> matchedQueryIds) throws IOException {
+		Analyzer analyzer = schema.getIndexAnalyzer();
+		boolean isGapBetweenValues = analyzer.getPositionIncrementGap(field) > 0;
+		Set<Integer> states = automaton.start();
+
+		for (Object value : values) {
+			if (isGapBetweenValues) {
+				states = automaton.start();
+			}
+
+			try (TokenStream tokenStream = analyzer.tokenStream(field, value.toString())) {
+				TermToBytesRefAttribute termAtt = tokenStream.addAttribute(TermToBytesRefAttribute.class);
+				PositionIncrementAttribute posIncAtt = tokenStream.addAttribute(PositionIncrementAttribute.class);
+				List<BytesRef> position = new ArrayList<>();
+				tokenStream.reset();
+
+				while (tokenStream.incrementToken()) {
+					int positionIncrement = posIncAtt.getPositionIncrement();
+
+					if (positionIncrement > 0 && !position.isEmpty()) {
+						states = automaton.step(states, position, matchedQueryIds);
+						position = new ArrayList<>();
+					}
+
+					if (positionIncrement > 1) {		// a hole (removed stop word) breaks phrases
+						states = automaton.start();
+					}
+
+					position.add(BytesRef.deepCopyOf(termAtt.getBytesRef()));
+				}
+
+				tokenStream.end();
+
+				if (!position.isEmpty()) {
+					states = automaton.step(states, position, matchedQueryIds);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Build automatons of the current queries and publish them, documents are matched by the previous automatons
+	 * and the automatons of changes meanwhile.
+	 * Called before a new generation is made current, so its first batch is matched by all its keyword queries
+	 */
+	public void buildAutomatons() {
+		synchronized (buildLock) {
+			isRebuildScheduled.set(false);								// changes after the snapshot schedule another rebuild
+			long start = System.currentTimeMillis();
+			Map<String, Map<String, List<List<BytesRef>>>> snapshot;
+			long snapshotVersion;
+
+			synchronized (this) {
+				snapshot = new HashMap<>(queryIdToFieldPatterns);		// patterns of a query are never changed after register
+				snapshotVersion = version;
+			}
+
+			Map<String, KeywordAutomaton> fieldToAutomaton = compile(snapshot);
+
+			synchronized (this) {
+				builtAutomatons = fieldToAutomaton;
+				changedQueryIdToVersion.values().removeIf(changeVersion -> changeVersion <= snapshotVersion);
+				automatons = null;
+			}
+
+			log.info(String.format("Keyword automatons of %d queries were built in %d miliseconds", snapshot.size(), System.currentTimeMillis() - start));
+		}
+	}
+
+	/**
+	 * @param queryIdToFieldPatterns - patterns per field of queries
+	 * @return automaton per field
+	 */
+	private static Map<String, KeywordAutomaton> compile(Map<String, Map<String, List<List<BytesRef>>>> queryIdToFieldPatterns) {
+		Map<String, Map<List<BytesRef>, Set<String>>> fieldToPatterns = new HashMap<>();
+
+		for (Map.Entry<String, Map<String, List<List<BytesRef>>>> queryIdToPatterns : queryIdToFieldPatterns.entrySet()) {
+			for (Map.Entry<String, List<List<BytesRef>>> patterns : queryIdToPatterns.getValue().entrySet()) {
+				Map<List<BytesRef>, Set<String>> patternToQueryIds = fieldToPatterns.computeIfAbsent(patterns.getKey(), field -> new HashMap<>());
+
+				for (List<BytesRef> pattern : patterns.getValue()) {
+					patternToQueryIds.computeIfAbsent(pattern, p -> new HashSet<>()).add(queryIdToPatterns.getKey());
+				}
+			}
+		}
+
+		Map<String, KeywordAutomaton> automatons = new HashMap<>();
+		for (Map.Entry<String, Map<List<BytesRef>, Set<String>>> patterns : fieldToPatterns.entrySet()) {
+			automatons.put(patterns.getKey(), new KeywordAutomaton(patterns.getValue()));
+		}
+
+		return automatons;
+	}
+
+	/**
+	 * Record a change of the query (guarded by this), it's matched by automatons of changes until the next build publishes it
+	 */
+	private void onChange(String queryId) {
+		changedQueryIdToVersion.put(queryId, ++version);
+		automatons = null;
+		scheduleRebuild();
+	}
+
+	/**
+	 * Rebuild automatons in the background, changes done before the rebuild starts are built together
+	 */
+	private void scheduleRebuild() {
+		if (isRebuildScheduled.compareAndSet(false, true)) {
+			rebuildExecutor.execute(() -> {
+				try {
+					buildAutomatons();
+				} catch (RuntimeException e) {
+					log.error("Failed to build keyword automatons", e);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Extract terms and phrases of a keyword query
+	 * @param query - parsed query
+	 * @param fieldToPatterns - collector of patterns (term sequences) per field
+	 * @return false if the query isn't a keyword query
+	 */
+	private boolean extractPatterns(Query query, Map<String, List<List<BytesRef>>> fieldToPatterns) {
+		if (query instanceof BoostQuery) {
+			return extractPatterns(((BoostQuery) query).getQuery(), fieldToPatterns);
+		}
+
+		if (query instanceof PrefilteredQuery && ((PrefilteredQuery) query).getFilters().isEmpty()) {	// required fields only
+			return extractPatterns(((PrefilteredQuery) query).getQuery(), fieldToPatterns);
+		}
+
+		if (query instanceof TermQuery) {
+			return addPattern(fieldToPatterns, ((TermQuery) query).getTerm());
+		}
+
+		if (query instanceof SynonymQuery) {
+			for (Term term : ((SynonymQuery) query).getTerms()) {
+				if (!addPattern(fieldToPatterns, term)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		if (query instanceof PhraseQuery) {
+			PhraseQuery phraseQuery = (PhraseQuery) query;
+			int[] positions = phraseQuery.getPositions();
+
+			if (phraseQuery.getSlop() != 0 || positions.length == 0) {
+				return false;
+			}
+
+			for (int i = 0; i < positions.length; i++) {
+				if (positions[i] != positions[0] + i) {
+					return false;
+				}
+			}
+
+			return addPattern(fieldToPatterns, phraseQuery.getTerms());
+		}
+
+		if (query instanceof DisjunctionMaxQuery) {
+			for (Query disjunct : ((DisjunctionMaxQuery) query).getDisjuncts()) {
+				if (!extractPatterns(disjunct, fieldToPatterns)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		if (query instanceof BooleanQuery) {
+			BooleanQuery booleanQuery = (BooleanQuery) query;
+
+			if (booleanQuery.clauses().isEmpty() || booleanQuery.getMinimumNumberShouldMatch() > 1) {
+				return false;
+			}
+
+			for (BooleanClause clause : booleanQuery.clauses()) {
+				if (clause.getOccur() != Occur.SHOULD || !extractPatterns(clause.getQuery(), fieldToPatterns)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		return false;
+	}
+
+	private boolean addPattern(Map<String, List<List<BytesRef>>> fieldToPatterns, Term... terms) {
+		String field = terms[0].field();
+		SchemaField schemaField = schema.getFieldOrNull(field);
+
+		// values of copy field targets aren't in the SolrInputDocument
+		if (schemaField == null || !schemaField.indexed() || schema.isCopyFieldTarget(schemaField)) {
+			return false;
+		}
+
+		// other types (dates, numbers, booleans) are indexed from their native values, not from their strings
+		FieldType type = schemaField.getType();
+		if (!type.isTokenized() && !(type instanceof StrField)) {
+			return false;
+		}
+
+		List<BytesRef> pattern = new ArrayList<>(terms.length);
+		for (Term term : terms) {
+			pattern.add(BytesRef.deepCopyOf(term.bytes()));
+		}
+
+		fieldToPatterns.computeIfAbsent(field, f -> new ArrayList<>()).add(pattern);
+
+		return true;
+	}
+
+	/**
+	 * Automatons documents are matched by: the built ones without the changed queries, plus the automatons of changed queries
+	 */
+	private static class Automatons {
+		private final Map<String, KeywordAutomaton> built;
+		private final Set<String> changedQueryIds;
+		private final Map<String, KeywordAutomaton> changed;
+
+		private Automatons(Map<String, KeywordAutomaton> built, Set<String> changedQueryIds, Map<String, KeywordAutomaton> changed) {
+			this.built = built;
+			this.changedQueryIds = changedQueryIds;
+			this.changed = changed;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package solcolator.monitor;
+
+import org.apache.lucene.search.Query;
+import org.apache.solr.common.util.NamedList;
+import solcolator.filters.PrefilteredQuery;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Number of queries require each field (see RequiredFields). Documents without a field skip all the queries
+ * require it, so the counts show which fields are worth to send in partial documents
+ */
+public class FieldQueryCounts {
+	private final Map<String, Set<String>> queryIdToFields = new HashMap<>();
+	private final Map<String, Integer> fieldToCount = new HashMap<>();
+
+	/**
+	 * @param query - parsed query
+	 * @return fields the query requires (empty if it isn't prefiltered by its fields)
+	 */
+	static Set<String> getRequiredFields(Query query) {
+		return query instanceof PrefilteredQuery ? ((PrefilteredQuery) query).getRequiredFields() : Set.of();
+	}
+
+	/**
+	 * Add/update required fields of query
+	 * @param queryId
+	 * @param fields - fields the query requires
+	 */
+	synchronized void put(String queryId, Set<String> fields) {
+		remove(queryId);
+		queryIdToFields.put(queryId, fields);
+
+		for (String field : fields) {
+			fieldToCount.merge(field, 1, Integer::sum);
+		}
+	}
+
+	synchronized void remove(String queryId) {
+		Set<String> fields = queryIdToFields.remove(queryId);
+
+		if (fields == null) {
+			return;
+		}
+
+		for (String field : fields) {
+			fieldToCount.computeIfPresent(field, (name, count) -> count == 1 ? null : count - 1);
+		}
+	}
+
+	/**
+	 * @param field
+	 * @return number of queries require the field
+	 */
+	public synchronized int getCount(String field) {
+		return fieldToCount.getOrDefault(field, 0);
+	}
+
+	/**
+	 * @return number of queries per field, the most required fields first
+	 */
+	public synchronized NamedList<Object> toNamedList() {
+		List<Map.Entry<String, Integer>> counts = new ArrayList<>(fieldToCount.entrySet());
+		counts.sort(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+
+		NamedList<Object> stats = new NamedList<>();
+		for (Map.Entry<String, Integer> count : counts) {
+			stats.add(count.getKey(), count.getValue());
+		}
+
+		return stats;
+	}
+}
@@ -0,0 +1,72 @@
+package solcolator.monitor;
+
+import org.apache.solr.common.util.NamedList;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cumulative statistics of matching, shows how well the presearcher filters queries:
+ * 		candidateRatio - part of the registered queries were selected as candidates by the presearcher
+ * 		matchRatio - part of the candidates were really matched
+ */
+public class LuwakMatchStats {
+	private static final double RECENT_WEIGHT = 0.2;
+
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder documents = new LongAdder();
+	private final LongAdder registeredQueries = new LongAdder();
+	private final LongAdder candidateQueries = new LongAdder();
+	private final LongAdder matchedQueries = new LongAdder();
+	private final LongAdder matches = new LongAdder();
+	private volatile double recentCandidateRatio = 1;		// moving average, all queries are assumed candidates before the first batch
+
+	/**
+	 * Record statistics of one matched batch
+	 * @param batchSize - number of documents in the batch
+	 * @param queryCount - number of registered queries
+	 * @param candidateCount - number of candidate queries were run against the batch
+	 * @param matchedQueryCount - number of queries matched at least one document of the batch
+	 * @param matchCount - number of (document, query) matches
+	 */
+	public void record(int batchSize, int queryCount, int candidateCount, int matchedQueryCount, int matchCount) {
+		batches.increment();
+		documents.add(batchSize);
+		registeredQueries.add(queryCount);
+		candidateQueries.add(candidateCount);
+		matchedQueries.add(matchedQueryCount);
+		matches.add(matchCount);
+
+		if (queryCount > 0) {
+			recentCandidateRatio += RECENT_WEIGHT * ((double) candidateCount / queryCount - recentCandidateRatio);
+		}
+	}
+
+	/**
+	 * @return part of the registered queries were selected as candidates by the presearcher in the recent batches
+	 */
+	public double getRecentCandidateRatio() {
+		return recentCandidateRatio;
+	}
+
+	public NamedList<Object> toNamedList() {
+		long registered = registeredQueries.sum();
+		long candidates = candidateQueries.sum();
+		long matched = matchedQueries.sum();
+
+		NamedList<Object> stats = new NamedList<>();
+		stats.add("batches", batches.sum());
+		stats.add("documents", documents.sum());
+		stats.add("candidates", candidates);
+		stats.add("matchedQueries", matched);
+		stats.add("matches", matches.sum());
+		stats.add("candidateRatio", registered == 0 ? 0.0 : (double) candidates / registered);
+		stats.add("matchRatio", candidates == 0 ? 0.0 : (double) matched / candidates);
+
+		return stats;
+	}
+
+	@Override
+	public String toString() {
+		return toNamedList().toString();
+	}
+}
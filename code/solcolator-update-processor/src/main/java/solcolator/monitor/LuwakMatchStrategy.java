@@ -0,0 +1,84 @@
+package solcolator.monitor;
+
+import org.apache.lucene.monitor.MatcherFactory;
+import org.apache.lucene.monitor.ParallelMatcher;
+import org.apache.lucene.monitor.PartitionMatcher;
+import org.apache.lucene.monitor.QueryMatch;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Strategies for running candidate queries against a batch:
+ * 		serial - candidates are run by the matching thread itself (no task handoff, best for small batches)
+ * 		parallel - every candidate is run by one of the threads of the executor (ParallelMatcher)
+ * 		partition - candidates are split to slices, every slice is run by a thread of the executor (PartitionMatcher)
+ * 		adaptive - one of the above per batch, by the estimated number of candidates and the batch size
+ */
+public enum LuwakMatchStrategy {
+	SERIAL,
+	PARALLEL,
+	PARTITION,
+	ADAPTIVE;
+
+	private static final long SERIAL_MAX_PAIRS = 20_000;			// (candidate, document) pairs are cheaper to run than to hand off
+	private static final long PARTITION_MIN_CANDIDATES = 10_000;	// a task per candidate costs more than the candidate itself
+
+	/**
+	 * If given strategy exists, function will return its enum value otherwise will throw exception.
+	 * Function is case insensitive to value of kindName
+	 * @param kindName
+	 * @return enum value of kind name or exception
+	 * @throws Exception
+	 */
+	public static LuwakMatchStrategy get(String kindName) throws Exception {
+		for (LuwakMatchStrategy kind : LuwakMatchStrategy.values()) {
+			if (kind.name().equalsIgnoreCase(kindName)) {
+				return kind;
+			}
+		}
+
+		throw new Exception(String.format("Not existing match strategy - %s. Legal kinds: %s",
+				kindName, Arrays.asList(LuwakMatchStrategy.values())));
+	}
+
+	/**
+	 * @param batchSize - number of documents in the batch
+	 * @param estimatedCandidates - estimated number of candidate queries of the batch
+	 * @return strategy for the batch (adaptive is resolved to one of the others)
+	 */
+	public LuwakMatchStrategy resolve(int batchSize, long estimatedCandidates) {
+		if (this != ADAPTIVE) {
+			return this;
+		}
+
+		if (estimatedCandidates * batchSize <= SERIAL_MAX_PAIRS) {
+			return SERIAL;
+		}
+
+		return estimatedCandidates >= PARTITION_MIN_CANDIDATES ? PARTITION : PARALLEL;
+	}
+
+	/**
+	 * Create matcher factory of the strategy, adaptive must be resolved before
+	 * @param matcherFactory - factory of matchers of a single thread
+	 * @param executor - executor of matching tasks
+	 * @param threads - number of threads (parallel) or slices (partition)
+	 * @return matcher factory
+	 */
+	public <T extends QueryMatch> MatcherFactory<T> createMatcher(MatcherFactory<T> matcherFactory, ExecutorService executor, int threads) {
+		switch (this) {
+			case SERIAL:
+				return matcherFactory;
+
+			case PARALLEL:
+				return ParallelMatcher.factory(executor, matcherFactory, threads);
+
+			case PARTITION:
+				return PartitionMatcher.factory(executor, matcherFactory, threads);
+
+			default:
+				throw new IllegalStateException("Adaptive match strategy must be resolved per batch");
+		}
+	}
+}
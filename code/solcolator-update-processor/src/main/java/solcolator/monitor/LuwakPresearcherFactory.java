@@ -0,0 +1,72 @@
+package solcolator.monitor;
+
+import org.apache.lucene.monitor.CustomQueryHandler;
+import org.apache.lucene.monitor.MultipassTermFilteredPresearcher;
+import org.apache.lucene.monitor.Presearcher;
+import org.apache.lucene.monitor.TermFilteredPresearcher;
+import org.apache.lucene.monitor.TermWeightor;
+import org.apache.solr.schema.IndexSchema;
+import solcolator.presearcher.IPresearcherComponent;
+import solcolator.presearcher.SchemaTermWeightor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Presearchers for selecting candidate queries:
+ * 		None (none) - all queries are candidates for every document
+ * 		TermFilteredPresearcher (term) - queries are candidates only if their terms appear in the documents
+ * 		MultipassTermFilteredPresearcher (multipass) - like term, but queries are indexed by several passes
+ * 			of their terms, so less false positive candidates are selected
+ */
+public enum LuwakPresearcherFactory {
+	NONE,
+	TERM,
+	MULTIPASS;
+
+	/**
+	 * If given presearcher exists, function will return its enum value otherwise will throw exception.
+	 * Function is case insensitive to value of kindName
+	 * @param kindName
+	 * @return enum value of kind name or exception
+	 * @throws Exception
+	 */
+	public static LuwakPresearcherFactory get(String kindName) throws Exception {
+		for (LuwakPresearcherFactory kind : LuwakPresearcherFactory.values()) {
+			if (kind.name().equalsIgnoreCase(kindName)) {
+				return kind;
+			}
+		}
+
+		throw new Exception(String.format("Not existing presearcher - %s. Legal kinds: %s",
+				kindName, Arrays.asList(LuwakPresearcherFactory.values())));
+	}
+
+	/**
+	 * Create presearcher, terms are weighted by field types of the schema
+	 * @param schema - schema of the core
+	 * @param termWeightor - base weights of terms (before weighting by field types)
+	 * @param passes - number of passes (multipass only)
+	 * @param minWeight - minimum weight of a term to be used in a pass (multipass only)
+	 * @param components - presearcher components for queries the term presearcher can't filter (wildcards, ranges, ...)
+	 * @return presearcher
+	 */
+	public Presearcher create(IndexSchema schema, TermWeightor termWeightor, int passes, float minWeight,
+			List<IPresearcherComponent> components) {
+		TermWeightor weightor = new SchemaTermWeightor(schema, termWeightor);
+		List<CustomQueryHandler> queryHandlers = new ArrayList<>(components);
+
+		switch (this) {
+			case TERM:
+				return new TermFilteredPresearcher(weightor, queryHandlers, Collections.emptySet());
+
+			case MULTIPASS:
+				return new MultipassTermFilteredPresearcher(passes, minWeight, weightor, queryHandlers, Collections.emptySet());
+
+			default:
+				return Presearcher.NO_FILTERING;
+		}
+	}
+}
@@ -0,0 +1,247 @@
+package solcolator.monitor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import solcolator.keywords.KeywordQueryMatcher;
+import solcolator.templates.QueryTemplateIndex;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Predicate;
+
+/**
+ * Complete set of solcolator queries: the monitor, the keyword matcher and the template index with their query mapping.
+ * REREAD and full refresh build a new generation aside and swap it with the current one, so a batch is always matched
+ * against one consistent generation. A batch holds the generation while it's matched (acquire/release), and a replaced
+ * generation is closed when its last batch is released.
+ */
+public class LuwakQueriesGeneration {
+	private static final Logger log = LoggerFactory.getLogger(LuwakQueriesGeneration.class);
+
+	private final long number;
+	private final RoutedMonitor monitor;
+	private final LuwakQuerySerializer querySerializer;
+	private final Path indexPath;
+	private final KeywordQueryMatcher keywordMatcher;
+	private final QueryTemplateIndex templateIndex;
+	private final QueryRegistry queries = new QueryRegistry();
+	private final QueryGroups queryGroups = new QueryGroups();
+	private final FieldQueryCounts fieldQueryCounts = new FieldQueryCounts();
+	private final CountDownLatch closed = new CountDownLatch(1);
+	private int activeBatches;
+	private boolean isRetired;
+
+	/**
+	 * @param number - sequence number of the generation
+	 * @param monitor - monitor (routes and their partitions) of the generation
+	 * @param querySerializer - serializer of the persistent monitor (null for in-memory monitor)
+	 * @param indexPath - index path of the persistent monitor (null for in-memory monitor)
+	 * @param keywordMatcher - keyword matcher (null if keyword matching is disabled)
+	 * @param templateIndex - index of templated queries
+	 */
+	LuwakQueriesGeneration(long number, RoutedMonitor monitor, LuwakQuerySerializer querySerializer, Path indexPath,
+			KeywordQueryMatcher keywordMatcher, QueryTemplateIndex templateIndex) {
+		this.number = number;
+		this.monitor = monitor;
+		this.querySerializer = querySerializer;
+		this.indexPath = indexPath;
+		this.keywordMatcher = keywordMatcher;
+		this.templateIndex = templateIndex;
+	}
+
+	/**
+	 * Add/update query in the query registry, queries with NOW date math are tracked for refresh
+	 * @param query
+	 * @param isDateMath - if the query has date math resolved at parse time
+	 */
+	void putQuery(LuwakQuery query, boolean isDateMath) {
+		queries.putAll(List.of(query), q -> isDateMath);
+		fieldQueryCounts.put(query.getId(), FieldQueryCounts.getRequiredFields(query.getQuery()));
+	}
+
+	/**
+	 * Add/update queries in the query registry by a single version
+	 * @param queries
+	 * @param isDateMath - if a query has date math resolved at parse time
+	 */
+	void putQueries(List<LuwakQuery> queries, Predicate<LuwakQuery> isDateMath) {
+		this.queries.putAll(queries, isDateMath);
+
+		for (LuwakQuery query : queries) {
+			fieldQueryCounts.put(query.getId(), FieldQueryCounts.getRequiredFields(query.getQuery()));
+		}
+	}
+
+	/**
+	 * Remove query from the query registry
+	 * @param queryId
+	 * @return true if the query existed
+	 */
+	boolean removeQuery(String queryId) {
+		fieldQueryCounts.remove(queryId);
+
+		return queries.remove(queryId);
+	}
+
+	/**
+	 * Hold the generation for matching a batch, must be followed by release
+	 * @return false if the generation is already closed
+	 */
+	synchronized boolean acquire() {
+		if (isClosed()) {
+			return false;
+		}
+
+		activeBatches++;
+
+		return true;
+	}
+
+	/**
+	 * Release the generation after matching a batch
+	 */
+	public synchronized void release() {
+		activeBatches--;
+
+		if (isRetired && activeBatches == 0) {
+			close();
+		}
+	}
+
+	/**
+	 * The generation was replaced, it's closed as soon as its last batch is released
+	 */
+	synchronized void retire() {
+		isRetired = true;
+
+		if (activeBatches == 0) {
+			close();
+		}
+	}
+
+	/**
+	 * Wait until the generation is closed (its persistent index can be reused after that)
+	 * @throws InterruptedException
+	 */
+	void awaitClosed() throws InterruptedException {
+		closed.await();
+	}
+
+	/**
+	 * @return true if the generation was retired and its last batch was released
+	 */
+	boolean isClosed() {
+		return closed.getCount() == 0;
+	}
+
+	private void close() {
+		if (isClosed()) {
+			return;
+		}
+
+		try {
+			monitor.close();
+			log.info(String.format("Queries generation %d is closed", number));
+		} catch (IOException e) {
+			log.error(String.format("Failed to close monitor of generation %d", number), e);
+		} finally {
+			closed.countDown();
+		}
+	}
+
+	/**
+	 * @param snapshot - version of the query registry
+	 * @return queries of the version depend on NOW (date math resolved at parse time), duplicates are left out
+	 * since they're matched by their representatives
+	 */
+	Map<String, StoredQuery> getDateMathQueries(QueryRegistry.Snapshot snapshot) {
+		Map<String, StoredQuery> queryIdToQuery = new LinkedHashMap<>();
+
+		for (String queryId : queries.getDateMathQueryIds()) {
+			StoredQuery query = snapshot.get(queryId);
+
+			if (query != null && !queryGroups.isDuplicate(queryId)) {
+				queryIdToQuery.put(queryId, query);
+			}
+		}
+
+		return queryIdToQuery;
+	}
+
+	// ======================================= GETTERS ============================================ //
+	public long getNumber() {
+		return number;
+	}
+
+	public RoutedMonitor getMonitor() {
+		return monitor;
+	}
+
+	LuwakQuerySerializer getQuerySerializer() {
+		return querySerializer;
+	}
+
+	Path getIndexPath() {
+		return indexPath;
+	}
+
+	/**
+	 * @return keyword matcher or null if keyword matching is disabled
+	 */
+	public KeywordQueryMatcher getKeywordMatcher() {
+		return keywordMatcher;
+	}
+
+	public QueryTemplateIndex getTemplateIndex() {
+		return templateIndex;
+	}
+
+	public QueryRegistry getQueries() {
+		return queries;
+	}
+
+	/**
+	 * @return groups of identical monitor queries (only representatives of groups are registered in the monitor)
+	 */
+	public QueryGroups getQueryGroups() {
+		return queryGroups;
+	}
+
+	/**
+	 * @return number of queries require each field
+	 */
+	public FieldQueryCounts getFieldQueryCounts() {
+		return fieldQueryCounts;
+	}
+
+	/**
+	 * @return map between query id and query of the current version of the registry (built on each call)
+	 */
+	public Map<String, StoredQuery> getQueryIdToQuery() {
+		return queries.getSnapshot().toMap();
+	}
+
+	/**
+	 * @param snapshot - version of the query registry
+	 * @param queryId
+	 * @return query string of monitor query or rendered template of templated query (null if the query doesn't exist)
+	 */
+	public String getQueryString(QueryRegistry.Snapshot snapshot, String queryId) {
+		StoredQuery query = snapshot.get(queryId);
+
+		return query != null ? query.getQueryString() : templateIndex.getQueryString(queryId);
+	}
+
+	/**
+	 * @param queryId
+	 * @return query string of monitor query or rendered template of templated query (null if the query doesn't exist)
+	 */
+	public String getQueryString(String queryId) {
+		return getQueryString(queries.getSnapshot(), queryId);
+	}
+	// ============================================================================================ //
+}
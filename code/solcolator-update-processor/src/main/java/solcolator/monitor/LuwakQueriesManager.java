@@ -1,43 +1,115 @@
 package solcolator.monitor;
 
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.monitor.Monitor;
+import org.apache.lucene.monitor.MonitorConfiguration;
 import org.apache.lucene.monitor.Presearcher;
+import org.apache.lucene.util.IOUtils;
 import org.apache.solr.core.SolrCore;
+import org.apache.solr.schema.IndexSchema;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import solcolator.common.MatchExecutor;
+import solcolator.common.MatchLane;
+import solcolator.common.MicroBatcher;
+import solcolator.common.NamedThreadFactory;
 import solcolator.io.api.IQueryReader;
 import solcolator.io.api.ISolcolatorResultsWriter;
 import solcolator.io.api.SolcolatorQuery;
+import solcolator.keywords.KeywordQueryMatcher;
+import solcolator.presearcher.IPresearcherComponent;
+import solcolator.templates.QueryTemplate;
+import solcolator.templates.QueryTemplateIndex;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 /**
- * The class is responsible for managing (add/update/delete) queries
+ * The class is responsible for managing (add/update/delete) queries.
+ * Queries are kept in generations (see LuwakQueriesGeneration): single queries are updated in the current generation,
+ * (readers never lock, they use immutable versions of the query registry, see QueryRegistry)
+ * while REREAD and full refresh build a new generation aside and swap it in when it's complete
  */
 public class LuwakQueriesManager implements AutoCloseable {
-	private final static Object updatedLock = new Object();
 	private final static LuwakQueriesManager manager = new LuwakQueriesManager();
+	private final static String MONITOR_INDEX_DIR = "solcolator-monitor";
+	private final static String ALTERNATE_INDEX_DIR_SUFFIX = ".1";
+	private final static String FINGERPRINT_FILE_SUFFIX = ".fingerprint";
+	private final static String CURRENT_INDEX_FILE_SUFFIX = ".current";
+	private final static String PARTITION_DIR_PREFIX = "partition-";
+	private final static String ROUTE_DIR_PREFIX = "route-";
+	private final static String GLOBAL_ROUTE_DIR = "global";
+	private final static int LOAD_CHUNK_SIZE = 1000;
+	private final static int MAX_PENDING_CHUNKS_PER_THREAD = 2;
+	private final static int MAX_PRINTED_LOAD_ERRORS = 100;
+	private final static long ACQUIRE_GENERATION_TIMEOUT_SEC = 60;
+	private final static int PARTITION_THREADS = Runtime.getRuntime().availableProcessors();
 	
 	private final Logger log = LoggerFactory.getLogger(LuwakQueriesManager.class);
-		
-	private Monitor monitor;
-	private Map<String,LuwakQuery> queryIdToLuwakQuery;
+	private final Object writeLock = new Object();						// serializes writers only, readers use registry snapshots
+	private final Object rebuildLock = new Object();
+	private final Object generationChanged = new Object();				// notified when a new generation is made current
+	// partitions of all monitors (routes and generations) are opened and registered by one pool, batches are matched
+	// by the partition pool of their match lane (see MatchExecutor)
+	private ExecutorService partitionExecutor;
+	
+	private volatile LuwakQueriesGeneration generation;
+	private LuwakQueriesGeneration retiredGeneration;
+	private long generationCount;
+	private PendingUpdates pendingUpdates;										// updates during a rebuild (null - no rebuild)
+	private SolrCore core;
+	private Presearcher presearcher;
+	private String indexFingerprint;
+	private IndexSchema keywordSchema;
+	private IndexSchema templateSchema;
+	private Map<String, QueryTemplate> nameToTemplate = new HashMap<>();
+	private List<IPresearcherComponent> presearcherComponents;
+	private LuwakQueryParser queryParser;
+	private ParsedQueryCache parsedQueryCache;
+	private int monitorPartitions = 1;
+	private RoutingField routingField;
+	private LuwakMatchStats matchStats;
+	private final Map<MatchLane, MatchExecutor> laneToMatchExecutor = new EnumMap<>(MatchLane.class);
+	private final Map<MatchLane, MicroBatcher<?>> laneToMicroBatcher = new EnumMap<>(MatchLane.class);
 	private IQueryReader reader;
 	private List<ISolcolatorResultsWriter> writers;
-		
+	
 	public static LuwakQueriesManager getQueriesManager() {
 		return manager;
 	}
 	
 	// ======================================= INIT & CLOSE ======================================= //
 	/**
-	 * Initializing mappings (queryIdToSolrQuery)
+	 * Initializing reader, writers, match statistics and the partition pool
 	 */
  	public void init(IQueryReader reader, List<ISolcolatorResultsWriter> writers) {
-		queryIdToLuwakQuery = new HashMap<>();
+		matchStats = new LuwakMatchStats();
+		partitionExecutor = Executors.newFixedThreadPool(PARTITION_THREADS, new NamedThreadFactory("solcolator-monitor-partition"));
 		
 		this.reader = reader;
 		this.writers = writers;
@@ -46,55 +118,137 @@ public class LuwakQueriesManager implements AutoCloseable {
 	}
 	
 	/**
-	 * Create Luwak monitor for storing solcolator queries
+	 * Create Luwak monitor for storing solcolator queries (the first generation of queries).
+	 * Keyword matching and templates must be set before.
+	 * Documents are analyzed by the index analyzer of the core's schema.
+	 * Persistent monitor keeps its query index in the data directory of the core, so queries are restored from it
+	 * on restart (the index is rebuilt when its fingerprint doesn't match)
 	 * @param core - solr core
+	 * @param presearcher - presearcher for selecting candidate queries
+	 * @param presearcherComponents - components of the presearcher (they add their keys to monitor documents)
+	 * @param isFieldFilters - if simple fq clauses are evaluated on raw document values before the monitor
+	 * @param isRelativeDates - if date ranges relative to NOW are resolved at match time (by the batch timestamp)
+	 * @param indexFingerprint - fingerprint of the schema and presearcher config for persistent monitor (null - in-memory monitor)
 	 * @throws ExceptionInInitializerError
 	 */
-	public void createMonitor(SolrCore core) throws ExceptionInInitializerError {
-		Presearcher presearcher = Presearcher.NO_FILTERING;
+	public void createMonitor(SolrCore core, Presearcher presearcher, List<IPresearcherComponent> presearcherComponents,
+			boolean isFieldFilters, boolean isRelativeDates, String indexFingerprint) throws ExceptionInInitializerError {
+		queryParser = new LuwakQueryParser(core, presearcherComponents, isFieldFilters, isRelativeDates, parsedQueryCache);
+		this.presearcherComponents = presearcherComponents;
+		this.core = core;
+		this.presearcher = presearcher;
+		this.indexFingerprint = indexFingerprint;
 		
 		try {
-			monitor = new Monitor(new StandardAnalyzer(), presearcher);
-		} catch (IOException e) {
+			retireCurrentGeneration();														// generation of the previous core (core reload)
+			setGeneration(createGeneration(indexFingerprint == null ? null : getCurrentIndexPath(), new QueryTemplateIndex(templateSchema, nameToTemplate)));
+		} catch (Exception e) {
 			log.error("Failed to create Monitor", e);
 			
-			try {
-				if (monitor != null) {
-					monitor.close();
-				}
-			} catch (IOException ex) {
-				log.error("Failed to close Monitor", ex);
+			throw new ExceptionInInitializerError(e);
+		}
+		
+		log.info("LuwakQueriesManager monitor was created successfully");
+	}
+	
+	/**
+	 * Set schema for matching keyword queries (terms and phrases), keyword queries will be matched by a keyword matcher
+	 * instead of the monitor
+	 * @param schema - schema of the core (null - keyword matching is disabled)
+	 */
+	public void setKeywordMatching(IndexSchema schema) {
+		keywordSchema = schema;
+		
+		log.info(String.format("LuwakQueriesManager keyword matching is %s", schema == null ? "disabled" : "enabled"));
+	}
+	
+	/**
+	 * Set cache of parsed queries, must be set before the monitor is created
+	 * @param maxSize - max number of cached queries (0 - parsed queries aren't cached)
+	 */
+	public void setParsedQueryCache(int maxSize) {
+		parsedQueryCache = maxSize > 0 ? new ParsedQueryCache(maxSize) : null;
+		
+		log.info(String.format("LuwakQueriesManager parsed query cache is %s", maxSize > 0 ? "enabled, max size " + maxSize : "disabled"));
+	}
+	
+	/**
+	 * Set number of monitor partitions, must be set before the monitor is created
+	 * @param partitions - number of partitions (queries are split by hash of their ids)
+	 */
+	public void setMonitorPartitions(int partitions) {
+		monitorPartitions = partitions;
+		
+		log.info(String.format("LuwakQueriesManager monitor has %d partitions", partitions));
+	}
+	
+	/**
+	 * Set routing field of the monitor, must be set before the monitor is created
+	 * @param schema - schema of the core
+	 * @param field - metadata param of queries and field of documents queries are routed by (null - no routing)
+	 * @throws ExceptionInInitializerError if the field type can't be a routing field
+	 */
+	public void setRoutingField(IndexSchema schema, String field) throws ExceptionInInitializerError {
+		try {
+			routingField = field == null ? null : RoutingField.create(schema, field);
+		} catch (IllegalArgumentException e) {
+			log.error("Failed to set routing field", e);
+			
+			throw new ExceptionInInitializerError(e);
+		}
+		
+		log.info(String.format("LuwakQueriesManager monitor routing is %s", field == null ? "disabled" : "by field " + field));
+	}
+	
+	/**
+	 * Set executor and batcher of a match lane for reporting its queue and batch size
+	 * @param lane - match lane
+	 * @param matchExecutor - executor of matched batches of the lane
+	 * @param microBatcher - batcher of matched documents of the lane
+	 */
+	public synchronized void setMatchLane(MatchLane lane, MatchExecutor matchExecutor, MicroBatcher<?> microBatcher) {
+		laneToMatchExecutor.put(lane, matchExecutor);
+		laneToMicroBatcher.put(lane, microBatcher);
+	}
+	
+	/**
+	 * Set templates of templated queries
+	 * @param schema - schema of the core
+	 * @param templates - map between template name and template (field:$param clauses joined by AND)
+	 * @throws ExceptionInInitializerError
+	 */
+	public void setTemplates(IndexSchema schema, Map<String, String> templates) throws ExceptionInInitializerError {
+		Map<String, QueryTemplate> nameToTemplate = new HashMap<>();
+		
+		try {
+			for (Map.Entry<String, String> template : templates.entrySet()) {
+				nameToTemplate.put(template.getKey(), QueryTemplate.parse(template.getKey(), template.getValue(), schema));
 			}
+		} catch (IllegalArgumentException e) {
+			log.error("Failed to parse query templates", e);
 			
 			throw new ExceptionInInitializerError(e);
 		}
 		
-		log.info("LuwakQueriesManager monitor was created successfully");
+		this.templateSchema = schema;
+		this.nameToTemplate = nameToTemplate;
+		
+		log.info(String.format("LuwakQueriesManager templates were set %s", nameToTemplate.values()));
 	}
 	
 	/**
-	 * Load solcolator queries to Luwak monitor
+	 * Load solcolator queries to the current generation (on start).
+	 * Queries are streamed from the reader in chunks, parsed in parallel and registered by a single update per chunk.
+	 * Queries failed to load are reported by one summary at the end
 	 * @param reqHandlerMetadata - Request handler metadata (default args)
 	 */
-	public void loadQueriesToSolcolator(Map<String, String> reqHandlerMetadata) {	
+	public void loadQueriesToSolcolator(Map<String, String> reqHandlerMetadata) {
 		try {
-			long start = System.currentTimeMillis();
-			List<SolcolatorQuery> solcolatorQueries = reader.readAllQueries(reqHandlerMetadata);
+			loadQueries(generation, chunkConsumer -> reader.readQueriesInChunks(reqHandlerMetadata, LOAD_CHUNK_SIZE, chunkConsumer));
 			
-			for (SolcolatorQuery solcolatorQuery : solcolatorQueries) {
-				try {
-					LuwakQuery luwakQuery = new LuwakQuery(solcolatorQuery.getQueryId(),
-							solcolatorQuery.getQueryName(),
-							solcolatorQuery.getQuery(),
-							solcolatorQuery.getQueryMetadata());
-					updateQueryInMonitor(luwakQuery);
-					queryIdToLuwakQuery.put(luwakQuery.getId(), luwakQuery);
-				} catch(Exception ex) {
-					// Nothing to do. Solcolator will continue to load queries to monitor
-				}			
-			}
-			
-			log.info(String.format("Solcolator finished to load %d queries in %s miliseconds", monitor.getQueryCount(), System.currentTimeMillis() - start));
+			if (generation.getKeywordMatcher() != null) {
+				generation.getKeywordMatcher().buildAutomatons();
+			}
 		} catch (Exception e) {
 			String errMessage = "Failed to load queries to monitor";
 			log.error(errMessage, e);
@@ -116,6 +270,404 @@ public class LuwakQueriesManager implements AutoCloseable {
 			log.info("Manager is closed successfully");
 		} catch (Exception e) {
 			log.error("Closing writer/reader is failed", e);
+		} finally {
+			partitionExecutor.shutdownNow();
+		}
+	}
+	// ============================================================================================ //
+	
+	// ======================================= GENERATIONS ======================================== //
+	/**
+	 * Hold the current generation for matching a batch, it must be released when the batch is matched.
+	 * While the monitor is created again (core reload) the current generation is already closed, so the batch waits
+	 * for the new one
+	 * @return current generation
+	 * @throws IllegalStateException if no generation was made current before the timeout
+	 */
+	public LuwakQueriesGeneration acquireGeneration() {
+		LuwakQueriesGeneration currentGeneration = generation;
+		
+		if (currentGeneration != null && currentGeneration.acquire()) {
+			return currentGeneration;
+		}
+		
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(ACQUIRE_GENERATION_TIMEOUT_SEC);
+		
+		synchronized (generationChanged) {
+			while (true) {
+				currentGeneration = generation;
+				
+				if (currentGeneration != null && currentGeneration.acquire()) {
+					return currentGeneration;
+				}
+				
+				long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if (remainingMs <= 0) {
+					throw new IllegalStateException(String.format("No queries generation is available after %d seconds", ACQUIRE_GENERATION_TIMEOUT_SEC));
+				}
+				
+				try {
+					generationChanged.wait(remainingMs);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					
+					throw new IllegalStateException("Interrupted while waiting for queries generation", e);
+				}
+			}
+		}
+	}
+	
+	private void setGeneration(LuwakQueriesGeneration newGeneration) {
+		synchronized (generationChanged) {
+			generation = newGeneration;
+			generationChanged.notifyAll();
+		}
+	}
+	
+	/**
+	 * Load all queries from the reader to a new generation and swap it with the current one
+	 * @param reqHandlerMetadata - Request handler metadata (default args)
+	 * @throws Exception
+	 */
+	public void rereadQueries(Map<String, String> reqHandlerMetadata) throws Exception {
+		synchronized (rebuildLock) {
+			log.info("Solcolator is started to reread all its queries");
+			LuwakQueriesGeneration newGeneration = startRebuild(false);
+			
+			try {
+				loadQueries(newGeneration, chunkConsumer -> reader.readQueriesInChunks(reqHandlerMetadata, LOAD_CHUNK_SIZE, chunkConsumer));
+			} catch (Exception e) {
+				abortRebuild(newGeneration);
+				
+				throw e;
+			}
+			
+			swapGeneration(newGeneration);
+		}
+	}
+	
+	/**
+	 * Update all queries in solcolator
+	 * In the case query contains dynamic values like NOW, it will be update (queries are parsed again to a new generation,
+	 * templated queries are copied as is)
+	 * @throws Exception
+	 */
+	public void updateAllQueries() throws Exception {
+		synchronized (rebuildLock) {
+			log.info("Solcolator is started to update all its queries");
+			LuwakQueriesGeneration newGeneration = startRebuild(true);
+			QueryRegistry.Snapshot snapshot = generation.getQueries().getSnapshot();
+			List<String> queryIds = snapshot.getQueryIds();
+			
+			try {
+				loadQueries(newGeneration, chunkConsumer -> {
+					for (int from = 0; from < queryIds.size(); from += LOAD_CHUNK_SIZE) {
+						List<SolcolatorQuery> chunk = new ArrayList<>(LOAD_CHUNK_SIZE);		// query strings are read from the store per chunk
+						
+						for (String queryId : queryIds.subList(from, Math.min(from + LOAD_CHUNK_SIZE, queryIds.size()))) {
+							StoredQuery query = snapshot.get(queryId);
+							chunk.add(new SolcolatorQuery(queryId, query.getQueryName(), query.getQueryString(), query.getMetadata()));
+						}
+						
+						chunkConsumer.accept(chunk);
+					}
+				});
+			} catch (Exception e) {
+				abortRebuild(newGeneration);
+				
+				throw e;
+			}
+			
+			swapGeneration(newGeneration);
+		}
+	}
+	
+	/**
+	 * Parse again the queries depend on NOW (date math) and re-register them in the current generation by a single update.
+	 * All other queries don't change over time, so they aren't touched
+	 * @throws Exception
+	 */
+	public void refreshDateMathQueries() throws Exception {
+		synchronized (rebuildLock) {
+			long start = System.currentTimeMillis();
+			LuwakQueriesGeneration currentGeneration = generation;
+			QueryRegistry.Snapshot snapshot = currentGeneration.getQueries().getSnapshot();
+			List<LuwakQuery> refreshedQueries = new ArrayList<>();
+			
+			for (Map.Entry<String, StoredQuery> query : currentGeneration.getDateMathQueries(snapshot).entrySet()) {
+				try {
+					refreshedQueries.add(buildLuwakQuery(new SolcolatorQuery(query.getKey(), query.getValue().getQueryName(),
+							query.getValue().getQueryString(), query.getValue().getMetadata())));
+				} catch (Exception e) {
+					log.error(String.format("Query %s is failed to refresh", query.getKey()), e);
+				}
+			}
+			
+			synchronized (writeLock) {
+				// queries were updated/deleted while refreshing are already up to date
+				QueryRegistry.Snapshot currentSnapshot = currentGeneration.getQueries().getSnapshot();
+				refreshedQueries.removeIf(query -> !Objects.equals(currentSnapshot.get(query.getId()), snapshot.get(query.getId())));
+				registerQueries(currentGeneration, refreshedQueries);
+			}
+			
+			log.info(String.format("Solcolator refreshed %d date math queries of %d in %d miliseconds", refreshedQueries.size(),
+					snapshot.size(), System.currentTimeMillis() - start));
+		}
+	}
+	
+	/**
+	 * Create empty generation for rebuild, single query updates are recorded from now to be replayed on it
+	 * @param isCopyTemplates - if templated queries are copied from the current generation
+	 * @return new generation
+	 * @throws Exception
+	 */
+	private LuwakQueriesGeneration startRebuild(boolean isCopyTemplates) throws Exception {
+		synchronized (writeLock) {
+			pendingUpdates = new PendingUpdates();
+		}
+		
+		try {
+			QueryTemplateIndex templateIndex = isCopyTemplates ? generation.getTemplateIndex().copy() : new QueryTemplateIndex(templateSchema, nameToTemplate);
+			
+			return createGeneration(getNextIndexPath(), templateIndex);
+		} catch (Exception e) {
+			synchronized (writeLock) {
+				pendingUpdates = null;
+			}
+			
+			throw e;
+		}
+	}
+	
+	private void abortRebuild(LuwakQueriesGeneration newGeneration) {
+		synchronized (writeLock) {
+			pendingUpdates = null;
+		}
+		
+		newGeneration.retire();
+	}
+	
+	/**
+	 * Replay updates were done during the rebuild on the new generation and make it current.
+	 * The old generation is closed when its last batch is matched
+	 */
+	private void swapGeneration(LuwakQueriesGeneration newGeneration) throws IOException {
+		LuwakQueriesGeneration oldGeneration;
+		
+		synchronized (writeLock) {
+			pendingUpdates.replay(new PendingUpdates.IReplayer() {
+				@Override
+				public void update(SolcolatorQuery query) throws Exception {
+					updateQuery(newGeneration, query);
+				}
+				
+				@Override
+				public void delete(String queryId) throws Exception {
+					deleteQuery(newGeneration, queryId);
+				}
+			});
+			
+			log.info(String.format("Solcolator replayed %d updates on generation %d", pendingUpdates.size(), newGeneration.getNumber()));
+			pendingUpdates = null;
+			
+			if (newGeneration.getKeywordMatcher() != null) {
+				newGeneration.getKeywordMatcher().buildAutomatons();
+			}
+			
+			oldGeneration = generation;
+			setGeneration(newGeneration);
+		}
+		
+		if (newGeneration.getIndexPath() != null) {
+			Files.writeString(Paths.get(core.getDataDir(), MONITOR_INDEX_DIR + CURRENT_INDEX_FILE_SUFFIX),
+					newGeneration.getIndexPath().getFileName().toString(), StandardCharsets.UTF_8);
+		}
+		
+		retiredGeneration = oldGeneration;
+		oldGeneration.retire();
+		
+		log.info(String.format("Solcolator swapped generation %d with generation %d", oldGeneration.getNumber(), newGeneration.getNumber()));
+	}
+	
+	private void retireCurrentGeneration() throws InterruptedException {
+		if (generation == null) {
+			return;
+		}
+		
+		generation.retire();
+		
+		if (generation.getIndexPath() != null) {
+			generation.awaitClosed();														// the persistent index is opened again
+		}
+	}
+	
+	private LuwakQueriesGeneration createGeneration(Path indexPath, QueryTemplateIndex templateIndex) throws IOException {
+		Analyzer analyzer = core.getLatestSchema().getIndexAnalyzer();
+		KeywordQueryMatcher keywordMatcher = keywordSchema == null ? null : new KeywordQueryMatcher(keywordSchema);
+		
+		if (indexPath == null) {
+			RoutedMonitor monitor = new RoutedMonitor(routingField, Map.of(RoutedMonitor.GLOBAL_ROUTE, createPartitions(analyzer)),
+					route -> createPartitions(analyzer));
+			
+			return new LuwakQueriesGeneration(++generationCount, monitor, null, null, keywordMatcher, templateIndex);
+		}
+		
+		Path fingerprintPath = Paths.get(indexPath + FINGERPRINT_FILE_SUFFIX);
+		if (!Files.exists(fingerprintPath) || !Files.readString(fingerprintPath, StandardCharsets.UTF_8).equals(indexFingerprint)) {
+			log.info(String.format("Monitor index %s doesn't match the current schema/config, it will be rebuilt", indexPath));
+			deleteDirectory(indexPath);
+		}
+		
+		long start = System.currentTimeMillis();
+		LuwakQuerySerializer querySerializer = new LuwakQuerySerializer(queryParser, presearcher);
+		RoutedMonitor persistentMonitor = openRoutes(indexPath, analyzer, querySerializer);
+		querySerializer.finishRestoring();
+		persistentMonitor.addRestoredQueries(querySerializer.getRestoredQueries().values());
+		Files.writeString(fingerprintPath, indexFingerprint, StandardCharsets.UTF_8);
+		
+		log.info(String.format("Monitor restored %d of %d queries from %s in %d miliseconds", querySerializer.getRestoredQueries().size(),
+				querySerializer.getStoredQueryIds().size(), indexPath, System.currentTimeMillis() - start));
+		
+		return new LuwakQueriesGeneration(++generationCount, persistentMonitor, querySerializer, indexPath, keywordMatcher, templateIndex);
+	}
+	
+	private PartitionedMonitor createPartitions(Analyzer analyzer) {
+		List<Monitor> partitions = new ArrayList<>(monitorPartitions);
+		for (int partition = 0; partition < monitorPartitions; partition++) {
+			partitions.add(new Monitor(analyzer, presearcher));
+		}
+		
+		return new PartitionedMonitor(partitions, partitionExecutor);
+	}
+	
+	/**
+	 * Open routes of the persistent monitor. Without routing the global route is kept in the index path itself,
+	 * with routing every route is kept in its sub directory (named by the url encoded value), new routes are created on demand
+	 */
+	private RoutedMonitor openRoutes(Path indexPath, Analyzer analyzer, LuwakQuerySerializer querySerializer) throws IOException {
+		if (routingField == null) {
+			PartitionedMonitor globalMonitor = new PartitionedMonitor(openPartitions(indexPath, analyzer, querySerializer), partitionExecutor);
+			
+			return new RoutedMonitor(null, Map.of(RoutedMonitor.GLOBAL_ROUTE, globalMonitor), route -> globalMonitor);
+		}
+		
+		Map<String, PartitionedMonitor> routeToMonitor = new HashMap<>();
+		RoutedMonitor.IRouteMonitorFactory monitorFactory = route -> new PartitionedMonitor(openPartitions(getRoutePath(indexPath, route), analyzer, querySerializer),
+				partitionExecutor);
+		
+		try {
+			routeToMonitor.put(RoutedMonitor.GLOBAL_ROUTE, monitorFactory.create(RoutedMonitor.GLOBAL_ROUTE));
+			
+			if (Files.exists(indexPath)) {
+				try (Stream<Path> routePaths = Files.list(indexPath)) {
+					for (Path routePath : (Iterable<Path>) routePaths::iterator) {
+						String routeDir = routePath.getFileName().toString();
+						
+						if (routeDir.startsWith(ROUTE_DIR_PREFIX) && Files.isDirectory(routePath)) {
+							String route = URLDecoder.decode(routeDir.substring(ROUTE_DIR_PREFIX.length()), StandardCharsets.UTF_8);
+							routeToMonitor.put(route, monitorFactory.create(route));
+						}
+					}
+				}
+			}
+		} catch (IOException e) {
+			IOUtils.closeWhileHandlingException(routeToMonitor.values());
+			
+			throw e;
+		}
+		
+		return new RoutedMonitor(routingField, routeToMonitor, monitorFactory);
+	}
+	
+	private static Path getRoutePath(Path indexPath, String route) {
+		return indexPath.resolve(route.equals(RoutedMonitor.GLOBAL_ROUTE) ? GLOBAL_ROUTE_DIR : ROUTE_DIR_PREFIX + URLEncoder.encode(route, StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Open partitions of the persistent monitor concurrently (queries are parsed again while they are restored).
+	 * A single partition is kept in the index path itself, several partitions in its sub directories
+	 */
+	private List<Monitor> openPartitions(Path indexPath, Analyzer analyzer, LuwakQuerySerializer querySerializer) throws IOException {
+		List<Future<Monitor>> openedPartitions = new ArrayList<>(monitorPartitions);
+		List<Monitor> partitions = new ArrayList<>(monitorPartitions);
+		
+		try {
+			for (int partition = 0; partition < monitorPartitions; partition++) {
+				Path partitionPath = monitorPartitions == 1 ? indexPath : indexPath.resolve(PARTITION_DIR_PREFIX + partition);
+				openedPartitions.add(partitionExecutor.submit(() -> new Monitor(analyzer, presearcher,
+						new MonitorConfiguration().setIndexPath(partitionPath, querySerializer))));
+			}
+			
+			for (Future<Monitor> openedPartition : openedPartitions) {
+				partitions.add(openedPartition.get());
+			}
+			
+			return partitions;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			openedPartitions.forEach(openedPartition -> openedPartition.cancel(true));
+			IOUtils.closeWhileHandlingException(partitions);
+			
+			throw new IOException("Interrupted while opening monitor partitions", e);
+		} catch (ExecutionException e) {
+			for (Future<Monitor> openedPartition : openedPartitions) {						// close partitions were opened successfully
+				try {
+					IOUtils.closeWhileHandlingException(openedPartition.get());
+				} catch (InterruptedException | ExecutionException ex) {
+					log.debug("Monitor partition wasn't opened", ex);
+				}
+			}
+			
+			throw new IOException(String.format("Failed to open monitor partitions in %s", indexPath), e.getCause());
+		}
+	}
+	
+	/**
+	 * @return index path of the persistent monitor was current on the last run
+	 * @throws IOException
+	 */
+	private Path getCurrentIndexPath() throws IOException {
+		Path currentIndexFile = Paths.get(core.getDataDir(), MONITOR_INDEX_DIR + CURRENT_INDEX_FILE_SUFFIX);
+		
+		if (!Files.exists(currentIndexFile)) {
+			return Paths.get(core.getDataDir(), MONITOR_INDEX_DIR);
+		}
+		
+		return Paths.get(core.getDataDir(), Files.readString(currentIndexFile, StandardCharsets.UTF_8).trim());
+	}
+	
+	/**
+	 * The persistent monitor is rebuilt in the other of two index directories, so the current one is kept until the swap
+	 * @return index path for a new generation (null for in-memory monitor)
+	 * @throws Exception
+	 */
+	private Path getNextIndexPath() throws Exception {
+		Path currentIndexPath = generation.getIndexPath();
+		
+		if (currentIndexPath == null) {
+			return null;
+		}
+		
+		if (retiredGeneration != null) {
+			retiredGeneration.awaitClosed();												// it could still use the other directory
+		}
+		
+		String currentIndexDir = currentIndexPath.getFileName().toString();
+		Path nextIndexPath = currentIndexPath.resolveSibling(currentIndexDir.equals(MONITOR_INDEX_DIR) ? MONITOR_INDEX_DIR + ALTERNATE_INDEX_DIR_SUFFIX : MONITOR_INDEX_DIR);
+		Files.deleteIfExists(Paths.get(nextIndexPath + FINGERPRINT_FILE_SUFFIX));	// the index is rebuilt from scratch
+		
+		return nextIndexPath;
+	}
+	
+	private static void deleteDirectory(Path path) throws IOException {
+		if (!Files.exists(path)) {
+			return;
+		}
+		
+		try (Stream<Path> paths = Files.walk(path)) {
+			for (Path file : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(file);
+			}
 		}
 	}
 	// ============================================================================================ //
@@ -125,49 +677,155 @@ public class LuwakQueriesManager implements AutoCloseable {
 		return writers;
 	}
 	
-	public Monitor getMonitor() {
-		return monitor;
+	public RoutedMonitor getMonitor() {
+		return generation.getMonitor();
+	}
+	
+	public Map<String, StoredQuery> getQueryIdToQuery() {
+		return generation.getQueryIdToQuery();
+	}
+	
+	/**
+	 * @return keyword matcher or null if keyword matching is disabled
+	 */
+	public KeywordQueryMatcher getKeywordMatcher() {
+		return generation.getKeywordMatcher();
 	}
 	
-	public  Map<String,LuwakQuery> getQueryIdToLuwakQuery() {
-		return queryIdToLuwakQuery;
+	public QueryTemplateIndex getTemplateIndex() {
+		return generation.getTemplateIndex();
+	}
+	
+	/**
+	 * @param queryId
+	 * @return query string of monitor query or rendered template of templated query (null if the query doesn't exist)
+	 */
+	public String getQueryString(String queryId) {
+		return generation.getQueryString(queryId);
 	}
 	
 	public IQueryReader getQueryReader() {
 		return reader;
 	}
 	
-	// ============================================================================================ //	
+	public List<IPresearcherComponent> getPresearcherComponents() {
+		return presearcherComponents;
+	}
+	
+	public LuwakMatchStats getMatchStats() {
+		return matchStats;
+	}
+	
+	public synchronized Map<MatchLane, MatchExecutor> getMatchExecutors() {
+		return new EnumMap<>(laneToMatchExecutor);
+	}
+	
+	public synchronized Map<MatchLane, MicroBatcher<?>> getMicroBatchers() {
+		return new EnumMap<>(laneToMicroBatcher);
+	}
+	
 	/**
-	 * Update all queries in solcolator
-	 * In the case query contains dynamic values like NOW, it will be update
+	 * @return cache of parsed queries or null if parsed queries aren't cached
 	 */
-	public void updateAllQueries() {
-		synchronized (updatedLock) {
-			log.info("Solcolator is started to update all its queries");
-			long startTime = System.currentTimeMillis();
-			queryIdToLuwakQuery.forEach((queryId, query) -> {
-				try {
-					monitor.register(query);												// add/update query in monitor
-				} catch (Exception e) {
-					log.error(String.format("Query %s is failed to update", queryId), e);
-				}
-			});
-			log.info(String.format("Solcolator is finished to update all its queries in %d miliseconds", System.currentTimeMillis() - startTime));
+	public ParsedQueryCache getParsedQueryCache() {
+		return parsedQueryCache;
+	}
+	
+	// ============================================================================================ //
+	/**
+	 * Build Luwak query from solcolator query, the query is parsed by the query parsers of the core
+	 * @param solcolatorQuery
+	 * @return Luwak query
+	 * @throws Exception
+	 */
+	public LuwakQuery buildLuwakQuery(SolcolatorQuery solcolatorQuery) throws Exception {
+		String queryId = solcolatorQuery.getQueryId();
+		String query = solcolatorQuery.getQuery();
+		
+		try {
+			return new LuwakQuery(queryId, solcolatorQuery.getQueryName(), queryParser.parse(query, solcolatorQuery.getQueryMetadata()),
+					query, solcolatorQuery.getQueryMetadata());
+		} catch (Exception e) {
+			String errMessage = String.format("Failed to parse query with id %s", queryId);
+			log.error(errMessage, e);
+			
+			throw new Exception(errMessage, e);
 		}
 	}
+	
+	// ============================================================================================ //
+	/**
+	 * Update solcolator query (add query if it doesn't exist).
+	 * Templated queries are added to the template index, all others to the monitor
+	 * @param solcolatorQuery
+	 * @throws Exception
+	 */
+	public void updateQuery(SolcolatorQuery solcolatorQuery) throws Exception {
+		LuwakQuery luwakQuery = solcolatorQuery.isTemplated() ? null : buildLuwakQuery(solcolatorQuery);
 		
+		synchronized (writeLock) {
+			if (luwakQuery == null) {
+				updateTemplatedQuery(generation, solcolatorQuery);
+			} else {
+				updateQueryInMonitor(generation, luwakQuery);
+			}
+			
+			if (pendingUpdates != null) {
+				pendingUpdates.update(solcolatorQuery);
+			}
+		}
+	}
+	
 	/**
-	 * Update solcolator query (add query if it doesn't exist)
-	 * @param monitorQuery
+	 * Delete solcolator query bu query id
+	 * @param queryId
 	 * @throws Exception
 	 */
-	public void updateQueryInMonitor(LuwakQuery monitorQuery) throws Exception {
-		synchronized (updatedLock) {
+	public void deleteQueryFromMonitor(String queryId) throws Exception {
+		synchronized (writeLock) {
+			deleteQuery(generation, queryId);
+			
+			if (pendingUpdates != null) {
+				pendingUpdates.delete(queryId);
+			}
+		}
+	}
+	
+	private void updateQuery(LuwakQueriesGeneration generation, SolcolatorQuery solcolatorQuery) throws Exception {
+		if (solcolatorQuery.isTemplated()) {
+			updateTemplatedQuery(generation, solcolatorQuery);
+		} else {
+			updateQueryInMonitor(generation, buildLuwakQuery(solcolatorQuery));
+		}
+	}
+	
+	private void updateTemplatedQuery(LuwakQueriesGeneration generation, SolcolatorQuery solcolatorQuery) throws Exception {
+		synchronized (writeLock) {
+			String queryId = solcolatorQuery.getQueryId();
+			
+			try {
+				generation.getTemplateIndex().register(queryId, solcolatorQuery.getTemplateName(), solcolatorQuery.getTemplateParams());
+			} catch (Exception e) {
+				String errMessage = String.format("Failed to load templated query with id %s", queryId);
+				log.error(errMessage, e);
+				
+				throw new Exception(errMessage, e);
+			}
+			
+			if (generation.removeQuery(queryId) && !deleteKeywordQuery(generation, queryId)) {	// the query was a monitor query before
+				deleteFromMonitor(generation, List.of(queryId));
+			}
+			
+			log.info(String.format("The templated query %s was updated successfully", queryId));
+		}
+	}
+	
+	private void updateQueryInMonitor(LuwakQueriesGeneration generation, LuwakQuery monitorQuery) throws Exception {
+		synchronized (writeLock) {
 			String queryId = monitorQuery.getId();
 			
 			try {
-				monitor.register(monitorQuery);												// add/update query in monitor
+				registerQuery(generation, monitorQuery);										// add/update query in monitor/keyword matcher
 			} catch (IOException e) {
 				String errMessage = String.format("Failed to load query with id %s due to %s", monitorQuery.getId(), e.getMessage());
 				log.error(errMessage);
@@ -179,24 +837,20 @@ public class LuwakQueriesManager implements AutoCloseable {
 				
 				throw new Exception(errMessage, e);
 			}
-		
 			
-			queryIdToLuwakQuery.put(queryId, monitorQuery);								// add/update query in queryId to query mapping
+			
+			putQuery(generation, monitorQuery);				// add/update query in queryId to query mapping
+			generation.getTemplateIndex().delete(queryId);									// the query could be a templated query before
 			
 			log.info(String.format("The query %s was updated successfully", monitorQuery.getId()));
 		}
 	}
 	
-	/**
-	 * Delete solcolator query bu query id
-	 * @param queryId
-	 * @throws Exception
-	 */
-	public void deleteQueryFromMonitor(String queryId) throws Exception {
-		synchronized (updatedLock) {
-
+	private void deleteQuery(LuwakQueriesGeneration generation, String queryId) throws Exception {
+		synchronized (writeLock) {
+			
 			try {
-				monitor.deleteById(queryId);
+				deleteFromMonitor(generation, List.of(queryId));
 			} catch (Exception ex) {
 				String errMessage = String.format("Failed to delete query with id %s", queryId);
 				log.error(errMessage, ex);
@@ -204,9 +858,11 @@ public class LuwakQueriesManager implements AutoCloseable {
 				throw new Exception(errMessage, ex);
 			}
 			
-			LuwakQuery query = queryIdToLuwakQuery.remove(queryId);
+			boolean isMonitorQuery = generation.removeQuery(queryId);
+			boolean isTemplated = generation.getTemplateIndex().delete(queryId);
+			deleteKeywordQuery(generation, queryId);
 			
-			if (query == null) {
+			if (!isMonitorQuery && !isTemplated) {
 				log.error(String.format("Illegal case: Query with id %s doesn't exist in solcolator", queryId));
 				return;
 			}
@@ -214,4 +870,366 @@ public class LuwakQueriesManager implements AutoCloseable {
 			log.info(String.format("The query %s was deleted successfully", queryId));
 		}
 	}
+	
+	/**
+	 * Register keyword query in keyword matcher and any other query in monitor
+	 * @param generation
+	 * @param query
+	 * @throws IOException
+	 */
+	private void registerQuery(LuwakQueriesGeneration generation, LuwakQuery query) throws IOException {
+		String queryId = query.getId();
+		KeywordQueryMatcher keywordMatcher = generation.getKeywordMatcher();
+		
+		if (keywordMatcher != null && keywordMatcher.register(queryId, query.getQuery())) {
+			deleteFromMonitor(generation, List.of(queryId));									// the query could be a monitor query before
+			
+			return;
+		}
+		
+		registerInMonitor(generation, List.of(query));
+		deleteKeywordQuery(generation, queryId);
+	}
+	
+	/**
+	 * Register queries, keyword queries in keyword matcher and all others in monitor (by a single update)
+	 * @param generation
+	 * @param queries
+	 * @return ids of queries were registered in monitor (duplicates of registered queries aren't)
+	 * @throws IOException
+	 */
+	private Set<String> registerQueries(LuwakQueriesGeneration generation, List<LuwakQuery> queries) throws IOException {
+		List<LuwakQuery> monitorQueries = new ArrayList<>();
+		List<String> keywordQueryIds = new ArrayList<>();
+		Set<String> monitorQueryIds;
+		KeywordQueryMatcher keywordMatcher = generation.getKeywordMatcher();
+		
+		synchronized (writeLock) {
+			for (LuwakQuery query : queries) {
+				if (keywordMatcher == null || !keywordMatcher.register(query.getId(), query.getQuery())) {
+					monitorQueries.add(query);
+					deleteKeywordQuery(generation, query.getId());
+				} else {
+					keywordQueryIds.add(query.getId());
+				}
+			}
+			
+			deleteFromMonitor(generation, keywordQueryIds);										// keyword queries could be monitor queries before
+			monitorQueryIds = registerInMonitor(generation, monitorQueries);
+			
+			putQueries(generation, queries);
+			for (LuwakQuery query : queries) {
+				generation.getTemplateIndex().delete(query.getId());
+			}
+		}
+		
+		return monitorQueryIds;
+	}
+	
+	/**
+	 * Load queries to the generation, chunks are parsed in parallel and registered in the reading order
+	 * @param generation - generation the queries are loaded to
+	 * @param queryChunks - source of query chunks
+	 * @throws Exception
+	 */
+	private void loadQueries(LuwakQueriesGeneration generation, IQueryChunks queryChunks) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService parseExecutor = Executors.newFixedThreadPool(threads);
+		
+		try {
+			long start = System.currentTimeMillis();
+			QueriesLoad load = new QueriesLoad(generation, parseExecutor, threads * MAX_PENDING_CHUNKS_PER_THREAD);
+			queryChunks.read(load::submit);
+			load.finish();
+			
+			QueryTemplateIndex templateIndex = generation.getTemplateIndex();
+			int keywordQueryCount = generation.getKeywordMatcher() == null ? 0 : generation.getKeywordMatcher().getQueryCount();
+			int duplicateQueryCount = generation.getQueryGroups().getDuplicateCount();
+			log.info(String.format("Solcolator finished to load %d queries (%d templated, %d keyword, %d duplicates) to generation %d in %s miliseconds with %d threads",
+					generation.getMonitor().getQueryCount() + templateIndex.getQueryCount() + keywordQueryCount + duplicateQueryCount,
+					templateIndex.getQueryCount(), keywordQueryCount, duplicateQueryCount, generation.getNumber(), System.currentTimeMillis() - start, threads));
+		} finally {
+			parseExecutor.shutdownNow();
+		}
+	}
+	
+	private interface IQueryChunks {
+		void read(Consumer<List<SolcolatorQuery>> chunkConsumer) throws IOException;
+	}
+	
+	/**
+	 * Streaming load of queries to a generation. Chunks are parsed by the executor and registered in the reading order,
+	 * reading is paused while too many parsed chunks are waiting for registration
+	 */
+	private class QueriesLoad {
+		private final LuwakQueriesGeneration generation;
+		private final ExecutorService parseExecutor;
+		private final int maxPendingChunks;
+		private final Deque<Future<List<LuwakQuery>>> pendingChunks = new ArrayDeque<>();
+		private final List<IOException> errors = Collections.synchronizedList(new ArrayList<>());
+		private final Map<String, LuwakQuery> restoredQueries;
+		private final Set<String> staleQueryIds;
+		private int queryCount;
+		private int changedQueryCount;
+		
+		QueriesLoad(LuwakQueriesGeneration generation, ExecutorService parseExecutor, int maxPendingChunks) {
+			LuwakQuerySerializer querySerializer = generation.getQuerySerializer();
+			this.generation = generation;
+			this.parseExecutor = parseExecutor;
+			this.maxPendingChunks = maxPendingChunks;
+			this.restoredQueries = querySerializer == null ? new HashMap<>() : querySerializer.getRestoredQueries();
+			this.staleQueryIds = querySerializer == null ? new HashSet<>() : new HashSet<>(querySerializer.getStoredQueryIds());
+		}
+		
+		void submit(List<SolcolatorQuery> chunk) {
+			List<SolcolatorQuery> changedQueries = new ArrayList<>(chunk.size());
+			List<LuwakQuery> unchangedQueries = new ArrayList<>();
+			
+			for (SolcolatorQuery solcolatorQuery : chunk) {
+				LuwakQuery restoredQuery = restoredQueries.get(solcolatorQuery.getQueryId());
+				queryCount++;
+				
+				if (solcolatorQuery.isTemplated()) {
+					try {
+						updateTemplatedQuery(generation, solcolatorQuery);
+					} catch (Exception e) {
+						errors.add(new IOException(e.getMessage(), e));
+					}
+				} else if (isUnchanged(restoredQuery, solcolatorQuery)) {
+					unchangedQueries.add(restoredQuery);			// already in the persistent monitor
+					staleQueryIds.remove(restoredQuery.getId());
+				} else {
+					changedQueries.add(solcolatorQuery);
+				}
+			}
+			
+			try {
+				addRestoredQueries(generation, unchangedQueries);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			
+			changedQueryCount += changedQueries.size();
+			pendingChunks.add(parseExecutor.submit(() -> parse(changedQueries)));
+			
+			while (pendingChunks.size() > maxPendingChunks) {
+				registerNextChunk();
+			}
+		}
+		
+		void finish() {
+			while (!pendingChunks.isEmpty()) {
+				registerNextChunk();
+			}
+			
+			if (!staleQueryIds.isEmpty()) {
+				try {
+					generation.getMonitor().deleteById(new ArrayList<>(staleQueryIds));		// deleted from the reader since the last start
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			
+			if (generation.getQuerySerializer() != null) {
+				log.info(String.format("Solcolator replayed %d changed and %d deleted queries", changedQueryCount, staleQueryIds.size()));
+				restoredQueries.clear();
+				generation.getQuerySerializer().getStoredQueryIds().clear();
+			}
+			
+			if (!errors.isEmpty()) {
+				log.error(String.format("Solcolator failed to load %d of %d queries (first %d are printed):%s", errors.size(), queryCount,
+						Math.min(errors.size(), MAX_PRINTED_LOAD_ERRORS),
+						LuwakUpdateException.getPrintableErrorString(errors.subList(0, Math.min(errors.size(), MAX_PRINTED_LOAD_ERRORS)))));
+			}
+		}
+		
+		private List<LuwakQuery> parse(List<SolcolatorQuery> solcolatorQueries) {
+			List<LuwakQuery> queries = new ArrayList<>(solcolatorQueries.size());
+			
+			for (SolcolatorQuery solcolatorQuery : solcolatorQueries) {
+				String queryId = solcolatorQuery.getQueryId();
+				
+				try {
+					queries.add(new LuwakQuery(queryId, solcolatorQuery.getQueryName(),
+							queryParser.parse(solcolatorQuery.getQuery(), solcolatorQuery.getQueryMetadata()),
+							solcolatorQuery.getQuery(), solcolatorQuery.getQueryMetadata()));
+				} catch (Exception e) {
+					errors.add(new IOException(String.format("Failed to parse query with id %s due to %s", queryId, e.getMessage()), e));
+				}
+			}
+			
+			return queries;
+		}
+		
+		private void registerNextChunk() {
+			try {
+				staleQueryIds.removeAll(registerQueries(generation, pendingChunks.poll().get()));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				
+				throw new IllegalStateException("Loading of queries is interrupted", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Failed to parse chunk of queries", e.getCause());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Register monitor queries by groups of identical queries (see QueryGroups): a query joins the group of its canonical text,
+	 * and it's registered in the monitor only if it's the first query of the group
+	 * @param generation
+	 * @param queries
+	 * @return ids of queries were registered in monitor
+	 * @throws IOException
+	 */
+	private Set<String> registerInMonitor(LuwakQueriesGeneration generation, List<LuwakQuery> queries) throws IOException {
+		QueryGroups groups = generation.getQueryGroups();
+		Map<String, LuwakQuery> idToQuery = new HashMap<>();
+		Map<String, LuwakQuery> queriesToRegister = new LinkedHashMap<>();
+		Set<String> queryIdsToDelete = new HashSet<>();
+		
+		for (LuwakQuery query : queries) {
+			String queryId = query.getId();
+			String canonicalText = LuwakQueryParser.toCanonicalText(query.getQueryString(), query.getMetadata());
+			idToQuery.put(queryId, query);
+			
+			if (canonicalText.equals(groups.getCanonicalText(queryId))) {
+				if (groups.isRepresentative(queryId)) {
+					queriesToRegister.put(queryId, query);										// parsed again (refresh)
+				}
+				
+				continue;
+			}
+			
+			removeFromGroup(generation, queryId, idToQuery, queriesToRegister, queryIdsToDelete);
+			
+			if (groups.add(queryId, canonicalText).equals(queryId)) {
+				queriesToRegister.put(queryId, query);
+				queryIdsToDelete.remove(queryId);
+			}
+		}
+		
+		updateMonitor(generation, queriesToRegister, queryIdsToDelete);
+		
+		return queriesToRegister.keySet();
+	}
+	
+	/**
+	 * Delete monitor queries from their groups, the next query of a group is registered instead of a deleted representative
+	 * @param generation
+	 * @param queryIds - ids of queries (not monitor queries are skipped)
+	 * @throws IOException
+	 */
+	private void deleteFromMonitor(LuwakQueriesGeneration generation, List<String> queryIds) throws IOException {
+		Map<String, LuwakQuery> queriesToRegister = new LinkedHashMap<>();
+		Set<String> queryIdsToDelete = new HashSet<>();
+		
+		for (String queryId : queryIds) {
+			if (generation.getQueryGroups().contains(queryId)) {
+				removeFromGroup(generation, queryId, Map.of(), queriesToRegister, queryIdsToDelete);
+			}
+		}
+		
+		updateMonitor(generation, queriesToRegister, queryIdsToDelete);
+	}
+	
+	private void removeFromGroup(LuwakQueriesGeneration generation, String queryId, Map<String, LuwakQuery> idToQuery,
+			Map<String, LuwakQuery> queriesToRegister, Set<String> queryIdsToDelete) throws IOException {
+		QueryGroups groups = generation.getQueryGroups();
+		
+		if (!groups.isRepresentative(queryId)) {
+			groups.remove(queryId);
+			
+			return;
+		}
+		
+		String newRepresentative = groups.remove(queryId);
+		queriesToRegister.remove(queryId);
+		queryIdsToDelete.add(queryId);
+		
+		if (newRepresentative != null) {
+			LuwakQuery query = idToQuery.get(newRepresentative);
+			queriesToRegister.put(newRepresentative, query != null ? query : rebuildQuery(generation, newRepresentative));
+			queryIdsToDelete.remove(newRepresentative);
+		}
+	}
+	
+	/**
+	 * Parse again query of the generation (it becomes the representative of its group)
+	 */
+	private LuwakQuery rebuildQuery(LuwakQueriesGeneration generation, String queryId) throws IOException {
+		StoredQuery query = generation.getQueries().getSnapshot().get(queryId);
+		
+		if (query == null) {
+			throw new IOException(String.format("Query %s of a group doesn't exist in solcolator", queryId));
+		}
+		
+		try {
+			return buildLuwakQuery(new SolcolatorQuery(queryId, query.getQueryName(), query.getQueryString(), query.getMetadata()));
+		} catch (Exception e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+	
+	private void updateMonitor(LuwakQueriesGeneration generation, Map<String, LuwakQuery> queriesToRegister, Set<String> queryIdsToDelete)
+			throws IOException {
+		if (!queryIdsToDelete.isEmpty()) {
+			generation.getMonitor().deleteById(new ArrayList<>(queryIdsToDelete));
+		}
+		
+		if (!queriesToRegister.isEmpty()) {
+			generation.getMonitor().register(new ArrayList<>(queriesToRegister.values()));
+		}
+		
+		generation.getQueryGroups().publish();
+	}
+	
+	/**
+	 * Add queries restored from the persistent monitor to their groups, restored duplicates are deleted from the monitor
+	 * @param generation
+	 * @param queries - restored queries
+	 * @throws IOException
+	 */
+	private void addRestoredQueries(LuwakQueriesGeneration generation, List<LuwakQuery> queries) throws IOException {
+		QueryGroups groups = generation.getQueryGroups();
+		List<String> duplicateIds = new ArrayList<>();
+		
+		synchronized (writeLock) {
+			for (LuwakQuery query : queries) {
+				String canonicalText = LuwakQueryParser.toCanonicalText(query.getQueryString(), query.getMetadata());
+				
+				if (!groups.add(query.getId(), canonicalText).equals(query.getId())) {
+					duplicateIds.add(query.getId());
+				}
+			}
+			
+			groups.publish();
+			if (!duplicateIds.isEmpty()) {
+				generation.getMonitor().deleteById(duplicateIds);
+			}
+			
+			putQueries(generation, queries);
+		}
+	}
+	
+	private void putQuery(LuwakQueriesGeneration generation, LuwakQuery query) {
+		generation.putQuery(query, queryParser.hasFrozenDateMath(query.getQueryString(), query.getMetadata()));
+	}
+	
+	private void putQueries(LuwakQueriesGeneration generation, List<LuwakQuery> queries) {
+		generation.putQueries(queries, query -> queryParser.hasFrozenDateMath(query.getQueryString(), query.getMetadata()));
+	}
+	
+	private static boolean isUnchanged(LuwakQuery restoredQuery, SolcolatorQuery solcolatorQuery) {
+		return restoredQuery != null
+				&& Objects.equals(restoredQuery.getQueryName(), solcolatorQuery.getQueryName())
+				&& Objects.equals(restoredQuery.getQueryString(), solcolatorQuery.getQuery())
+				&& Objects.equals(restoredQuery.getMetadata(), solcolatorQuery.getQueryMetadata() == null ? Map.of() : solcolatorQuery.getQueryMetadata());
+	}
+	
+	private boolean deleteKeywordQuery(LuwakQueriesGeneration generation, String queryId) {
+		return generation.getKeywordMatcher() != null && generation.getKeywordMatcher().delete(queryId);
+	}
 }
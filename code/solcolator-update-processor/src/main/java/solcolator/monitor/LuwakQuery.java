@@ -1,6 +1,7 @@
 package solcolator.monitor;
 
 import org.apache.lucene.monitor.MonitorQuery;
+import org.apache.lucene.search.Query;
 
 import java.util.Map;
 
@@ -9,12 +10,12 @@ import java.util.Map;
  */
 public class LuwakQuery extends MonitorQuery {
 	private final String queryName;
-	
-	public LuwakQuery(String id, String queryName, String query, Map<String, String> queryMetadata) {
-		super(id, null, query, queryMetadata);
+
+	public LuwakQuery(String id, String queryName, Query query, String queryString, Map<String, String> queryMetadata) {
+		super(id, query, queryString, queryMetadata);
 		this.queryName = queryName;
 	}
-	
+
 	public String getQueryName() {
 		return queryName;
 	}
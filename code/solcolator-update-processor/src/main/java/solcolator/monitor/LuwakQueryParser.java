@@ -0,0 +1,258 @@
+package solcolator.monitor;
+
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.search.QParser;
+import org.apache.solr.search.QParserPlugin;
+import org.apache.solr.search.QueryParsing;
+import org.apache.solr.search.SyntaxError;
+import org.apache.solr.servlet.SolrRequestParsers;
+import org.apache.solr.util.DateMathParser;
+import org.apache.solr.util.TimeZoneUtils;
+import solcolator.common.SolrUtils;
+import solcolator.dates.RelativeDateRangeQuery;
+import solcolator.filters.FieldFilter;
+import solcolator.filters.PrefilteredQuery;
+import solcolator.filters.RequiredFields;
+import solcolator.presearcher.IPresearcherComponent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeSet;
+
+/**
+ * Parses solcolator queries (q=...&fq=...&defType=...) into Lucene queries with the query parsers of the core,
+ * so queries are analyzed exactly like the core's own search requests.
+ * Request handler metadata is used as default params (like defaults of a search handler).
+ * Every parsed clause is passed to the presearcher components, which may wrap it (see IPresearcherComponent.wrapQuery).
+ * Simple fq clauses and the fields the query requires can also be evaluated on raw document values before the query
+ * (see PrefilteredQuery).
+ * Date ranges relative to NOW can be kept unresolved till matching (see RelativeDateRangeQuery).
+ * Parsed queries can be cached by their params (see ParsedQueryCache).
+ */
+public class LuwakQueryParser {
+	private static final String MATCH_ALL_QUERY = "*:*";
+	private static final String DATE_MATH_NOW = "NOW";
+	private static final char PARAM_SEPARATOR = '\u0000';
+
+	private final SolrCore core;
+	private final List<IPresearcherComponent> presearcherComponents;
+	private final boolean isFieldFilters;
+	private final boolean isRelativeDates;
+	private final ParsedQueryCache cache;
+
+	public LuwakQueryParser(SolrCore core) {
+		this(core, Collections.emptyList(), false, false, null);
+	}
+
+	/**
+	 * @param core - solr core
+	 * @param presearcherComponents - components of the presearcher
+	 * @param isFieldFilters - if simple fq clauses are evaluated on raw document values before the query
+	 * @param isRelativeDates - if date ranges relative to NOW are resolved at match time
+	 * @param cache - cache of parsed queries (null - no cache)
+	 */
+	public LuwakQueryParser(SolrCore core, List<IPresearcherComponent> presearcherComponents, boolean isFieldFilters, boolean isRelativeDates,
+			ParsedQueryCache cache) {
+		this.core = core;
+		this.presearcherComponents = presearcherComponents;
+		this.isFieldFilters = isFieldFilters;
+		this.isRelativeDates = isRelativeDates;
+		this.cache = cache;
+	}
+
+	/**
+	 * Parse solcolator query string into Lucene query. All fq clauses are added to the main query as filters
+	 * @param queryString - url encoded query string (q=...&fq=...)
+	 * @param queryMetadata - request handler metadata (default args)
+	 * @return Lucene query
+	 * @throws SyntaxError
+	 */
+	public Query parse(String queryString, Map<String, String> queryMetadata) throws SyntaxError {
+		SolrParams params = toSolrParams(queryString, queryMetadata);
+		IndexSchema schema = core.getLatestSchema();
+		boolean isCacheable = cache != null && !hasFrozenDateMath(params, schema);	// such queries have to be parsed again to be up to date
+
+		if (isCacheable) {
+			Query query = cache.get(params, schema);
+			if (query != null) {
+				return query;
+			}
+		}
+
+		Query query = parse(queryString, params);
+		if (isCacheable) {
+			cache.put(params, schema, query);
+		}
+
+		return query;
+	}
+
+	private Query parse(String queryString, SolrParams params) throws SyntaxError {
+		SolrQueryRequest req = new LocalSolrQueryRequest(core, params);
+
+		try {
+			String defType = params.get(QueryParsing.DEFTYPE, QParserPlugin.DEFAULT_QTYPE);
+			String mainQueryString = params.get(CommonParams.Q, MATCH_ALL_QUERY);
+			Query mainQuery = QParser.getParser(mainQueryString, defType, req).getQuery();
+
+			if (mainQuery == null) {
+				throw new SyntaxError(String.format("Query %s has an empty main query", queryString));
+			}
+
+			mainQuery = wrapClause(mainQuery, mainQueryString, params, req.getSchema());
+
+			String[] filterQueries = params.getParams(CommonParams.FQ);
+			if (filterQueries == null || filterQueries.length == 0) {
+				return prefilter(mainQuery, Collections.emptyList());
+			}
+
+			BooleanQuery.Builder builder = new BooleanQuery.Builder();
+			builder.add(mainQuery, Occur.MUST);
+			List<FieldFilter> fieldFilters = new ArrayList<>();
+
+			for (String filterQuery : filterQueries) {
+				Query filter = QParser.getParser(filterQuery, req).getQuery();
+
+				if (filter != null) {
+					Query wrappedFilter = wrapClause(filter, filterQuery, params, req.getSchema());
+					builder.add(wrappedFilter, Occur.FILTER);
+					// relative date ranges aren't evaluated as field filters, their bounds are known at match time only
+					FieldFilter fieldFilter = isFieldFilters && !(wrappedFilter instanceof RelativeDateRangeQuery) ? FieldFilter.parse(filterQuery, req.getSchema()) : null;
+
+					if (fieldFilter != null) {
+						fieldFilters.add(fieldFilter);
+					}
+				}
+			}
+
+			return prefilter(builder.build(), fieldFilters);
+		} finally {
+			req.close();
+		}
+	}
+
+	/**
+	 * Wrap query with its field filters and the fields it requires, so it's evaluated only against documents
+	 * of a batch passed them (see PrefilteredQuery)
+	 */
+	private Query prefilter(Query query, List<FieldFilter> fieldFilters) {
+		Set<String> requiredFields = isFieldFilters ? RequiredFields.of(query) : Collections.emptySet();
+
+		return fieldFilters.isEmpty() && requiredFields.isEmpty() ? query : new PrefilteredQuery(query, fieldFilters, requiredFields);
+	}
+
+	private Query wrapClause(Query query, String clause, SolrParams params, IndexSchema schema) throws SyntaxError {
+		RelativeDateRangeQuery relativeDateRange = isRelativeDates ? RelativeDateRangeQuery.parse(clause, schema, getTimeZone(params)) : null;
+		if (relativeDateRange != null) {
+			return relativeDateRange;
+		}
+
+		for (IPresearcherComponent component : presearcherComponents) {
+			query = component.wrapQuery(query, clause, params);
+		}
+
+		return query;
+	}
+
+	/**
+	 * @param params - params of the query
+	 * @return time zone of the TZ param (UTC by default)
+	 * @throws SyntaxError if the time zone isn't supported
+	 */
+	private static TimeZone getTimeZone(SolrParams params) throws SyntaxError {
+		String timeZoneId = params.get(CommonParams.TZ);
+
+		if (timeZoneId == null) {
+			return DateMathParser.UTC;
+		}
+
+		TimeZone timeZone = TimeZoneUtils.getTimeZone(timeZoneId);
+		if (timeZone == null) {
+			throw new SyntaxError(String.format("Time zone %s isn't supported", timeZoneId));
+		}
+
+		return timeZone;
+	}
+
+	/**
+	 * Query depends on the time it was parsed at if any of its params has NOW date math, which isn't resolved at match time
+	 * (relative date ranges in q/fq are)
+	 * @param queryString - url encoded query string (q=...&fq=...)
+	 * @param queryMetadata - request handler metadata (default args)
+	 * @return true if the query has to be parsed again to be up to date
+	 */
+	public boolean hasFrozenDateMath(String queryString, Map<String, String> queryMetadata) {
+		return hasFrozenDateMath(toSolrParams(queryString, queryMetadata), core.getLatestSchema());
+	}
+
+	boolean hasFrozenDateMath(SolrParams params, IndexSchema schema) {
+		for (Iterator<String> paramNames = params.getParameterNamesIterator(); paramNames.hasNext();) {
+			String paramName = paramNames.next();
+			boolean isClause = paramName.equals(CommonParams.Q) || paramName.equals(CommonParams.FQ);
+
+			for (String value : params.getParams(paramName)) {
+				if (value.contains(DATE_MATH_NOW) && !(isClause && isRelativeDates && RelativeDateRangeQuery.parse(value, schema) != null)) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Canonical text of query: its params with the request handler defaults, sorted by name (values of a param in their order).
+	 * Queries with the same canonical text are parsed to the same query
+	 * @param queryString - url encoded query string (q=...&fq=...)
+	 * @param queryMetadata - request handler metadata (default args)
+	 * @return canonical text
+	 */
+	public static String toCanonicalText(String queryString, Map<String, String> queryMetadata) {
+		return toCanonicalText(toSolrParams(queryString, queryMetadata));
+	}
+
+	static String toCanonicalText(SolrParams params) {
+		Set<String> paramNames = new TreeSet<>();		// a param can be both in the query and in the defaults
+		for (Iterator<String> names = params.getParameterNamesIterator(); names.hasNext();) {
+			paramNames.add(names.next());
+		}
+
+		StringBuilder canonicalText = new StringBuilder();
+		for (String paramName : paramNames) {
+			for (String value : params.getParams(paramName)) {
+				canonicalText.append(paramName).append('=').append(value).append(PARAM_SEPARATOR);
+			}
+		}
+
+		return canonicalText.toString();
+	}
+
+	/**
+	 * Convert solcolator query string to Solr params, request handler metadata is used as defaults
+	 * @param queryString - url encoded query string (q=...&fq=...)
+	 * @param queryMetadata - request handler metadata (default args)
+	 * @return Solr params of the query
+	 */
+	public static SolrParams toSolrParams(String queryString, Map<String, String> queryMetadata) {
+		SolrParams queryParams = SolrRequestParsers.parseQueryString(queryString);
+
+		if (queryMetadata == null || queryMetadata.isEmpty()) {
+			return queryParams;
+		}
+
+		return SolrParams.wrapDefaults(queryParams, SolrParams.toSolrParams(SolrUtils.mapToNamedList(queryMetadata)));
+	}
+}
@@ -0,0 +1,119 @@
+package solcolator.monitor;
+
+import org.apache.lucene.monitor.MonitorQuery;
+import org.apache.lucene.monitor.MonitorQuerySerializer;
+import org.apache.lucene.monitor.Presearcher;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serializer of Luwak queries for the persistent monitor index. A query is stored with its id, name,
+ * query string and metadata, and is parsed again by the core's query parsers when it's read.
+ * Queries read while the monitor is opened are collected, so the manager knows which queries were restored.
+ */
+public class LuwakQuerySerializer implements MonitorQuerySerializer {
+	private static final Logger log = LoggerFactory.getLogger(LuwakQuerySerializer.class);
+	private static final byte VERSION = 1;
+
+	private final LuwakQueryParser queryParser;
+	private final Presearcher presearcher;
+	private final Map<String, LuwakQuery> restoredQueries = new ConcurrentHashMap<>();
+	private final Set<String> storedQueryIds = ConcurrentHashMap.newKeySet();
+	private volatile boolean isRestoring = true;
+
+	public LuwakQuerySerializer(LuwakQueryParser queryParser, Presearcher presearcher) {
+		this.queryParser = queryParser;
+		this.presearcher = presearcher;
+	}
+
+	@Override
+	public BytesRef serialize(MonitorQuery query) {
+		LuwakQuery luwakQuery = (LuwakQuery) query;
+		ByteBuffersDataOutput output = new ByteBuffersDataOutput();
+
+		try {
+			output.writeByte(VERSION);
+			output.writeString(luwakQuery.getId());
+			output.writeString(luwakQuery.getQueryName() == null ? "" : luwakQuery.getQueryName());
+			output.writeString(luwakQuery.getQueryString());
+			output.writeMapOfStrings(luwakQuery.getMetadata());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		return new BytesRef(output.toArrayCopy());
+	}
+
+	@Override
+	public MonitorQuery deserialize(BytesRef binaryValue) {
+		ByteArrayDataInput input = new ByteArrayDataInput(binaryValue.bytes, binaryValue.offset, binaryValue.length);
+
+		try {
+			byte version = input.readByte();
+			if (version != VERSION) {
+				throw new IOException(String.format("Unsupported version %d of serialized query", version));
+			}
+
+			String id = input.readString();
+			String queryName = input.readString();
+			String queryString = input.readString();
+			Map<String, String> metadata = new HashMap<>(input.readMapOfStrings());
+
+			if (isRestoring) {
+				storedQueryIds.add(id);
+			}
+
+			try {
+				LuwakQuery query = new LuwakQuery(id, queryName.isEmpty() ? null : queryName, queryParser.parse(queryString, metadata),
+						queryString, metadata);
+
+				if (isRestoring) {
+					presearcher.indexQuery(query.getQuery(), metadata);		// presearcher components learn the fields of the query
+					restoredQueries.put(id, query);
+				}
+
+				return query;
+			} catch (Exception e) {
+				// the query isn't restored, so it will be registered again from the reader (or deleted)
+				log.warn(String.format("Failed to parse stored query %s", id), e);
+
+				return new LuwakQuery(id, queryName.isEmpty() ? null : queryName, new MatchNoDocsQuery("Stored query can't be parsed"), queryString,
+						metadata);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Stop collecting restored queries
+	 */
+	public void finishRestoring() {
+		isRestoring = false;
+	}
+
+	/**
+	 * @return queries were restored (and parsed successfully) from the persistent index
+	 */
+	public Map<String, LuwakQuery> getRestoredQueries() {
+		return restoredQueries;
+	}
+
+	/**
+	 * @return ids of all the queries were found in the persistent index
+	 */
+	public Set<String> getStoredQueryIds() {
+		return storedQueryIds;
+	}
+}
@@ -0,0 +1,107 @@
+package solcolator.monitor;
+
+import org.apache.lucene.search.Query;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.schema.IndexSchema;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LRU cache of parsed queries keyed by their canonical text (query params with the request handler defaults,
+ * sorted by name, see LuwakQueryParser.toCanonicalText), so REFRESH, REREAD and UPDATE of queries with unchanged text skip parsing.
+ * Parsed queries depend on the schema, so the cache is cleared when the schema of the core is changed.
+ * Queries with NOW date math resolved at parse time aren't cached (see LuwakQueryParser.hasFrozenDateMath)
+ */
+public class ParsedQueryCache {
+	private final int maxSize;
+	private final Map<String, Query> keyToQuery;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private IndexSchema schema;			// schema the cached queries were parsed with
+
+	/**
+	 * @param maxSize - max number of cached queries
+	 */
+	public ParsedQueryCache(int maxSize) {
+		this.maxSize = maxSize;
+		this.keyToQuery = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Query> eldest) {
+				boolean isEvicted = size() > ParsedQueryCache.this.maxSize;
+
+				if (isEvicted) {
+					evictions.increment();
+				}
+
+				return isEvicted;
+			}
+		};
+	}
+
+	/**
+	 * @param params - params of the query (with defaults)
+	 * @param schema - schema the query would be parsed with
+	 * @return parsed query or null if it isn't cached
+	 */
+	public Query get(SolrParams params, IndexSchema schema) {
+		String key = LuwakQueryParser.toCanonicalText(params);
+		Query query;
+
+		synchronized (keyToQuery) {
+			query = schema == this.schema ? keyToQuery.get(key) : null;
+		}
+
+		if (query == null) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+
+		return query;
+	}
+
+	/**
+	 * @param params - params of the query (with defaults)
+	 * @param schema - schema the query was parsed with
+	 * @param query - parsed query
+	 */
+	public void put(SolrParams params, IndexSchema schema, Query query) {
+		String key = LuwakQueryParser.toCanonicalText(params);
+
+		synchronized (keyToQuery) {
+			if (schema != this.schema) {
+				keyToQuery.clear();
+				this.schema = schema;
+			}
+
+			keyToQuery.put(key, query);
+		}
+	}
+
+	public int size() {
+		synchronized (keyToQuery) {
+			return keyToQuery.size();
+		}
+	}
+
+	public NamedList<Object> toNamedList() {
+		long hitCount = hits.sum();
+		long lookups = hitCount + misses.sum();
+
+		NamedList<Object> stats = new NamedList<>();
+		stats.add("size", size());
+		stats.add("maxSize", maxSize);
+		stats.add("hits", hitCount);
+		stats.add("misses", misses.sum());
+		stats.add("evictions", evictions.sum());
+		stats.add("hitRatio", lookups == 0 ? 0.0 : (double) hitCount / lookups);
+
+		return stats;
+	}
+}
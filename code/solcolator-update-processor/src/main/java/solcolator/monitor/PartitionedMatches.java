@@ -0,0 +1,110 @@
+package solcolator.monitor;
+
+import org.apache.lucene.monitor.MultiMatchingQueries;
+import org.apache.lucene.monitor.QueryMatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Matches of a batch of documents merged from all partitions of a partitioned monitor (see PartitionedMonitor).
+ * Matches of routed monitors (see RoutedMonitor) are merged from sub batches, so a partition can match a part of the batch only
+ */
+public class PartitionedMatches<T extends QueryMatch> {
+	private final List<MultiMatchingQueries<T>> partitionMatches;
+	private final List<int[]> partitionDocIds = new ArrayList<>();	// position in the partition's sub batch by position in the batch (null - whole batch)
+	private final int batchSize;
+
+	PartitionedMatches(List<MultiMatchingQueries<T>> partitionMatches, int batchSize) {
+		this.partitionMatches = new ArrayList<>(partitionMatches);
+		this.batchSize = batchSize;
+
+		for (int partition = 0; partition < partitionMatches.size(); partition++) {
+			partitionDocIds.add(null);
+		}
+	}
+
+	/**
+	 * Add matches of a sub batch
+	 * @param matches - matches of the sub batch
+	 * @param docIds - positions in the batch of the sub batch documents (null - the sub batch is the whole batch)
+	 */
+	void add(PartitionedMatches<T> matches, int[] docIds) {
+		for (int partition = 0; partition < matches.partitionMatches.size(); partition++) {
+			int[] subBatchDocIds = matches.partitionDocIds.get(partition);
+			partitionMatches.add(matches.partitionMatches.get(partition));
+
+			if (docIds == null) {
+				partitionDocIds.add(subBatchDocIds);
+				continue;
+			}
+
+			int[] batchDocIds = new int[batchSize];
+			Arrays.fill(batchDocIds, -1);
+			for (int subBatchDocId = 0; subBatchDocId < docIds.length; subBatchDocId++) {
+				batchDocIds[docIds[subBatchDocId]] = subBatchDocIds == null ? subBatchDocId : subBatchDocIds[subBatchDocId];
+			}
+
+			partitionDocIds.add(batchDocIds);
+		}
+	}
+
+	/**
+	 * @param docId - position of the document in the batch
+	 * @return matches of the document in all partitions
+	 */
+	public Collection<T> getMatches(int docId) {
+		if (partitionMatches.size() == 1) {
+			return getPartitionMatches(0, docId);
+		}
+
+		List<T> matches = new ArrayList<>();
+		for (int partition = 0; partition < partitionMatches.size(); partition++) {
+			matches.addAll(getPartitionMatches(partition, docId));
+		}
+
+		return matches;
+	}
+
+	private Collection<T> getPartitionMatches(int partition, int docId) {
+		int[] docIds = partitionDocIds.get(partition);
+		int partitionDocId = docIds == null ? docId : docIds[docId];
+
+		return partitionDocId < 0 ? Collections.emptyList() : partitionMatches.get(partition).getMatches(partitionDocId);
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @return number of candidate queries were run in all partitions
+	 */
+	public int getQueriesRun() {
+		int queriesRun = 0;
+
+		for (MultiMatchingQueries<T> partition : partitionMatches) {
+			queriesRun += partition.getQueriesRun();
+		}
+
+		return queriesRun;
+	}
+
+	/**
+	 * @return errors of queries failed to run in all partitions
+	 */
+	public Map<String, Exception> getErrors() {
+		Map<String, Exception> errors = new HashMap<>();
+
+		for (MultiMatchingQueries<T> partition : partitionMatches) {
+			errors.putAll(partition.getErrors());
+		}
+
+		return errors;
+	}
+}
@@ -0,0 +1,189 @@
+package solcolator.monitor;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.monitor.MatcherFactory;
+import org.apache.lucene.monitor.Monitor;
+import org.apache.lucene.monitor.MonitorQuery;
+import org.apache.lucene.monitor.MultiMatchingQueries;
+import org.apache.lucene.monitor.QueryMatch;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.StringHelper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Monitor queries split to partitions (separate monitors) by a stable hash of the query id.
+ * Partitions are registered and matched concurrently (a batch is matched by all partitions and their results are merged),
+ * so both registration and matching scale with cores. A single partition works exactly like a plain monitor.
+ * Partitions are registered by a pool shared with all other partitioned monitors and matched by the pool of the batch's
+ * match lane, so the number of threads doesn't grow with routes and concurrent batches, and partitions of a realtime
+ * batch don't wait behind partitions of bulk batches.
+ */
+public class PartitionedMonitor implements Closeable {
+	private static final int HASH_SEED = 0;
+
+	private final List<Monitor> partitions;
+	private final ExecutorService partitionExecutor;
+
+	/**
+	 * @param partitions - monitors of the partitions
+	 * @param partitionExecutor - shared executor of registration and deletion of partitions, it isn't shut down on close
+	 * (null - partitions are run one by one by the calling thread)
+	 */
+	public PartitionedMonitor(List<Monitor> partitions, ExecutorService partitionExecutor) {
+		this.partitions = partitions;
+		this.partitionExecutor = partitions.size() > 1 ? partitionExecutor : null;
+	}
+
+	/**
+	 * @param queryId
+	 * @return partition of the query
+	 */
+	int getPartition(String queryId) {
+		return partitions.size() == 1 ? 0 : Math.floorMod(StringHelper.murmurhash3_x86_32(new BytesRef(queryId), HASH_SEED), partitions.size());
+	}
+
+	/**
+	 * Add/update queries (every partition is updated by a single update)
+	 * @param queries
+	 * @throws IOException
+	 */
+	public void register(List<? extends MonitorQuery> queries) throws IOException {
+		List<List<MonitorQuery>> partitionQueries = split(queries, MonitorQuery::getId);
+		List<Callable<Void>> tasks = new ArrayList<>();
+
+		for (int partition = 0; partition < partitions.size(); partition++) {
+			Monitor monitor = partitions.get(partition);
+			List<MonitorQuery> monitorQueries = partitionQueries.get(partition);
+
+			if (!monitorQueries.isEmpty()) {
+				tasks.add(() -> {
+					monitor.register(monitorQueries);
+					return null;
+				});
+			}
+		}
+
+		invokeAll(tasks, partitionExecutor);
+	}
+
+	/**
+	 * Delete queries by ids
+	 * @param queryIds
+	 * @throws IOException
+	 */
+	public void deleteById(List<String> queryIds) throws IOException {
+		List<List<String>> partitionQueryIds = split(queryIds, queryId -> queryId);
+		List<Callable<Void>> tasks = new ArrayList<>();
+
+		for (int partition = 0; partition < partitions.size(); partition++) {
+			Monitor monitor = partitions.get(partition);
+			List<String> monitorQueryIds = partitionQueryIds.get(partition);
+
+			if (!monitorQueryIds.isEmpty()) {
+				tasks.add(() -> {
+					monitor.deleteById(monitorQueryIds);
+					return null;
+				});
+			}
+		}
+
+		invokeAll(tasks, partitionExecutor);
+	}
+
+	/**
+	 * Match batch of documents by all partitions concurrently
+	 * @param docs - batch of documents
+	 * @param factory - matcher factory
+	 * @param matchExecutor - executor of partitions of the batch's match lane (null - partitions are run by the calling thread)
+	 * @return merged matches of the partitions
+	 * @throws IOException
+	 */
+	public <T extends QueryMatch> PartitionedMatches<T> match(Document[] docs, MatcherFactory<T> factory, ExecutorService matchExecutor)
+			throws IOException {
+		List<Callable<MultiMatchingQueries<T>>> tasks = new ArrayList<>(partitions.size());
+
+		for (Monitor monitor : partitions) {
+			tasks.add(() -> monitor.match(docs, factory));
+		}
+
+		return new PartitionedMatches<>(invokeAll(tasks, partitions.size() > 1 ? matchExecutor : null), docs.length);
+	}
+
+	/**
+	 * @return number of queries in all partitions
+	 */
+	public int getQueryCount() {
+		int queryCount = 0;
+
+		for (Monitor monitor : partitions) {
+			queryCount += monitor.getQueryCount();
+		}
+
+		return queryCount;
+	}
+
+	public int getPartitionCount() {
+		return partitions.size();
+	}
+
+	@Override
+	public void close() throws IOException {
+		IOUtils.close(partitions);
+	}
+
+	private <T> List<List<T>> split(List<? extends T> values, Function<T, String> getQueryId) {
+		List<List<T>> partitionValues = new ArrayList<>(partitions.size());
+		for (int partition = 0; partition < partitions.size(); partition++) {
+			partitionValues.add(new ArrayList<>());
+		}
+
+		for (T value : values) {
+			partitionValues.get(getPartition(getQueryId.apply(value))).add(value);
+		}
+
+		return partitionValues;
+	}
+
+	/**
+	 * Run tasks of partitions by the executor, a single task is run by the calling thread
+	 */
+	private static <T> List<T> invokeAll(List<Callable<T>> tasks, ExecutorService executor) throws IOException {
+		List<T> results = new ArrayList<>(tasks.size());
+
+		try {
+			if (executor == null || tasks.size() == 1) {
+				for (Callable<T> task : tasks) {
+					results.add(task.call());
+				}
+
+				return results;
+			}
+
+			for (Future<T> future : executor.invokeAll(tasks)) {
+				results.add(future.get());
+			}
+
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new IOException("Interrupted while waiting for monitor partitions", e);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package solcolator.monitor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import solcolator.io.api.SolcolatorQuery;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Single query updates done while a new generation is rebuilt. They are replayed on the new generation before it's made
+ * current, so the updates aren't lost by the swap. Only the last update of a query is kept, queries are replayed in the order
+ * they were first updated
+ */
+class PendingUpdates {
+	private static final Logger log = LoggerFactory.getLogger(PendingUpdates.class);
+
+	private final Map<String, SolcolatorQuery> queryIdToUpdate = new LinkedHashMap<>();	// null - deleted query
+
+	/**
+	 * Target the updates are replayed on
+	 */
+	interface IReplayer {
+		void update(SolcolatorQuery query) throws Exception;
+
+		void delete(String queryId) throws Exception;
+	}
+
+	void update(SolcolatorQuery query) {
+		queryIdToUpdate.put(query.getQueryId(), query);
+	}
+
+	void delete(String queryId) {
+		queryIdToUpdate.put(queryId, null);
+	}
+
+	int size() {
+		return queryIdToUpdate.size();
+	}
+
+	/**
+	 * Replay the updates, a failed update is logged and doesn't stop the others
+	 * @param replayer - target of the updates
+	 */
+	void replay(IReplayer replayer) {
+		for (Map.Entry<String, SolcolatorQuery> update : queryIdToUpdate.entrySet()) {
+			try {
+				if (update.getValue() == null) {
+					replayer.delete(update.getKey());
+				} else {
+					replayer.update(update.getValue());
+				}
+			} catch (Exception e) {
+				log.error(String.format("Failed to replay update of query %s on the new generation", update.getKey()), e);
+			}
+		}
+	}
+}
@@ -0,0 +1,235 @@
+package solcolator.monitor;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable hash map (hash array mapped trie), an update returns a new map and shares all the nodes off its path
+ * with the previous one. So adding a key copies at most 7 small nodes (5 bits of the hash per level) instead of the map.
+ * Keys with equal hashes are kept in a collision array of the last level. Null values are allowed, keys can't be removed.
+ */
+final class PersistentHashMap<K, V> {
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+	private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(new Node(0, new Object[0]), 0);
+
+	private final Node root;
+	private final int size;
+
+	private PersistentHashMap(Node root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	@SuppressWarnings("unchecked")
+	static <K, V> PersistentHashMap<K, V> empty() {
+		return (PersistentHashMap<K, V>) EMPTY;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean containsKey(K key) {
+		return find(key) != null;
+	}
+
+	/**
+	 * @param key
+	 * @return value of the key or null if the key doesn't exist (or its value is null)
+	 */
+	@SuppressWarnings("unchecked")
+	V get(K key) {
+		Entry entry = find(key);
+
+		return entry == null ? null : (V) entry.value;
+	}
+
+	/**
+	 * @param key
+	 * @param value - value of the key (null is allowed)
+	 * @return new map with the key set to the value, this map isn't changed
+	 */
+	PersistentHashMap<K, V> plus(K key, V value) {
+		boolean[] isAdded = new boolean[1];
+		Node newRoot = (Node) put(root, new Entry(key, value, hash(key)), 0, isAdded);
+
+		return new PersistentHashMap<>(newRoot, isAdded[0] ? size + 1 : size);
+	}
+
+	@SuppressWarnings("unchecked")
+	void forEach(BiConsumer<K, V> action) {
+		forEach(root, (BiConsumer<Object, Object>) action);
+	}
+
+	private Entry find(Object key) {
+		int hash = hash(key);
+		Object slot = root;
+
+		for (int shift = 0; ; shift += BITS) {
+			if (slot instanceof Node) {
+				Node node = (Node) slot;
+				int bit = bit(hash, shift);
+
+				if ((node.bitmap & bit) == 0) {
+					return null;
+				}
+
+				slot = node.slots[node.index(bit)];
+			} else if (slot instanceof Entry) {
+				Entry entry = (Entry) slot;
+
+				return entry.hash == hash && entry.key.equals(key) ? entry : null;
+			} else {
+				for (Entry entry : (Entry[]) slot) {
+					if (entry.key.equals(key)) {
+						return entry;
+					}
+				}
+
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * @param slot - node, entry or collision array the entry is put to
+	 * @param shift - bits of the hash used by the levels above
+	 * @param isAdded - set to true if the key didn't exist
+	 * @return copy of the slot with the entry
+	 */
+	private static Object put(Object slot, Entry entry, int shift, boolean[] isAdded) {
+		if (slot instanceof Node) {
+			Node node = (Node) slot;
+			int bit = bit(entry.hash, shift);
+			int index = node.index(bit);
+
+			if ((node.bitmap & bit) == 0) {
+				isAdded[0] = true;
+
+				return node.insert(bit, index, entry);
+			}
+
+			return node.replace(index, put(node.slots[index], entry, shift + BITS, isAdded));
+		}
+
+		if (slot instanceof Entry) {
+			Entry existing = (Entry) slot;
+
+			if (existing.hash != entry.hash) {
+				isAdded[0] = true;
+
+				return split(existing, entry, shift);
+			}
+
+			if (existing.key.equals(entry.key)) {
+				return entry;
+			}
+
+			isAdded[0] = true;
+
+			return new Entry[] { existing, entry };
+		}
+
+		Entry[] collisions = (Entry[]) slot;
+		for (int i = 0; i < collisions.length; i++) {
+			if (collisions[i].key.equals(entry.key)) {
+				Entry[] newCollisions = collisions.clone();
+				newCollisions[i] = entry;
+
+				return newCollisions;
+			}
+		}
+
+		Entry[] newCollisions = new Entry[collisions.length + 1];
+		System.arraycopy(collisions, 0, newCollisions, 0, collisions.length);
+		newCollisions[collisions.length] = entry;
+		isAdded[0] = true;
+
+		return newCollisions;
+	}
+
+	/**
+	 * @return node of two entries with different hashes, nested while their hashes have the same bits
+	 */
+	private static Node split(Entry first, Entry second, int shift) {
+		int firstBit = bit(first.hash, shift);
+		int secondBit = bit(second.hash, shift);
+
+		if (firstBit == secondBit) {
+			return new Node(firstBit, new Object[] { split(first, second, shift + BITS) });
+		}
+
+		int bitmap = firstBit | secondBit;
+		Object[] slots = new Object[2];
+		slots[Integer.bitCount(bitmap & (firstBit - 1))] = first;
+		slots[Integer.bitCount(bitmap & (secondBit - 1))] = second;
+
+		return new Node(bitmap, slots);
+	}
+
+	private static void forEach(Object slot, BiConsumer<Object, Object> action) {
+		if (slot instanceof Node) {
+			for (Object child : ((Node) slot).slots) {
+				forEach(child, action);
+			}
+		} else if (slot instanceof Entry) {
+			action.accept(((Entry) slot).key, ((Entry) slot).value);
+		} else {
+			for (Entry entry : (Entry[]) slot) {
+				action.accept(entry.key, entry.value);
+			}
+		}
+	}
+
+	private static int hash(Object key) {
+		int hash = key.hashCode();
+
+		return hash ^ (hash >>> 16);
+	}
+
+	private static int bit(int hash, int shift) {
+		return 1 << ((hash >>> shift) & MASK);
+	}
+
+	private static final class Node {
+		private final int bitmap;			// bits of the hash parts of the slots
+		private final Object[] slots;		// node, entry or collision array per bit
+
+		private Node(int bitmap, Object[] slots) {
+			this.bitmap = bitmap;
+			this.slots = slots;
+		}
+
+		private int index(int bit) {
+			return Integer.bitCount(bitmap & (bit - 1));
+		}
+
+		private Node insert(int bit, int index, Object slot) {
+			Object[] newSlots = new Object[slots.length + 1];
+			System.arraycopy(slots, 0, newSlots, 0, index);
+			newSlots[index] = slot;
+			System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+
+			return new Node(bitmap | bit, newSlots);
+		}
+
+		private Node replace(int index, Object slot) {
+			Object[] newSlots = slots.clone();
+			newSlots[index] = slot;
+
+			return new Node(bitmap, newSlots);
+		}
+	}
+
+	private static final class Entry {
+		private final Object key;
+		private final Object value;
+		private final int hash;
+
+		private Entry(Object key, Object value, int hash) {
+			this.key = key;
+			this.value = value;
+			this.hash = hash;
+		}
+	}
+}
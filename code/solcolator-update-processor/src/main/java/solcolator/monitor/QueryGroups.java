@@ -0,0 +1,143 @@
+package solcolator.monitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Groups of identical monitor queries (by canonical text, see LuwakQueryParser.toCanonicalText).
+ * Only the representative of a group is registered in the monitor, and its matches fan out to all the queries of the group,
+ * so matching cost depends on the number of distinct queries.
+ * Groups are changed by a single writer (under the update lock of the manager), members of groups are published
+ * for readers by publish()
+ */
+public class QueryGroups {
+	private final Map<String, String> canonicalToRepresentative = new HashMap<>();
+	private final Map<String, String> queryIdToCanonical = new HashMap<>();
+	private final Map<String, Set<String>> representativeToMembers = new HashMap<>();	// members include the representative
+	private final Map<String, String> queryIdToRepresentative = new ConcurrentHashMap<>();
+	private final Map<String, List<String>> representativeToPublishedMembers = new ConcurrentHashMap<>();	// groups of 2+ queries only
+	private final Set<String> changedGroups = new HashSet<>();
+	private volatile int groupCount;
+
+	/**
+	 * Add query to the group of its canonical text
+	 * @param queryId
+	 * @param canonicalText - canonical text of the query
+	 * @return representative of the group (the query itself if it has to be registered in the monitor)
+	 */
+	String add(String queryId, String canonicalText) {
+		String representative = canonicalToRepresentative.computeIfAbsent(canonicalText, text -> queryId);
+		representativeToMembers.computeIfAbsent(representative, id -> new LinkedHashSet<>()).add(queryId);
+		queryIdToCanonical.put(queryId, canonicalText);
+		queryIdToRepresentative.put(queryId, representative);
+		changedGroups.add(representative);
+
+		return representative;
+	}
+
+	/**
+	 * Remove query from its group
+	 * @param queryId
+	 * @return new representative of the group if the removed query was the representative (it has to be registered in the monitor
+	 * instead of the removed one) or null
+	 */
+	String remove(String queryId) {
+		String canonicalText = queryIdToCanonical.remove(queryId);
+		String representative = queryIdToRepresentative.remove(queryId);
+
+		if (canonicalText == null) {
+			return null;
+		}
+
+		Set<String> members = representativeToMembers.remove(representative);
+		members.remove(queryId);
+		changedGroups.add(representative);
+
+		if (members.isEmpty()) {
+			canonicalToRepresentative.remove(canonicalText);
+
+			return null;
+		}
+
+		if (!representative.equals(queryId)) {
+			representativeToMembers.put(representative, members);
+
+			return null;
+		}
+
+		String newRepresentative = members.iterator().next();
+		canonicalToRepresentative.put(canonicalText, newRepresentative);
+		representativeToMembers.put(newRepresentative, members);
+		changedGroups.add(newRepresentative);
+
+		for (String memberId : members) {
+			queryIdToRepresentative.put(memberId, newRepresentative);
+		}
+
+		return newRepresentative;
+	}
+
+	/**
+	 * Publish members of changed groups for readers
+	 */
+	void publish() {
+		for (String representative : changedGroups) {
+			Set<String> members = representativeToMembers.get(representative);
+
+			if (members == null || members.size() < 2) {
+				representativeToPublishedMembers.remove(representative);
+			} else {
+				representativeToPublishedMembers.put(representative, Collections.unmodifiableList(new ArrayList<>(members)));
+			}
+		}
+
+		changedGroups.clear();
+		groupCount = representativeToMembers.size();
+	}
+
+	boolean contains(String queryId) {
+		return queryIdToCanonical.containsKey(queryId);
+	}
+
+	String getCanonicalText(String queryId) {
+		return queryIdToCanonical.get(queryId);
+	}
+
+	boolean isRepresentative(String queryId) {
+		return queryId.equals(queryIdToRepresentative.get(queryId));
+	}
+
+	/**
+	 * @param queryId
+	 * @return true if the query is matched by the representative of its group (it isn't registered in the monitor)
+	 */
+	public boolean isDuplicate(String queryId) {
+		String representative = queryIdToRepresentative.get(queryId);
+
+		return representative != null && !representative.equals(queryId);
+	}
+
+	/**
+	 * @param representativeId - id of query matched by the monitor
+	 * @return ids of all queries of its group
+	 */
+	public List<String> getMembers(String representativeId) {
+		List<String> members = representativeToPublishedMembers.get(representativeId);
+
+		return members == null ? List.of(representativeId) : members;
+	}
+
+	/**
+	 * @return number of queries are matched by the representative of their group
+	 */
+	public int getDuplicateCount() {
+		return queryIdToRepresentative.size() - groupCount;
+	}
+}
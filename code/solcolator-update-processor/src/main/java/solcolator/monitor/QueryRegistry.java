@@ -0,0 +1,241 @@
+package solcolator.monitor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Versioned registry of the monitor queries of a generation. Readers take an immutable snapshot without any locking
+ * (a match batch keeps the snapshot it started with), writers publish a new version per update.
+ * A version is a delta of changes over an immutable base map. The delta is a persistent map (see PersistentHashMap),
+ * so an update copies only the trie path of each changed query, not the delta. The delta is merged into a new base
+ * when it grows over ~sqrt of the base, which keeps lookups (delta, then base) and merges cheap for single admin
+ * updates and for chunked loads.
+ * Query strings and metadata are kept off-heap in a query store (see QueryStore), the maps keep the ordinals of the records only.
+ * Replaced records are dropped by copying the live ones to a new store when they take more than half of it.
+ */
+public class QueryRegistry {
+	private static final int MIN_MERGE_DELTA_SIZE = 1024;
+	private static final int MERGE_DELTA_SIZE_FACTOR = 32;
+	private static final long MIN_COMPACT_BYTES = 16 * 1024 * 1024;
+
+	private volatile Snapshot snapshot = new Snapshot(0, new QueryStore(), Collections.emptyMap(), PersistentHashMap.empty(), 0);
+	private final Set<String> dateMathQueryIds = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @return current version of the registry
+	 */
+	public Snapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * @return ids of queries depend on NOW (they are parsed again on refresh)
+	 */
+	public Set<String> getDateMathQueryIds() {
+		return Collections.unmodifiableSet(dateMathQueryIds);
+	}
+
+	/**
+	 * Add/update queries by a single version. The record of a query is reused if its text and metadata aren't changed
+	 * @param queries - queries to add/update
+	 * @param isDateMath - if a query has date math resolved at parse time
+	 */
+	synchronized void putAll(Collection<LuwakQuery> queries, Predicate<LuwakQuery> isDateMath) {
+		if (queries.isEmpty()) {
+			return;
+		}
+
+		Snapshot current = snapshot;
+		Map<String, Integer> changes = new HashMap<>();
+
+		for (LuwakQuery query : queries) {
+			Integer ordinal = current.getOrdinal(query.getId());
+
+			if (ordinal == null || !isSameRecord(current.store.get(query.getId(), ordinal), query)) {
+				changes.put(query.getId(), current.store.add(query.getQueryName(), query.getQueryString(), query.getMetadata()));
+			}
+
+			if (isDateMath.test(query)) {
+				dateMathQueryIds.add(query.getId());
+			} else {
+				dateMathQueryIds.remove(query.getId());
+			}
+		}
+
+		if (!changes.isEmpty()) {
+			publish(changes);
+		}
+	}
+
+	/**
+	 * Remove query by a new version
+	 * @param queryId
+	 * @return true if the query existed
+	 */
+	synchronized boolean remove(String queryId) {
+		boolean isExisted = snapshot.contains(queryId);
+		dateMathQueryIds.remove(queryId);
+
+		if (isExisted) {
+			Map<String, Integer> changes = new HashMap<>();
+			changes.put(queryId, null);
+			publish(changes);
+		}
+
+		return isExisted;
+	}
+
+	private void publish(Map<String, Integer> changes) {
+		Snapshot current = snapshot;
+		PersistentHashMap<String, Integer> delta = current.delta;
+		int size = current.size;
+
+		for (Map.Entry<String, Integer> change : changes.entrySet()) {
+			boolean existed = current.getOrdinal(change.getKey()) != null;
+			size += (change.getValue() != null ? 1 : 0) - (existed ? 1 : 0);
+			delta = delta.plus(change.getKey(), change.getValue());
+		}
+
+		int maxDeltaSize = Math.max(MIN_MERGE_DELTA_SIZE, (int) Math.sqrt(current.base.size()) * MERGE_DELTA_SIZE_FACTOR);
+		if (delta.size() <= maxDeltaSize) {
+			snapshot = new Snapshot(current.version + 1, current.store, current.base, delta, size);
+			return;
+		}
+
+		Map<String, Integer> base = merge(current.base, delta);
+
+		QueryStore store = current.store;
+		if (store.getBytes() > MIN_COMPACT_BYTES) {
+			long liveBytes = 0;
+			for (Integer ordinal : base.values()) {
+				liveBytes += store.getRecordSize(ordinal);
+			}
+
+			if (liveBytes * 2 < store.getBytes()) {
+				store = compact(store, base);
+			}
+		}
+
+		snapshot = new Snapshot(current.version + 1, store, base, PersistentHashMap.empty(), size);
+	}
+
+	/**
+	 * @return new map of the base with the changes of the delta
+	 */
+	private static Map<String, Integer> merge(Map<String, Integer> base, PersistentHashMap<String, Integer> delta) {
+		Map<String, Integer> ordinals = new HashMap<>(base);
+
+		delta.forEach((queryId, ordinal) -> {
+			if (ordinal == null) {
+				ordinals.remove(queryId);
+			} else {
+				ordinals.put(queryId, ordinal);
+			}
+		});
+
+		return ordinals;
+	}
+
+	/**
+	 * Copy live records to a new store (the previous versions keep the previous store until they are released)
+	 */
+	private static QueryStore compact(QueryStore store, Map<String, Integer> base) {
+		QueryStore compactStore = new QueryStore();
+
+		for (Map.Entry<String, Integer> query : base.entrySet()) {
+			StoredQuery storedQuery = store.get(query.getKey(), query.getValue());
+			query.setValue(compactStore.add(storedQuery.getQueryName(), storedQuery.getQueryString(), storedQuery.getMetadata()));
+		}
+
+		return compactStore;
+	}
+
+	private static boolean isSameRecord(StoredQuery storedQuery, LuwakQuery query) {
+		return Objects.equals(storedQuery.getQueryName(), query.getQueryName()) && Objects.equals(storedQuery.getQueryString(), query.getQueryString())
+				&& storedQuery.getMetadata().equals(query.getMetadata());
+	}
+
+	/**
+	 * Immutable version of the registry
+	 */
+	public static class Snapshot {
+		private final long version;
+		private final QueryStore store;
+		private final Map<String, Integer> base;
+		private final PersistentHashMap<String, Integer> delta;		// null value - removed query
+		private final int size;
+
+		private Snapshot(long version, QueryStore store, Map<String, Integer> base, PersistentHashMap<String, Integer> delta, int size) {
+			this.version = version;
+			this.store = store;
+			this.base = base;
+			this.delta = delta;
+			this.size = size;
+		}
+
+		public long getVersion() {
+			return version;
+		}
+
+		/**
+		 * @param queryId
+		 * @return query (read from the store) or null if it doesn't exist in this version
+		 */
+		public StoredQuery get(String queryId) {
+			Integer ordinal = getOrdinal(queryId);
+
+			return ordinal == null ? null : store.get(queryId, ordinal);
+		}
+
+		public boolean contains(String queryId) {
+			return getOrdinal(queryId) != null;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * @return ids of all queries of this version
+		 */
+		public List<String> getQueryIds() {
+			return new ArrayList<>(toOrdinals().keySet());
+		}
+
+		/**
+		 * @return all queries of this version (the map is built and the queries are read from the store on each call)
+		 */
+		public Map<String, StoredQuery> toMap() {
+			Map<String, StoredQuery> queries = new HashMap<>();
+
+			for (Map.Entry<String, Integer> query : toOrdinals().entrySet()) {
+				queries.put(query.getKey(), store.get(query.getKey(), query.getValue()));
+			}
+
+			return queries;
+		}
+
+		/**
+		 * @return size of the query store of this version in bytes
+		 */
+		public long getStoreBytes() {
+			return store.getBytes();
+		}
+
+		private Integer getOrdinal(String queryId) {
+			return delta.containsKey(queryId) ? delta.get(queryId) : base.get(queryId);
+		}
+
+		private Map<String, Integer> toOrdinals() {
+			return merge(base, delta);
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package solcolator.monitor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only off-heap store of query names, query strings and metadata, addressed by int ordinal.
+ * Records are kept UTF-8 encoded in direct buffers (chunks), so the heap keeps an address per query only.
+ * Metadata (usually the request handler defaults, shared by all queries) is interned and kept on the heap once.
+ * The store has a single writer (QueryRegistry), records are immutable once added, so they can be read concurrently
+ * by any reader got their ordinal from a published version of the registry.
+ */
+public class QueryStore {
+	private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+	private static final int NULL_LENGTH = -1;
+
+	private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+	private volatile long[] addresses = new long[1024];		// chunk index << 32 | offset in the chunk
+	private volatile Map<String, String>[] metadatas = newMetadatas(16);
+	private final Map<Map<String, String>, Integer> metadataToOrdinal = new HashMap<>();
+	private int count;
+	private long bytes;
+	private ByteBuffer currentChunk;
+
+	/**
+	 * Add query record (single writer)
+	 * @param queryName
+	 * @param queryString
+	 * @param metadata
+	 * @return ordinal of the record
+	 */
+	int add(String queryName, String queryString, Map<String, String> metadata) {
+		byte[] name = queryName == null ? null : queryName.getBytes(StandardCharsets.UTF_8);
+		byte[] query = queryString == null ? null : queryString.getBytes(StandardCharsets.UTF_8);
+		int size = Integer.BYTES * 3 + (name == null ? 0 : name.length) + (query == null ? 0 : query.length);
+
+		if (currentChunk == null || currentChunk.remaining() < size) {
+			addChunk(size);
+		}
+
+		int offset = currentChunk.position();
+		currentChunk.putInt(internMetadata(metadata));
+		putBytes(name);
+		putBytes(query);
+		bytes += size;
+
+		if (count == addresses.length) {
+			addresses = Arrays.copyOf(addresses, count * 2);
+		}
+		addresses[count] = ((long) (chunks.length - 1) << 32) | offset;
+
+		return count++;
+	}
+
+	/**
+	 * @param id - id of the query
+	 * @param ordinal - ordinal of the record
+	 * @return query of the record
+	 */
+	StoredQuery get(String id, int ordinal) {
+		long address = addresses[ordinal];
+		ByteBuffer record = chunks[(int) (address >>> 32)].duplicate();
+		record.position((int) address);
+		Map<String, String> metadata = metadatas[record.getInt()];
+
+		return new StoredQuery(id, getString(record), getString(record), metadata);
+	}
+
+	/**
+	 * @return size of the records (including replaced ones) in bytes
+	 */
+	long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @param ordinal - ordinal of the record
+	 * @return size of the record in bytes
+	 */
+	int getRecordSize(int ordinal) {
+		long address = addresses[ordinal];
+		ByteBuffer record = chunks[(int) (address >>> 32)].duplicate();
+		record.position((int) address + Integer.BYTES);
+		int size = Integer.BYTES * 3;
+
+		for (int i = 0; i < 2; i++) {
+			int length = record.getInt();
+			if (length > 0) {
+				size += length;
+				record.position(record.position() + length);
+			}
+		}
+
+		return size;
+	}
+
+	/**
+	 * @return count of distinct metadata
+	 */
+	int getMetadataCount() {
+		return metadataToOrdinal.size();
+	}
+
+	private void addChunk(int minSize) {
+		currentChunk = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, minSize));
+		ByteBuffer[] newChunks = Arrays.copyOf(chunks, chunks.length + 1);
+		newChunks[chunks.length] = currentChunk;
+		chunks = newChunks;
+	}
+
+	private int internMetadata(Map<String, String> metadata) {
+		Map<String, String> key = metadata == null ? Collections.emptyMap() : metadata;
+		Integer ordinal = metadataToOrdinal.get(key);
+
+		if (ordinal == null) {
+			ordinal = metadataToOrdinal.size();
+			Map<String, String> interned = Collections.unmodifiableMap(new HashMap<>(key));
+
+			if (ordinal == metadatas.length) {
+				metadatas = Arrays.copyOf(metadatas, ordinal * 2);
+			}
+			metadatas[ordinal] = interned;
+			metadataToOrdinal.put(interned, ordinal);
+		}
+
+		return ordinal;
+	}
+
+	private void putBytes(byte[] value) {
+		if (value == null) {
+			currentChunk.putInt(NULL_LENGTH);
+		} else {
+			currentChunk.putInt(value.length);
+			currentChunk.put(value);
+		}
+	}
+
+	private static String getString(ByteBuffer record) {
+		int length = record.getInt();
+
+		if (length == NULL_LENGTH) {
+			return null;
+		}
+
+		byte[] value = new byte[length];
+		record.get(value);
+
+		return new String(value, StandardCharsets.UTF_8);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, String>[] newMetadatas(int size) {
+		return new Map[size];
+	}
+}
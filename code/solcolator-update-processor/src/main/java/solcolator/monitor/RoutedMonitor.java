@@ -0,0 +1,215 @@
+package solcolator.monitor;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.monitor.MatcherFactory;
+import org.apache.lucene.monitor.MonitorQuery;
+import org.apache.lucene.monitor.QueryMatch;
+import org.apache.lucene.util.IOUtils;
+import org.apache.solr.common.SolrInputDocument;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Monitor queries routed by a value of their routing field (a metadata param of the query) to a monitor of the value.
+ * A document is matched against the monitors of its values of the routing field only, plus the global monitor
+ * of queries without a routing value, so a batch is matched against a small part of the queries.
+ * Values of documents are taken from the SolrInputDocument, since point, numeric and docValues-only fields aren't
+ * in the monitor document as strings (see RoutingField).
+ * Without a routing field all queries are kept in the global monitor
+ */
+public class RoutedMonitor implements Closeable {
+	public static final String GLOBAL_ROUTE = "";
+
+	private final RoutingField routingField;
+	private final IRouteMonitorFactory monitorFactory;
+	private final Map<String, PartitionedMonitor> routeToMonitor = new ConcurrentHashMap<>();
+	private final Map<String, String> queryIdToRoute = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates monitor of a route when its first query is registered
+	 */
+	public interface IRouteMonitorFactory {
+		PartitionedMonitor create(String route) throws IOException;
+	}
+
+	/**
+	 * @param routingField - metadata param of queries and field of documents they are routed by (null - no routing)
+	 * @param routeToMonitor - monitors of the routes were opened already (the global one included)
+	 * @param monitorFactory - factory of monitors of new routes
+	 */
+	public RoutedMonitor(RoutingField routingField, Map<String, PartitionedMonitor> routeToMonitor, IRouteMonitorFactory monitorFactory) {
+		this.routingField = routingField;
+		this.routeToMonitor.putAll(routeToMonitor);
+		this.monitorFactory = monitorFactory;
+	}
+
+	/**
+	 * @param query
+	 * @return route of the query (GLOBAL_ROUTE if it has no routing value)
+	 */
+	String getRoute(MonitorQuery query) {
+		if (routingField == null) {
+			return GLOBAL_ROUTE;
+		}
+
+		return routingField.normalize(query.getMetadata().get(routingField.getName()));
+	}
+
+	/**
+	 * Track routes of queries were restored from the persistent monitors
+	 * @param queries - restored queries
+	 */
+	void addRestoredQueries(Collection<? extends MonitorQuery> queries) {
+		for (MonitorQuery query : queries) {
+			queryIdToRoute.put(query.getId(), getRoute(query));
+		}
+	}
+
+	/**
+	 * Add/update queries (a query moved to another route is deleted from its previous route)
+	 * @param queries
+	 * @throws IOException
+	 */
+	public void register(List<? extends MonitorQuery> queries) throws IOException {
+		Map<String, List<MonitorQuery>> routeToQueries = new LinkedHashMap<>();
+		List<String> movedQueryIds = new ArrayList<>();
+
+		for (MonitorQuery query : queries) {
+			String route = getRoute(query);
+			String previousRoute = queryIdToRoute.get(query.getId());
+
+			if (previousRoute != null && !previousRoute.equals(route)) {
+				movedQueryIds.add(query.getId());
+			}
+
+			routeToQueries.computeIfAbsent(route, r -> new ArrayList<>()).add(query);
+		}
+
+		deleteById(movedQueryIds);
+
+		for (Map.Entry<String, List<MonitorQuery>> route : routeToQueries.entrySet()) {
+			getOrCreateMonitor(route.getKey()).register(route.getValue());
+
+			for (MonitorQuery query : route.getValue()) {
+				queryIdToRoute.put(query.getId(), route.getKey());
+			}
+		}
+	}
+
+	/**
+	 * Delete queries by ids (queries of unknown route are deleted from all routes)
+	 * @param queryIds
+	 * @throws IOException
+	 */
+	public void deleteById(List<String> queryIds) throws IOException {
+		Map<String, List<String>> routeToQueryIds = new HashMap<>();
+		List<String> unknownQueryIds = new ArrayList<>();
+
+		for (String queryId : queryIds) {
+			String route = queryIdToRoute.remove(queryId);
+
+			if (route == null) {
+				unknownQueryIds.add(queryId);
+			} else {
+				routeToQueryIds.computeIfAbsent(route, r -> new ArrayList<>()).add(queryId);
+			}
+		}
+
+		for (Map.Entry<String, PartitionedMonitor> route : routeToMonitor.entrySet()) {
+			List<String> routeQueryIds = new ArrayList<>(routeToQueryIds.getOrDefault(route.getKey(), List.of()));
+			routeQueryIds.addAll(unknownQueryIds);
+
+			if (!routeQueryIds.isEmpty()) {
+				route.getValue().deleteById(routeQueryIds);
+			}
+		}
+	}
+
+	/**
+	 * Match batch of documents: the global monitor matches the whole batch, a route monitor matches the documents
+	 * with its value of the routing field
+	 * @param docs - batch of documents
+	 * @param solrDocs - indexed documents of the batch (routing values are taken from them)
+	 * @param factory - matcher factory
+	 * @param matchExecutor - executor of partitions of the batch's match lane (null - partitions are run by the calling thread)
+	 * @return merged matches of the routes
+	 * @throws IOException
+	 */
+	public <T extends QueryMatch> PartitionedMatches<T> match(Document[] docs, SolrInputDocument[] solrDocs, MatcherFactory<T> factory,
+			ExecutorService matchExecutor) throws IOException {
+		PartitionedMonitor globalMonitor = routeToMonitor.get(GLOBAL_ROUTE);
+
+		if (routingField == null || routeToMonitor.size() == 1) {
+			return globalMonitor.match(docs, factory, matchExecutor);
+		}
+
+		Map<String, List<Integer>> routeToDocIds = new HashMap<>();
+		for (int docId = 0; docId < docs.length; docId++) {
+			for (String route : routingField.getRoutes(solrDocs[docId])) {
+				if (routeToMonitor.containsKey(route)) {
+					routeToDocIds.computeIfAbsent(route, r -> new ArrayList<>()).add(docId);
+				}
+			}
+		}
+
+		PartitionedMatches<T> matches = new PartitionedMatches<>(List.of(), docs.length);
+		matches.add(globalMonitor.match(docs, factory, matchExecutor), null);
+
+		for (Map.Entry<String, List<Integer>> route : routeToDocIds.entrySet()) {
+			int[] docIds = route.getValue().stream().mapToInt(Integer::intValue).toArray();
+			Document[] routeDocs = new Document[docIds.length];
+			for (int i = 0; i < docIds.length; i++) {
+				routeDocs[i] = docs[docIds[i]];
+			}
+
+			matches.add(routeToMonitor.get(route.getKey()).match(routeDocs, factory, matchExecutor), docIds);
+		}
+
+		return matches;
+	}
+
+	/**
+	 * @return number of queries in all routes
+	 */
+	public int getQueryCount() {
+		int queryCount = 0;
+
+		for (PartitionedMonitor monitor : routeToMonitor.values()) {
+			queryCount += monitor.getQueryCount();
+		}
+
+		return queryCount;
+	}
+
+	/**
+	 * @return number of routes (the global one included)
+	 */
+	public int getRouteCount() {
+		return routeToMonitor.size();
+	}
+
+	@Override
+	public void close() throws IOException {
+		IOUtils.close(routeToMonitor.values());
+	}
+
+	private PartitionedMonitor getOrCreateMonitor(String route) throws IOException {
+		PartitionedMonitor monitor = routeToMonitor.get(route);
+
+		if (monitor == null) {
+			monitor = monitorFactory.create(route);
+			routeToMonitor.put(route, monitor);
+		}
+
+		return monitor;
+	}
+}
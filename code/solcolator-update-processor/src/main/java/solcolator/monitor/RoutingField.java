@@ -0,0 +1,103 @@
+package solcolator.monitor;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.schema.BoolField;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.StrField;
+import solcolator.filters.FieldFilter;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Field queries are routed by (see RoutedMonitor). Routing values of queries (a metadata param) and of documents
+ * (raw values of the SolrInputDocument) are normalized by the field type, so they are the same route
+ * if Solr indexes them as the same value (1 and 1.0 of a float field, T and true of a boolean field).
+ * The field must be a string, boolean, numeric or date field which isn't a copyField target.
+ */
+public class RoutingField {
+	private final SchemaField field;
+
+	private RoutingField(SchemaField field) {
+		this.field = field;
+	}
+
+	/**
+	 * @param schema - schema of the core
+	 * @param fieldName - name of the routing field
+	 * @return routing field
+	 * @throws IllegalArgumentException if the field doesn't exist or its values can't be normalized
+	 */
+	public static RoutingField create(IndexSchema schema, String fieldName) {
+		SchemaField field = schema.getFieldOrNull(fieldName);
+
+		if (field == null) {
+			throw new IllegalArgumentException(String.format("Routing field %s doesn't exist in the schema", fieldName));
+		}
+
+		// values of copy field targets aren't in the SolrInputDocument
+		if (schema.isCopyFieldTarget(field)) {
+			throw new IllegalArgumentException(String.format("Routing field %s must not be a copyField target", fieldName));
+		}
+
+		FieldType type = field.getType();
+		if (!(type instanceof StrField) && !(type instanceof BoolField) && type.getNumberType() == null) {
+			throw new IllegalArgumentException(String.format("Routing field %s must be a string, boolean, numeric or date field, but was %s",
+					fieldName, type.getTypeName()));
+		}
+
+		return new RoutingField(field);
+	}
+
+	public String getName() {
+		return field.getName();
+	}
+
+	/**
+	 * @param value - routing value of a query or a raw value of a document
+	 * @return normalized route (the value as is if it can't be parsed by the field type, empty if the value is null or empty)
+	 */
+	String normalize(Object value) {
+		if (value == null || value.toString().isEmpty()) {
+			return RoutedMonitor.GLOBAL_ROUTE;
+		}
+
+		try {
+			Object nativeValue = FieldFilter.toNativeType(field, value);
+
+			return nativeValue instanceof Date ? ((Date) nativeValue).toInstant().toString() : nativeValue.toString();
+		} catch (Exception e) {
+			return value.toString();
+		}
+	}
+
+	/**
+	 * @param doc - indexed document
+	 * @return normalized routes of the values of the document (without empty routes)
+	 */
+	Set<String> getRoutes(SolrInputDocument doc) {
+		Collection<Object> values = doc.getFieldValues(field.getName());
+		Set<String> routes = new LinkedHashSet<>();
+
+		if (values != null) {
+			for (Object value : values) {
+				String route = normalize(value);
+
+				if (!route.isEmpty()) {
+					routes.add(route);
+				}
+			}
+		}
+
+		return routes;
+	}
+
+	@Override
+	public String toString() {
+		return field.getName();
+	}
+}
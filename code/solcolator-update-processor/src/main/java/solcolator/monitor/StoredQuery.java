@@ -0,0 +1,62 @@
+package solcolator.monitor;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Query as it's kept in the query store (see QueryStore): its id, name, query string and metadata, without the parsed query.
+ * It's built from the store on each read, so it shouldn't be kept longer than needed
+ */
+public class StoredQuery {
+	private final String id;
+	private final String queryName;
+	private final String queryString;
+	private final Map<String, String> metadata;
+
+	StoredQuery(String id, String queryName, String queryString, Map<String, String> metadata) {
+		this.id = id;
+		this.queryName = queryName;
+		this.queryString = queryString;
+		this.metadata = metadata;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getQueryName() {
+		return queryName;
+	}
+
+	public String getQueryString() {
+		return queryString;
+	}
+
+	/**
+	 * @return metadata of the query (interned, shared by all queries with the same metadata)
+	 */
+	public Map<String, String> getMetadata() {
+		return metadata;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+
+		if (!(other instanceof StoredQuery)) {
+			return false;
+		}
+
+		StoredQuery otherQuery = (StoredQuery) other;
+
+		return id.equals(otherQuery.id) && Objects.equals(queryName, otherQuery.queryName)
+				&& Objects.equals(queryString, otherQuery.queryString) && metadata.equals(otherQuery.metadata);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(id, queryName, queryString, metadata);
+	}
+}
@@ -0,0 +1,234 @@
+package solcolator.presearcher;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.monitor.QueryTree;
+import org.apache.lucene.monitor.TermWeightor;
+import org.apache.lucene.search.Query;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.params.SpatialParams;
+import org.apache.solr.schema.AbstractSpatialFieldType;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.QueryParsing;
+import org.apache.solr.search.SyntaxError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Presearcher component for geo queries ({!geofilt} and {!bbox}).
+ * Solr builds geo queries the term presearcher can't filter, so every geo query would be a candidate for every document.
+ *
+ * The world is divided into a grid of cells (cellSize degrees).
+ * Query side: the shape (circle of sfield, pt and d) is taken from the query params when the query is parsed
+ * (see wrapQuery), and the query is indexed under all the cells its bounding box covers. Shapes covering more
+ * than MAX_CELLS cells (or crossing the date line/a pole) aren't filtered. The distance is in the distanceUnits
+ * of the field type (km for LatLonType).
+ * Document side: the cells of the document's locations are added to the monitor document as an extra field.
+ * Locations which aren't "lat,lon" (WKT for example) get the ANY_CELL key all geo queries of the field are indexed under.
+ * So the grid is probed with the document's location before the geo query is run.
+ */
+public class GeoQueryHandler implements IPresearcherComponent {
+	private static final Logger log = LoggerFactory.getLogger(GeoQueryHandler.class);
+	private static final String CELL_FIELD_SUFFIX = "__geocell";
+	private static final String GEOFILT = "geofilt";
+	private static final String BBOX = "bbox";
+	private static final String ANY_CELL = "*";
+	private static final double EARTH_MEAN_RADIUS_KM = 6371.0087714;
+	private static final double KM_PER_DEGREE = Math.PI * EARTH_MEAN_RADIUS_KM / 180;
+	private static final int MAX_CELLS = 1024;
+	private static final double CELL_WEIGHT_BOOST = 2;	// a cell is usually more selective than a term
+
+	private final IndexSchema schema;
+	private final double cellSize;
+	private final Set<String> geoFields = ConcurrentHashMap.newKeySet();
+
+	public GeoQueryHandler(IndexSchema schema, double cellSize) {
+		this.schema = schema;
+		this.cellSize = cellSize;
+	}
+
+	@Override
+	public Query wrapQuery(Query query, String clause, SolrParams params) throws SyntaxError {
+		SolrParams localParams = QueryParsing.getLocalParams(clause, params);
+
+		if (localParams == null) {
+			return query;
+		}
+
+		String type = localParams.get(QueryParsing.TYPE);
+		if (!GEOFILT.equals(type) && !BBOX.equals(type)) {
+			return query;
+		}
+
+		SolrParams geoParams = SolrParams.wrapDefaults(localParams, params);
+		String field = geoParams.get(SpatialParams.FIELD);
+		String point = geoParams.get(SpatialParams.POINT);
+		String distance = geoParams.get(SpatialParams.DISTANCE);
+
+		if (field == null || point == null || distance == null) {
+			return query;
+		}
+
+		SchemaField schemaField = schema.getFieldOrNull(field);
+		double[] latLon = parseLatLon(point);
+		if (schemaField == null || latLon == null) {
+			return query;
+		}
+
+		double distanceKm;
+		try {
+			distanceKm = Double.parseDouble(distance) / getUnitsPerDegree(schemaField) * KM_PER_DEGREE;
+		} catch (NumberFormatException e) {
+			return query;
+		}
+
+		Set<String> cells = getCircleCells(latLon[0], latLon[1], distanceKm);
+		if (cells.isEmpty()) {
+			return query;
+		}
+
+		geoFields.add(field);
+
+		return new GeoShapeQuery(query, field, cells);
+	}
+
+	@Override
+	public QueryTree handleQuery(Query query, TermWeightor termWeightor) {
+		if (!(query instanceof GeoShapeQuery)) {
+			return null;
+		}
+
+		GeoShapeQuery geoQuery = (GeoShapeQuery) query;
+		List<Function<TermWeightor, QueryTree>> cells = new ArrayList<>();
+
+		for (String cell : geoQuery.getCells()) {
+			Term cellTerm = new Term(geoQuery.getField() + CELL_FIELD_SUFFIX, cell);
+			cells.add(weightor -> QueryTree.term(cellTerm, term -> weightor.applyAsDouble(term) * CELL_WEIGHT_BOOST));
+		}
+
+		Term anyCellTerm = new Term(geoQuery.getField() + CELL_FIELD_SUFFIX, ANY_CELL);
+		cells.add(weightor -> QueryTree.term(anyCellTerm, term -> weightor.applyAsDouble(term) * CELL_WEIGHT_BOOST));
+
+		return QueryTree.disjunction(cells, termWeightor);
+	}
+
+	@Override
+	public void enrichDocument(SolrInputDocument solrDoc, Document luceneDoc) {
+		for (String field : geoFields) {
+			Collection<Object> values = solrDoc.getFieldValues(field);
+
+			if (values == null) {
+				continue;
+			}
+
+			Set<String> cells = new LinkedHashSet<>();
+			for (Object value : values) {
+				double[] latLon = parseLatLon(value.toString());
+
+				cells.add(latLon == null ? ANY_CELL : getCell(latLon[0], latLon[1]));
+			}
+
+			for (String cell : cells) {
+				luceneDoc.add(new StringField(field + CELL_FIELD_SUFFIX, cell, Store.NO));
+			}
+		}
+	}
+
+	/**
+	 * @param lat - latitude of the center
+	 * @param lon - longitude of the center
+	 * @param distanceKm - radius in km
+	 * @return cells the bounding box of the circle covers or an empty set if the circle can't be filtered
+	 */
+	Set<String> getCircleCells(double lat, double lon, double distanceKm) {
+		double latDelta = distanceKm / KM_PER_DEGREE;
+		double minLat = lat - latDelta;
+		double maxLat = lat + latDelta;
+
+		if (minLat <= -90 || maxLat >= 90) {
+			return new LinkedHashSet<>();
+		}
+
+		double lonDelta = latDelta / Math.cos(Math.toRadians(Math.max(Math.abs(minLat), Math.abs(maxLat))));
+		double minLon = lon - lonDelta;
+		double maxLon = lon + lonDelta;
+
+		if (minLon <= -180 || maxLon >= 180) {
+			return new LinkedHashSet<>();
+		}
+
+		long minLatCell = getCellIndex(minLat + 90);
+		long maxLatCell = getCellIndex(maxLat + 90);
+		long minLonCell = getCellIndex(minLon + 180);
+		long maxLonCell = getCellIndex(maxLon + 180);
+		Set<String> cells = new LinkedHashSet<>();
+
+		if ((maxLatCell - minLatCell + 1) * (maxLonCell - minLonCell + 1) > MAX_CELLS) {
+			log.warn(String.format("Geo query around %s,%s with distance %s covers more than %d cells and won't be filtered",
+					lat, lon, distanceKm, MAX_CELLS));
+			return cells;
+		}
+
+		for (long latCell = minLatCell; latCell <= maxLatCell; latCell++) {
+			for (long lonCell = minLonCell; lonCell <= maxLonCell; lonCell++) {
+				cells.add(latCell + ":" + lonCell);
+			}
+		}
+
+		return cells;
+	}
+
+	String getCell(double lat, double lon) {
+		return getCellIndex(lat + 90) + ":" + getCellIndex(lon + 180);
+	}
+
+	/**
+	 * @param field - location field of the query
+	 * @return distance units of the field type per degree (geofilt/bbox of LatLonType are in km)
+	 */
+	private static double getUnitsPerDegree(SchemaField field) {
+		if (field.getType() instanceof AbstractSpatialFieldType) {
+			AbstractSpatialFieldType<?> type = (AbstractSpatialFieldType<?>) field.getType();
+
+			if (type.getDistanceUnits() != null) {
+				return type.getDistanceUnits().multiplierFromDegreesToThisUnit();
+			}
+		}
+
+		return KM_PER_DEGREE;
+	}
+
+	private long getCellIndex(double degrees) {
+		return (long) Math.floor(degrees / cellSize);
+	}
+
+	/**
+	 * @param point - "lat,lon"
+	 * @return latitude and longitude or null if the point can't be parsed
+	 */
+	private static double[] parseLatLon(String point) {
+		String[] parts = point.split(",");
+
+		if (parts.length != 2) {
+			return null;
+		}
+
+		try {
+			return new double[] { Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim()) };
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package solcolator.presearcher;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Geo query (geofilt/bbox) with the grid cells its shape covers.
+ * The wrapped query is used for matching (the query is rewritten to it), the cells are used by the presearcher only
+ * (see GeoQueryHandler).
+ */
+public class GeoShapeQuery extends Query {
+	private final Query query;
+	private final String field;
+	private final Set<String> cells;
+
+	public GeoShapeQuery(Query query, String field, Set<String> cells) {
+		this.query = query;
+		this.field = field;
+		this.cells = cells;
+	}
+
+	public Query getQuery() {
+		return query;
+	}
+
+	public String getField() {
+		return field;
+	}
+
+	public Set<String> getCells() {
+		return cells;
+	}
+
+	@Override
+	public Query rewrite(IndexReader reader) {
+		return query;
+	}
+
+	@Override
+	public void visit(QueryVisitor visitor) {
+		if (visitor.acceptField(field)) {
+			visitor.visitLeaf(this);
+		}
+	}
+
+	@Override
+	public String toString(String defaultField) {
+		return query.toString(defaultField);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return sameClassAs(other) && query.equals(((GeoShapeQuery) other).query) && cells.equals(((GeoShapeQuery) other).cells);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(classHash(), query, cells);
+	}
+}
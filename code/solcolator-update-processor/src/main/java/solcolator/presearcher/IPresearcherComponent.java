@@ -0,0 +1,38 @@
+package solcolator.presearcher;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.monitor.CustomQueryHandler;
+import org.apache.lucene.search.Query;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.search.SyntaxError;
+
+/**
+ * Each presearcher component have to implement this interface (see RangeBucketQueryHandler for example).
+ * A component indexes queries the term presearcher can't filter under its own keys (handleQuery) and adds
+ * the matching keys of documents either to the term stream of a field (wrapTermStream) or as extra fields
+ * of the monitor document (enrichDocument).
+ */
+public interface IPresearcherComponent extends CustomQueryHandler {
+	/**
+	 * Wrap a parsed clause (q or fq) of a query when the presearcher keys can't be taken from the Lucene query itself
+	 * (see GeoQueryHandler for example)
+	 * @param query - parsed clause
+	 * @param clause - clause string
+	 * @param params - all params of the query
+	 * @return the wrapped query or the query itself
+	 * @throws SyntaxError
+	 */
+	default Query wrapQuery(Query query, String clause, SolrParams params) throws SyntaxError {
+		return query;
+	}
+
+	/**
+	 * Add presearcher keys of the document as extra fields of the monitor document
+	 * @param solrDoc - indexed document
+	 * @param luceneDoc - monitor document built from solrDoc
+	 */
+	default void enrichDocument(SolrInputDocument solrDoc, Document luceneDoc) {
+		// Nothing to add by default
+	}
+}
@@ -0,0 +1,168 @@
+package solcolator.presearcher;
+
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.monitor.TermFilteredPresearcher;
+import org.apache.lucene.monitor.TermWeightor;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.RefCounted;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Term weightor driven by the document frequencies of the terms in the index of the core.
+ * Common terms get a low weight (like idf), so the presearcher indexes every query by its rarest terms.
+ * Only frequencies of common terms are kept, all other terms are considered as rare ones.
+ * Statistics are taken from the newest searcher of the core and have to be rebuilt periodically (see rebuild),
+ * queries have to be registered again only if the common terms changed significantly.
+ */
+public class IndexStatsTermWeightor implements TermWeightor {
+	private static final Logger log = LoggerFactory.getLogger(IndexStatsTermWeightor.class);
+	private static final double MIN_DOC_FREQ_RATIO = 0.0001;
+	private static final int MIN_DOC_FREQ = 2;
+	private static final double MIN_CHANGE_RATIO = 0.1;
+
+	private final TermWeightor termWeightor;
+	private volatile IndexStats stats = new IndexStats(0, Collections.emptyMap());
+
+	public IndexStatsTermWeightor() {
+		this(TermFilteredPresearcher.DEFAULT_WEIGHTOR);
+	}
+
+	public IndexStatsTermWeightor(TermWeightor termWeightor) {
+		this.termWeightor = termWeightor;
+	}
+
+	@Override
+	public double applyAsDouble(Term term) {
+		return termWeightor.applyAsDouble(term) * stats.getRarity(term);
+	}
+
+	/**
+	 * Rebuild document frequencies of common terms from the newest searcher of the core.
+	 * Numeric fields are skipped, they are indexed by trie or point values which the presearcher doesn't use.
+	 * @param core - solr core
+	 * @return true if more than 10% of the common terms of the old or new statistics aren't common in the other one
+	 */
+	public boolean rebuild(SolrCore core) {
+		RefCounted<SolrIndexSearcher> searcherRef = core.getNewestSearcher(false);
+
+		if (searcherRef == null) {
+			log.warn("Term weights weren't rebuilt: core doesn't have an open searcher yet");
+			return false;
+		}
+
+		try {
+			SolrIndexSearcher searcher = searcherRef.get();
+
+			return rebuild(searcher.getIndexReader(), searcher.getSchema());
+		} catch (IOException e) {
+			log.error("Failed to rebuild term weights", e);
+
+			return false;
+		} finally {
+			searcherRef.decref();
+		}
+	}
+
+	/**
+	 * Rebuild document frequencies of common terms from the index reader
+	 * @param reader - reader of the index
+	 * @param schema - schema of the index
+	 * @return true if more than 10% of the common terms of the old or new statistics aren't common in the other one
+	 * @throws IOException
+	 */
+	boolean rebuild(IndexReader reader, IndexSchema schema) throws IOException {
+		long start = System.currentTimeMillis();
+		int maxDoc = reader.maxDoc();
+		int minDocFreq = Math.max(MIN_DOC_FREQ, (int) (maxDoc * MIN_DOC_FREQ_RATIO));
+		Map<Term, Integer> docFreqs = new HashMap<>();
+
+		for (String fieldName : FieldInfos.getIndexedFields(reader)) {
+			SchemaField field = schema.getFieldOrNull(fieldName);
+			Terms terms = MultiTerms.getTerms(reader, fieldName);
+
+			if (field == null || field.getType().getNumberType() != null || terms == null) {
+				continue;
+			}
+
+			TermsEnum termsEnum = terms.iterator();
+			for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+				if (termsEnum.docFreq() >= minDocFreq) {
+					docFreqs.put(new Term(fieldName, BytesRef.deepCopyOf(term)), termsEnum.docFreq());
+				}
+			}
+		}
+
+		IndexStats oldStats = stats;
+		stats = new IndexStats(maxDoc, docFreqs);
+		double change = stats.getChange(oldStats);
+		log.info(String.format("Term weights were rebuilt from %d docs (%d common terms, %.1f%% changed) in %d miliseconds",
+				maxDoc, docFreqs.size(), change * 100, System.currentTimeMillis() - start));
+
+		return change > MIN_CHANGE_RATIO;
+	}
+
+	/**
+	 * Immutable snapshot of document frequencies
+	 */
+	private static class IndexStats {
+		private final int maxDoc;
+		private final Map<Term, Integer> docFreqs;
+		private final double maxIdf;
+
+		IndexStats(int maxDoc, Map<Term, Integer> docFreqs) {
+			this.maxDoc = maxDoc;
+			this.docFreqs = docFreqs;
+			this.maxIdf = idf(0);
+		}
+
+		/**
+		 * @return normalized idf of the term: 1 for rare terms and close to 0 for terms are in all docs
+		 */
+		double getRarity(Term term) {
+			if (maxDoc == 0) {
+				return 1;
+			}
+
+			return idf(docFreqs.getOrDefault(term, 0)) / maxIdf;
+		}
+
+		/**
+		 * @return part of the common terms of both statistics which are common in one of them only (1 - all of them)
+		 */
+		double getChange(IndexStats other) {
+			if (maxDoc == 0 || other.maxDoc == 0) {
+				return maxDoc == other.maxDoc ? 0 : 1;			// weights of an empty index are all the same
+			}
+
+			int sharedTerms = 0;
+			for (Term term : docFreqs.keySet()) {
+				if (other.docFreqs.containsKey(term)) {
+					sharedTerms++;
+				}
+			}
+
+			int allTerms = docFreqs.size() + other.docFreqs.size() - sharedTerms;
+
+			return allTerms == 0 ? 0 : (double) (allTerms - sharedTerms) / allTerms;
+		}
+
+		private double idf(int docFreq) {
+			return Math.log(1 + (maxDoc - docFreq + 0.5) / (docFreq + 0.5));
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package solcolator.presearcher;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.FloatPoint;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.monitor.QueryTree;
+import org.apache.lucene.monitor.TermWeightor;
+import org.apache.lucene.search.PointRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.legacy.LegacyNumericRangeQuery;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.NumberType;
+import org.apache.solr.schema.SchemaField;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Presearcher component for numeric and date range queries (price:[100 TO 200]) on point and trie fields.
+ * A term presearcher can't filter these queries, so they would be candidates for every document.
+ *
+ * Values of every configured field are divided into buckets of a fixed width (per field).
+ * Query side: the query is indexed under all the buckets its range overlaps. Ranges overlapping more than
+ * maxBuckets buckets (including open ranges) aren't filtered.
+ * Document side: the buckets of the document's values are added to the monitor document as an extra field.
+ */
+public class RangeBucketQueryHandler implements IPresearcherComponent {
+	private static final Logger log = LoggerFactory.getLogger(RangeBucketQueryHandler.class);
+	private static final String BUCKET_FIELD_SUFFIX = "__bucket";
+
+	private final IndexSchema schema;
+	private final Map<String, Double> fieldToBucketWidth;
+	private final int maxBuckets;
+
+	public RangeBucketQueryHandler(IndexSchema schema, Map<String, Double> fieldToBucketWidth, int maxBuckets) {
+		this.schema = schema;
+		this.fieldToBucketWidth = fieldToBucketWidth;
+		this.maxBuckets = maxBuckets;
+	}
+
+	@Override
+	public QueryTree handleQuery(Query query, TermWeightor termWeightor) {
+		if (query instanceof PointRangeQuery) {
+			PointRangeQuery rangeQuery = (PointRangeQuery) query;
+
+			if (rangeQuery.getNumDims() != 1 || !fieldToBucketWidth.containsKey(rangeQuery.getField())) {
+				return null;
+			}
+
+			NumberType numberType = getNumberType(rangeQuery.getField());
+			if (numberType == null) {
+				return null;
+			}
+
+			return buildTree(rangeQuery.getField(), decodePoint(numberType, rangeQuery.getLowerPoint()),
+					decodePoint(numberType, rangeQuery.getUpperPoint()), termWeightor);
+		}
+
+		if (query instanceof LegacyNumericRangeQuery) {
+			LegacyNumericRangeQuery<?> rangeQuery = (LegacyNumericRangeQuery<?>) query;
+
+			if (!fieldToBucketWidth.containsKey(rangeQuery.getField()) || rangeQuery.getMin() == null || rangeQuery.getMax() == null) {
+				return null;
+			}
+
+			return buildTree(rangeQuery.getField(), rangeQuery.getMin().doubleValue(), rangeQuery.getMax().doubleValue(), termWeightor);
+		}
+
+		return null;
+	}
+
+	@Override
+	public void enrichDocument(SolrInputDocument solrDoc, Document luceneDoc) {
+		for (Map.Entry<String, Double> fieldToWidth : fieldToBucketWidth.entrySet()) {
+			String fieldName = fieldToWidth.getKey();
+			Collection<Object> values = solrDoc.getFieldValues(fieldName);
+			SchemaField field = schema.getFieldOrNull(fieldName);
+
+			if (values == null || field == null) {
+				continue;
+			}
+
+			Set<Long> buckets = new LinkedHashSet<>();
+			for (Object value : values) {
+				try {
+					buckets.add(getBucket(toDouble(field.getType().toNativeType(value)), fieldToWidth.getValue()));
+				} catch (Exception e) {
+					log.warn(String.format("Value %s of field %s can't be bucketed", value, fieldName));
+				}
+			}
+
+			for (Long bucket : buckets) {
+				luceneDoc.add(new StringField(fieldName + BUCKET_FIELD_SUFFIX, Long.toString(bucket), Store.NO));
+			}
+		}
+	}
+
+	QueryTree buildTree(String field, double lower, double upper, TermWeightor termWeightor) {
+		double width = fieldToBucketWidth.get(field);
+		long lowerBucket = getBucket(lower, width);
+		long upperBucket = getBucket(upper, width);
+
+		if (upperBucket < lowerBucket || (double) upperBucket - lowerBucket >= maxBuckets) {
+			return QueryTree.anyTerm(String.format("Range on %s overlaps more than %d buckets", field, maxBuckets));
+		}
+
+		List<Function<TermWeightor, QueryTree>> buckets = new ArrayList<>();
+		for (long bucket = lowerBucket; bucket <= upperBucket; bucket++) {
+			Term bucketTerm = new Term(field + BUCKET_FIELD_SUFFIX, Long.toString(bucket));
+			buckets.add(weightor -> QueryTree.term(bucketTerm, weightor));
+		}
+
+		return QueryTree.disjunction(buckets, termWeightor);
+	}
+
+	private NumberType getNumberType(String fieldName) {
+		SchemaField field = schema.getFieldOrNull(fieldName);
+
+		return field == null ? null : field.getType().getNumberType();
+	}
+
+	static long getBucket(double value, double width) {
+		double bucket = Math.floor(value / width);
+
+		// open bounds are encoded as MIN/MAX values of the type
+		if (bucket >= Long.MAX_VALUE || bucket <= Long.MIN_VALUE || Double.isNaN(bucket)) {
+			return bucket > 0 ? Long.MAX_VALUE : Long.MIN_VALUE;
+		}
+
+		return (long) bucket;
+	}
+
+	private static double decodePoint(NumberType numberType, byte[] point) {
+		switch (numberType) {
+			case INTEGER:
+				return IntPoint.decodeDimension(point, 0);
+
+			case FLOAT:
+				return FloatPoint.decodeDimension(point, 0);
+
+			case DOUBLE:
+				return DoublePoint.decodeDimension(point, 0);
+
+			default:
+				return LongPoint.decodeDimension(point, 0);		// LONG and DATE (epoch millis)
+		}
+	}
+
+	static double toDouble(Object value) {
+		if (value instanceof Date) {
+			return ((Date) value).getTime();
+		}
+
+		return ((Number) value).doubleValue();
+	}
+}
@@ -0,0 +1,62 @@
+package solcolator.presearcher;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.monitor.TermFilteredPresearcher;
+import org.apache.lucene.monitor.TermWeightor;
+import org.apache.solr.schema.AbstractEnumField;
+import org.apache.solr.schema.BoolField;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Term weightor driven by the field types of the core's schema.
+ * The presearcher indexes every query by its best weighted branch, so terms of fields with a few possible values
+ * (boolean, enum) get a low weight and a query is indexed by them only if it has no better terms.
+ */
+public class SchemaTermWeightor implements TermWeightor {
+	private static final double BOOLEAN_FIELD_WEIGHT = 0.1;
+	private static final double ENUM_FIELD_WEIGHT = 0.5;
+	private static final double DEFAULT_FIELD_WEIGHT = 1.0;
+
+	private final IndexSchema schema;
+	private final TermWeightor termWeightor;
+	private final Map<String, Double> fieldToWeight = new ConcurrentHashMap<>();
+
+	public SchemaTermWeightor(IndexSchema schema) {
+		this(schema, TermFilteredPresearcher.DEFAULT_WEIGHTOR);
+	}
+
+	public SchemaTermWeightor(IndexSchema schema, TermWeightor termWeightor) {
+		this.schema = schema;
+		this.termWeightor = termWeightor;
+	}
+
+	@Override
+	public double applyAsDouble(Term term) {
+		return termWeightor.applyAsDouble(term) * fieldToWeight.computeIfAbsent(term.field(), this::getFieldWeight);
+	}
+
+	private double getFieldWeight(String fieldName) {
+		SchemaField field = schema.getFieldOrNull(fieldName);
+
+		if (field == null) {
+			return DEFAULT_FIELD_WEIGHT;
+		}
+
+		FieldType fieldType = field.getType();
+
+		if (fieldType instanceof BoolField) {
+			return BOOLEAN_FIELD_WEIGHT;
+		}
+
+		if (fieldType instanceof AbstractEnumField) {
+			return ENUM_FIELD_WEIGHT;
+		}
+
+		return DEFAULT_FIELD_WEIGHT;
+	}
+}
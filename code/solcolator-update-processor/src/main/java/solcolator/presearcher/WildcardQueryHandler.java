@@ -0,0 +1,270 @@
+package solcolator.presearcher;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.monitor.QueryTree;
+import org.apache.lucene.monitor.TermWeightor;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.RegexpQuery;
+import org.apache.lucene.search.WildcardQuery;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Presearcher component for prefix, wildcard and regexp queries (name:iph*, name:*phon?, name:/ip.one/).
+ * A term presearcher can't filter these queries, so they would be candidates for every document.
+ *
+ * Query side: the query is indexed under a key built from its literal part:
+ * 		prefix key - the literal the term must start with (iph* -> iph)
+ * 		ngram key - the longest literal the term must contain (*phon? -> phon)
+ * Keys are truncated to keyLength characters.
+ *
+ * Document side: every token of the fields having such queries adds its prefixes and ngrams (up to keyLength
+ * characters) to the presearcher query, so the query is a candidate only when a token could match it.
+ */
+public class WildcardQueryHandler implements IPresearcherComponent {
+	private static final char PREFIX_KEY_MARK = '\u0001';
+	private static final char NGRAM_KEY_MARK = '\u0002';
+	private static final String REGEXP_SPECIAL_CHARS = ".?+*|{}[]()\"#@&<>~\\";
+	private static final String REGEXP_QUANTIFIERS = "?*{";
+
+	private final int keyLength;
+	private final Set<String> prefixFields = ConcurrentHashMap.newKeySet();
+	private final Set<String> ngramFields = ConcurrentHashMap.newKeySet();
+
+	public WildcardQueryHandler(int keyLength) {
+		this.keyLength = keyLength;
+	}
+
+	@Override
+	public QueryTree handleQuery(Query query, TermWeightor termWeightor) {
+		if (query instanceof PrefixQuery) {
+			Term prefix = ((PrefixQuery) query).getPrefix();
+
+			return buildTree(prefix.field(), prefix.text(), "", termWeightor);
+		}
+
+		if (query instanceof WildcardQuery) {
+			Term wildcard = ((WildcardQuery) query).getTerm();
+			String[] literals = splitWildcard(wildcard.text());
+
+			return buildTree(wildcard.field(), literals[0], literals[1], termWeightor);
+		}
+
+		if (query instanceof RegexpQuery) {
+			RegexpQuery regexp = (RegexpQuery) query;
+			String[] literals = splitRegexp(regexp.getRegexp().text());
+
+			return buildTree(regexp.getField(), literals[0], literals[1], termWeightor);
+		}
+
+		return null;
+	}
+
+	@Override
+	public TokenStream wrapTermStream(String field, TokenStream in) {
+		boolean prefixes = prefixFields.contains(field);
+		boolean ngrams = ngramFields.contains(field);
+
+		if (!prefixes && !ngrams) {
+			return in;
+		}
+
+		return new WildcardKeysTokenFilter(in, prefixes, ngrams);
+	}
+
+	/**
+	 * Build query tree by the leading literal (prefix key) or by the longest literal (ngram key) of the term
+	 * @param field - field of the query
+	 * @param leadingLiteral - literal the term must start with
+	 * @param longestLiteral - the longest literal the term must contain
+	 * @param termWeightor
+	 * @return query tree with a single key
+	 */
+	private QueryTree buildTree(String field, String leadingLiteral, String longestLiteral, TermWeightor termWeightor) {
+		if (!leadingLiteral.isEmpty() && leadingLiteral.length() >= Math.min(longestLiteral.length(), keyLength)) {
+			prefixFields.add(field);
+
+			return QueryTree.term(new Term(field, truncate(leadingLiteral) + PREFIX_KEY_MARK), termWeightor);
+		}
+
+		if (!longestLiteral.isEmpty()) {
+			ngramFields.add(field);
+
+			return QueryTree.term(new Term(field, truncate(longestLiteral) + NGRAM_KEY_MARK), termWeightor);
+		}
+
+		return QueryTree.anyTerm(String.format("Wildcard query on %s has no literal part", field));
+	}
+
+	private String truncate(String literal) {
+		return literal.length() > keyLength ? literal.substring(0, keyLength) : literal;
+	}
+
+	/**
+	 * @param wildcard - wildcard term (* and ? are wildcards, \ escapes)
+	 * @return leading literal and the longest literal of the wildcard
+	 */
+	static String[] splitWildcard(String wildcard) {
+		StringBuilder current = new StringBuilder();
+		String leading = null;
+		String longest = "";
+
+		for (int i = 0; i < wildcard.length(); i++) {
+			char c = wildcard.charAt(i);
+
+			if (c == WildcardQuery.WILDCARD_ESCAPE && i + 1 < wildcard.length()) {
+				current.append(wildcard.charAt(++i));
+			} else if (c == WildcardQuery.WILDCARD_STRING || c == WildcardQuery.WILDCARD_CHAR) {
+				leading = leading == null ? current.toString() : leading;
+				longest = current.length() > longest.length() ? current.toString() : longest;
+				current.setLength(0);
+			} else {
+				current.append(c);
+			}
+		}
+
+		leading = leading == null ? current.toString() : leading;
+		longest = current.length() > longest.length() ? current.toString() : longest;
+
+		return new String[] { leading, longest };
+	}
+
+	/**
+	 * A literal ends on any special char of the regexp. A char followed by an optional quantifier (?, *, {)
+	 * isn't a part of the literal. Regexps with alternation or complement have no literal parts.
+	 * @param regexp - Lucene regexp
+	 * @return leading literal and the longest literal of the regexp
+	 */
+	static String[] splitRegexp(String regexp) {
+		if (regexp.indexOf('|') >= 0 || regexp.indexOf('~') >= 0) {
+			return new String[] { "", "" };
+		}
+
+		StringBuilder current = new StringBuilder();
+		String leading = null;
+		String longest = "";
+
+		for (int i = 0; i < regexp.length(); i++) {
+			char c = regexp.charAt(i);
+			boolean escaped = c == '\\' && i + 1 < regexp.length();
+
+			if (escaped) {
+				c = regexp.charAt(++i);
+			}
+
+			if (!escaped && REGEXP_SPECIAL_CHARS.indexOf(c) >= 0) {
+				leading = leading == null ? current.toString() : leading;
+				longest = current.length() > longest.length() ? current.toString() : longest;
+				current.setLength(0);
+
+				if (c == '[' || c == '(' || c == '{' || c == '"' || c == '<') {
+					i = skipGroup(regexp, i);
+				}
+			} else if (i + 1 < regexp.length() && REGEXP_QUANTIFIERS.indexOf(regexp.charAt(i + 1)) >= 0) {
+				// optional char: literal ends before it
+				leading = leading == null ? current.toString() : leading;
+				longest = current.length() > longest.length() ? current.toString() : longest;
+				current.setLength(0);
+			} else {
+				current.append(c);
+			}
+		}
+
+		leading = leading == null ? current.toString() : leading;
+		longest = current.length() > longest.length() ? current.toString() : longest;
+
+		return new String[] { leading, longest };
+	}
+
+	/**
+	 * @return index of the char closing the group is opened at given index (or the last index if isn't closed)
+	 */
+	private static int skipGroup(String regexp, int openIndex) {
+		char open = regexp.charAt(openIndex);
+		char close = open == '[' ? ']' : open == '(' ? ')' : open == '{' ? '}' : open == '<' ? '>' : '"';
+		int depth = 1;
+
+		for (int i = openIndex + 1; i < regexp.length(); i++) {
+			char c = regexp.charAt(i);
+
+			if (c == '\\') {
+				i++;
+			} else if (c == close && --depth == 0) {
+				return i;
+			} else if (c == open) {
+				depth++;
+			}
+		}
+
+		return regexp.length() - 1;
+	}
+
+	/**
+	 * Adds prefix and ngram keys of every token to the token stream (after the token itself)
+	 */
+	private class WildcardKeysTokenFilter extends TokenFilter {
+		private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+		private final Deque<String> pendingKeys = new ArrayDeque<>();
+		private final boolean prefixes;
+		private final boolean ngrams;
+
+		WildcardKeysTokenFilter(TokenStream input, boolean prefixes, boolean ngrams) {
+			super(input);
+			this.prefixes = prefixes;
+			this.ngrams = ngrams;
+		}
+
+		@Override
+		public boolean incrementToken() throws IOException {
+			if (!pendingKeys.isEmpty()) {
+				clearAttributes();
+				termAtt.setEmpty().append(pendingKeys.poll());
+
+				return true;
+			}
+
+			if (!input.incrementToken()) {
+				return false;
+			}
+
+			pendingKeys.addAll(buildKeys(termAtt.toString()));
+
+			return true;
+		}
+
+		private Set<String> buildKeys(String token) {
+			Set<String> keys = new LinkedHashSet<>();
+
+			if (prefixes) {
+				for (int end = 1; end <= Math.min(token.length(), keyLength); end++) {
+					keys.add(token.substring(0, end) + PREFIX_KEY_MARK);
+				}
+			}
+
+			if (ngrams) {
+				for (int start = 0; start < token.length(); start++) {
+					for (int end = start + 1; end <= Math.min(token.length(), start + keyLength); end++) {
+						keys.add(token.substring(start, end) + NGRAM_KEY_MARK);
+					}
+				}
+			}
+
+			return keys;
+		}
+
+		@Override
+		public void reset() throws IOException {
+			super.reset();
+			pendingKeys.clear();
+		}
+	}
+}
@@ -0,0 +1,327 @@
+package solcolator.solr;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.monitor.HighlightsMatch;
+import org.apache.lucene.monitor.HighlightsMatch.Hit;
+import org.apache.lucene.monitor.MatcherFactory;
+import org.apache.lucene.monitor.QueryMatch;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import solcolator.common.MatchExecutor;
+import solcolator.filters.FilterBatch;
+import solcolator.io.api.ISolcolatorResultsWriter;
+import solcolator.keywords.KeywordQueryMatcher;
+import solcolator.monitor.LuwakMatchStrategy;
+import solcolator.monitor.LuwakMatcherFactory;
+import solcolator.monitor.LuwakQueriesGeneration;
+import solcolator.monitor.LuwakQueriesManager;
+import solcolator.monitor.PartitionedMatches;
+import solcolator.monitor.QueryGroups;
+import solcolator.monitor.QueryRegistry;
+import solcolator.monitor.RoutedMonitor;
+import solcolator.templates.QueryTemplateIndex;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Matches batches of documents (of one or several updates, see MicroBatcher) against the queries
+ * and writes the matched documents by the writers. Matches are attributed to documents by their position in the batch
+ */
+public class SolcolatorBatchMatcher {
+	private static Logger log = LoggerFactory.getLogger(SolcolatorBatchMatcher.class);
+	private final LuwakQueriesManager manager;
+	private final LuwakMatcherFactory factory;
+	private final LuwakMatchStrategy matchStrategy;
+	private final int matchThreads;
+	private final MatchExecutor matchExecutor;
+	private final boolean isFilterBatch;
+
+	/**
+	 * @param isFilterBatch - if queries are evaluated against the batch (field filters or relative dates), documents get the batch fields
+	 */
+	public SolcolatorBatchMatcher(LuwakQueriesManager manager, LuwakMatcherFactory factory, LuwakMatchStrategy matchStrategy, int matchThreads,
+			MatchExecutor matchExecutor, boolean isFilterBatch) {
+		this.manager = manager;
+		this.factory = factory;
+		this.matchStrategy = matchStrategy;
+		this.matchThreads = matchThreads;
+		this.matchExecutor = matchExecutor;
+		this.isFilterBatch = isFilterBatch;
+	}
+
+	/**
+	 * Document of an update waits for matching
+	 */
+	public static class BatchDocument {
+		private final String itemId;
+		private final SolrInputDocument solrDoc;
+		private final Document luceneDoc;
+		private final long estimatedBytes;
+
+		public BatchDocument(String itemId, SolrInputDocument solrDoc, Document luceneDoc) {
+			this.itemId = itemId;
+			this.solrDoc = solrDoc;
+			this.luceneDoc = luceneDoc;
+			this.estimatedBytes = estimateBytes(luceneDoc);
+		}
+
+		/**
+		 * Estimate bytes the document takes when it's analyzed for matching: chars of text fields (tokens are indexed
+		 * from them), bytes of binary fields and a value per numeric field
+		 * @param luceneDoc - monitor document
+		 * @return estimated bytes
+		 */
+		static long estimateBytes(Document luceneDoc) {
+			long bytes = 0;
+
+			for (IndexableField field : luceneDoc) {
+				if (field.stringValue() != null) {
+					bytes += (long) field.stringValue().length() * Character.BYTES;
+				} else if (field.binaryValue() != null) {
+					bytes += field.binaryValue().length;
+				} else {
+					bytes += Long.BYTES;
+				}
+			}
+
+			return bytes;
+		}
+
+		public String getItemId() {
+			return itemId;
+		}
+
+		public SolrInputDocument getSolrDoc() {
+			return solrDoc;
+		}
+
+		public Document getLuceneDoc() {
+			return luceneDoc;
+		}
+
+		public long getEstimatedBytes() {
+			return estimatedBytes;
+		}
+	}
+
+	/**
+	 * Match the batch against one generation of queries and write the results
+	 * @param batchDocs - documents of the batch
+	 */
+	public void match(List<BatchDocument> batchDocs) {
+		log.info("Start to match docs through solcolator");
+		long start = System.currentTimeMillis();
+		LuwakQueriesGeneration generation;
+
+		try {
+			generation = manager.acquireGeneration(); // the batch is matched against one generation of queries
+		} catch (IllegalStateException e) {
+			log.error(String.format("Batch of %d docs wasn't matched", batchDocs.size()), e);
+
+			return;
+		}
+
+		try (FilterBatch filterBatch = isFilterBatch ? new FilterBatch() : null) {
+			if (filterBatch != null) {
+				for (BatchDocument batchDoc : batchDocs) {
+					filterBatch.add(batchDoc.getSolrDoc(), batchDoc.getLuceneDoc());
+				}
+
+				filterBatch.open();
+			}
+
+			matchByFactory(generation, batchDocs);
+
+			log.info(String.format("Monitor matched %d items in %d ms, field filters rejected %d query-doc pairs",
+					batchDocs.size(), System.currentTimeMillis() - start, filterBatch == null ? 0 : filterBatch.getRejectedCount()));
+		} catch (Exception e) {
+			log.error("Failed to match monitor documents", e);
+		} finally {
+			generation.release();
+			log.info("Finish to match docs through solcolator");
+		}
+	}
+
+	private void matchByFactory(LuwakQueriesGeneration generation, List<BatchDocument> batchDocs) throws IOException {
+		switch (factory) {
+			case HIGHLIGHTING:
+				match(generation, batchDocs, HighlightsMatch.MATCHER, HighlightsMatch::getHits);
+				break;
+
+			case SIMPLE:
+			default:
+				match(generation, batchDocs, QueryMatch.SIMPLE_MATCHER, documentMatch -> null);
+				break;
+		}
+	}
+
+	/**
+	 * Match the batch by the monitor and the lookups, and write the matched documents by every writer
+	 * @param matcherFactory - matcher of a single thread
+	 * @param hitsOf - hits of a match (null if the matcher has no hits)
+	 */
+	private <T extends QueryMatch> void match(LuwakQueriesGeneration generation, List<BatchDocument> batchDocs, MatcherFactory<T> matcherFactory,
+			Function<T, Map<String, Set<Hit>>> hitsOf) throws IOException {
+		Document[] docArray = batchDocs.stream().map(BatchDocument::getLuceneDoc).toArray(Document[]::new);
+		SolrInputDocument[] solrDocArray = batchDocs.stream().map(BatchDocument::getSolrDoc).toArray(SolrInputDocument[]::new);
+		QueryRegistry.Snapshot querySnapshot = generation.getQueries().getSnapshot();	// version of the queries the batch is matched against
+
+		RoutedMonitor monitor = generation.getMonitor();
+		PartitionedMatches<T> matches = monitor.match(docArray, solrDocArray, createMatcher(monitor, docArray.length, matcherFactory),
+				matchExecutor.getPartitionExecutor());
+		recordMatchStats(monitor, matches);
+		Map<Integer, Set<String>> lookupMatches = lookupMatch(generation, batchDocs);
+		QueryGroups queryGroups = generation.getQueryGroups();
+
+		for (ISolcolatorResultsWriter writer : manager.getSolcolatorResultsWriters()) {
+			Map<String, List<SolrInputDocument>> docsToWrite = new HashMap<>();		// fl differs per writer
+
+			for (int position = 0; position < batchDocs.size(); position++) {
+				BatchDocument batchDoc = batchDocs.get(position);
+
+				for (T documentMatch : matches.getMatches(position)) {
+					for (String queryId : queryGroups.getMembers(documentMatch.getQueryId())) {	// matches of duplicates of the query
+						addDocToWrite(generation, querySnapshot, queryId, batchDoc, hitsOf.apply(documentMatch), writer, docsToWrite);
+					}
+				}
+
+				for (String queryId : lookupMatches.getOrDefault(position, Set.of())) {
+					addDocToWrite(generation, querySnapshot, queryId, batchDoc, null, writer, docsToWrite);
+				}
+			}
+
+			writer.writeSolcolatorResults(docsToWrite);
+		}
+	}
+
+	private void addDocToWrite(LuwakQueriesGeneration generation, QueryRegistry.Snapshot querySnapshot, String queryId, BatchDocument batchDoc,
+			Map<String, Set<Hit>> hits, ISolcolatorResultsWriter writer, Map<String, List<SolrInputDocument>> docsToWrite) {
+		try {
+			SolrInputDocument docWithSpecificFields = getDocWithSpecificFields(generation, querySnapshot, queryId, batchDoc.getSolrDoc(), hits, writer);
+			docsToWrite.computeIfAbsent(queryId, id -> new ArrayList<>()).add(docWithSpecificFields);
+		} catch (Exception e) {
+			String errMessage = String.format("Failed to write matched results for doc %s", batchDoc.getItemId());
+			log.error(errMessage, e);
+		}
+	}
+
+	/**
+	 * Create matcher of the batch by the match strategy, the adaptive strategy estimates candidates of the batch
+	 * by the part of the queries were candidates in the recent batches
+	 */
+	private <T extends QueryMatch> MatcherFactory<T> createMatcher(RoutedMonitor monitor, int batchSize, MatcherFactory<T> matcherFactory) {
+		long estimatedCandidates = Math.round(monitor.getQueryCount() * manager.getMatchStats().getRecentCandidateRatio());
+		LuwakMatchStrategy batchStrategy = matchStrategy.resolve(batchSize, estimatedCandidates);
+		log.info(String.format("Batch of %d docs with about %d candidates is matched by %s strategy", batchSize, estimatedCandidates, batchStrategy));
+
+		return batchStrategy.createMatcher(matcherFactory, matchExecutor.getMatcherExecutor(), matchThreads);
+	}
+
+	/**
+	 * Match the docs of the batch against queries are matched without the monitor (templated and keyword queries)
+	 * @return map between position of doc in the batch and ids of matched queries
+	 */
+	private Map<Integer, Set<String>> lookupMatch(LuwakQueriesGeneration generation, List<BatchDocument> batchDocs) {
+		Map<Integer, Set<String>> positionToQueryIds = new HashMap<>();
+		QueryTemplateIndex templateIndex = generation.getTemplateIndex();
+		KeywordQueryMatcher keywordMatcher = generation.getKeywordMatcher();
+		boolean isTemplateMatch = templateIndex.getQueryCount() > 0;
+		boolean isKeywordMatch = keywordMatcher != null && keywordMatcher.getQueryCount() > 0;
+
+		if (!isTemplateMatch && !isKeywordMatch) {
+			return positionToQueryIds;
+		}
+
+		for (int position = 0; position < batchDocs.size(); position++) {
+			SolrInputDocument solrDoc = batchDocs.get(position).getSolrDoc();
+			Set<String> queryIds = new HashSet<>();
+
+			if (isTemplateMatch) {
+				queryIds.addAll(templateIndex.match(solrDoc));
+			}
+
+			if (isKeywordMatch) {
+				queryIds.addAll(keywordMatcher.match(solrDoc));
+			}
+
+			if (!queryIds.isEmpty()) {
+				positionToQueryIds.put(position, queryIds);
+			}
+		}
+
+		log.info(String.format("Template index and keyword matcher matched %d of %d docs", positionToQueryIds.size(), batchDocs.size()));
+
+		return positionToQueryIds;
+	}
+
+	/**
+	 * Record how many candidate queries were selected by the presearcher and how many of them were matched
+	 * @param monitor - monitor the batch was matched by
+	 * @param matches - results of matching of the batch
+	 */
+	private void recordMatchStats(RoutedMonitor monitor, PartitionedMatches<? extends QueryMatch> matches) {
+		Set<String> matchedQueries = new HashSet<>();
+		int matchCount = 0;
+
+		for (int docId = 0; docId < matches.getBatchSize(); docId++) {
+			for (QueryMatch match : matches.getMatches(docId)) {
+				matchedQueries.add(match.getQueryId());
+				matchCount++;
+			}
+		}
+
+		manager.getMatchStats().record(matches.getBatchSize(), monitor.getQueryCount(), matches.getQueriesRun(),
+				matchedQueries.size(), matchCount);
+		log.info(String.format("Presearcher selected %d candidates of %d queries for %d docs, %d of them were matched",
+				matches.getQueriesRun(), monitor.getQueryCount(), matches.getBatchSize(), matchedQueries.size()));
+	}
+
+	/**
+	 * Return Solr doc with specific (by config) fields only + queryId field, query
+	 * and hits(optional)
+	 *
+	 * @param generation - generation of queries the doc was matched against
+	 * @param querySnapshot - version of the queries the batch was matched against
+	 * @param queryId - query id
+	 * @param doc     - matched Solr doc
+	 * @param hits    - hits(optional)
+	 * @return SolrDocument with neccessary fields only
+	 */
+	private SolrInputDocument getDocWithSpecificFields(LuwakQueriesGeneration generation, QueryRegistry.Snapshot querySnapshot, String queryId,
+			SolrInputDocument doc, Map<String, Set<Hit>> hits, ISolcolatorResultsWriter writer) {
+		Map<String, SolrInputField> specificFields = new HashMap<>();
+		List<String> fl = writer.getFl(); // fl can be different per writer (in the case where we use several writers)
+
+		if (!fl.contains("*")) { // if fl = * then we want to get all fields
+			for (String fieldName : fl) {
+				specificFields.put(fieldName, doc.getField(fieldName));
+			}
+		} else {
+			specificFields = doc.entrySet().stream().filter(x -> !x.getKey().equals("_version_"))
+					.collect(Collectors.toMap(Entry::getKey, Entry::getValue));
+		}
+
+		SolrInputDocument retDoc = new SolrInputDocument(specificFields);
+
+		// add extra fields
+		retDoc.addField("queryid_s", queryId);
+		retDoc.addField("query_s", generation.getQueryString(querySnapshot, queryId));
+		if (hits != null) {
+			retDoc.addField("hits_s", new SolrInputField(hits.toString()));
+		}
+
+		return retDoc;
+	}
+}
@@ -4,8 +4,11 @@ import org.apache.solr.common.util.NamedList;
 import org.apache.solr.handler.component.SearchHandler;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
+import solcolator.common.MatchExecutor;
+import solcolator.common.MatchLane;
+import solcolator.monitor.LuwakQueriesGeneration;
 import solcolator.monitor.LuwakQueriesManager;
-import solcolator.monitor.LuwakQuery;
+import solcolator.monitor.StoredQuery;
 
 import java.util.Map;
 import java.util.Map.Entry;
@@ -16,24 +19,71 @@ import java.util.Map.Entry;
  */
 public class SolcolatorInfoRequestHander extends SearchHandler {
 	private final static String NUMBER_QUERIES_IN_SOLCOLATOR_HEADER = "numberQueriesInSolcolator";
+	private final static String NUMBER_TEMPLATED_QUERIES_IN_SOLCOLATOR_HEADER = "numberTemplatedQueriesInSolcolator";
+	private final static String NUMBER_KEYWORD_QUERIES_IN_SOLCOLATOR_HEADER = "numberKeywordQueriesInSolcolator";
+	private final static String NUMBER_DUPLICATE_QUERIES_IN_SOLCOLATOR_HEADER = "numberDuplicateQueriesInSolcolator";
+	private final static String NUMBER_MONITOR_ROUTES_HEADER = "numberMonitorRoutes";
+	private final static String QUERIES_GENERATION_HEADER = "queriesGeneration";
+	private final static String MATCH_STATS_HEADER = "matchStats";
+	private final static String PARSED_QUERY_CACHE_HEADER = "parsedQueryCache";
+	private final static String FIELD_QUERY_COUNTS_HEADER = "requiredFieldQueryCounts";
+	private final static String MATCH_LANES_HEADER = "matchLanes";
+	private final static String MATCH_EXECUTOR_HEADER = "matchExecutor";
+	private final static String MICRO_BATCHER_HEADER = "microBatcher";
 	
 	@Override
 	public void handleRequestBody(SolrQueryRequest req, SolrQueryResponse rsp) throws Exception {						
 		LuwakQueriesManager manager = LuwakQueriesManager.getQueriesManager();
-		Map<String, LuwakQuery> queriesMap = manager.getQueryIdToLuwakQuery();
+		LuwakQueriesGeneration generation = manager.acquireGeneration();
 		
-		NamedList<Object> nmsLst = new NamedList<Object>();
-		nmsLst.add(NUMBER_QUERIES_IN_SOLCOLATOR_HEADER, manager.getMonitor().getQueryCount());
-		nmsLst.add(SolcolatorQueriesRequestHander.NAME, SolcolatorQueriesRequestCommand.toPrint());
-		
-		rsp.addResponseHeader(nmsLst);
-
-		getAllQueriesInPrintableFormat(queriesMap, rsp);
+		try {
+			Map<String, StoredQuery> queriesMap = generation.getQueryIdToQuery();
+			
+			NamedList<Object> nmsLst = new NamedList<Object>();
+			nmsLst.add(NUMBER_QUERIES_IN_SOLCOLATOR_HEADER, generation.getMonitor().getQueryCount());
+			nmsLst.add(NUMBER_TEMPLATED_QUERIES_IN_SOLCOLATOR_HEADER, generation.getTemplateIndex().getQueryCount());
+			nmsLst.add(NUMBER_KEYWORD_QUERIES_IN_SOLCOLATOR_HEADER, generation.getKeywordMatcher() == null ? 0 : generation.getKeywordMatcher().getQueryCount());
+			nmsLst.add(NUMBER_DUPLICATE_QUERIES_IN_SOLCOLATOR_HEADER, generation.getQueryGroups().getDuplicateCount());
+			nmsLst.add(NUMBER_MONITOR_ROUTES_HEADER, generation.getMonitor().getRouteCount());
+			nmsLst.add(QUERIES_GENERATION_HEADER, generation.getNumber());
+			nmsLst.add(MATCH_STATS_HEADER, manager.getMatchStats().toNamedList());
+			if (manager.getParsedQueryCache() != null) {
+				nmsLst.add(PARSED_QUERY_CACHE_HEADER, manager.getParsedQueryCache().toNamedList());
+			}
+			nmsLst.add(MATCH_LANES_HEADER, getMatchLanes(manager));
+			nmsLst.add(FIELD_QUERY_COUNTS_HEADER, generation.getFieldQueryCounts().toNamedList());
+			nmsLst.add(SolcolatorQueriesRequestHander.NAME, SolcolatorQueriesRequestCommand.toPrint());
+			
+			rsp.addResponseHeader(nmsLst);
+	
+			getAllQueriesInPrintableFormat(queriesMap, rsp);
+			
+			for (Entry<String, String> query : generation.getTemplateIndex().getQueryIdToQueryString().entrySet()) {
+				rsp.add(query.getKey(), query.getValue());
+			}
+		} finally {
+			generation.release();
+		}
 	}
 	
-	private void getAllQueriesInPrintableFormat(Map<String, LuwakQuery> queriesMap, SolrQueryResponse rsp) {
-		for (Entry<String, LuwakQuery> query : queriesMap.entrySet()) {
-			rsp.add(query.getKey(),query.getValue().getQuery());
+	private void getAllQueriesInPrintableFormat(Map<String, StoredQuery> queriesMap, SolrQueryResponse rsp) {
+		for (Entry<String, StoredQuery> query : queriesMap.entrySet()) {
+			rsp.add(query.getKey(), query.getValue().getQueryString());
 		}
 	}
+	
+	/**
+	 * @return queue and batch stats of every match lane
+	 */
+	private NamedList<Object> getMatchLanes(LuwakQueriesManager manager) {
+		NamedList<Object> lanes = new NamedList<>();
+		for (Entry<MatchLane, MatchExecutor> laneToExecutor : manager.getMatchExecutors().entrySet()) {
+			NamedList<Object> lane = new NamedList<>();
+			lane.add(MATCH_EXECUTOR_HEADER, laneToExecutor.getValue().toNamedList());
+			lane.add(MICRO_BATCHER_HEADER, manager.getMicroBatchers().get(laneToExecutor.getKey()).toNamedList());
+			lanes.add(laneToExecutor.getKey().getName(), lane);
+		}
+		
+		return lanes;
+	}
 }
@@ -7,7 +7,7 @@ import java.util.stream.Collectors;
 public enum SolcolatorQueriesRequestCommand {
 	UPDATE,		// add a new query OR update a existing query
 	DELETE,		// delete query
-	REFRESH,	// refresh queries in Luwak (it is used for dynamic values like 'NOW')
+	REFRESH,	// refresh queries with dynamic values like 'NOW' in Luwak
 	REREAD;		// load all queries from the source (file/db/etc..)
 
 	/**
@@ -8,7 +8,6 @@ import org.apache.solr.response.SolrQueryResponse;
 import solcolator.common.SolrUtils;
 import solcolator.io.api.SolcolatorQuery;
 import solcolator.monitor.LuwakQueriesManager;
-import solcolator.monitor.LuwakQuery;
 
 import java.util.Arrays;
 import java.util.HashMap;
@@ -41,11 +40,11 @@ public class SolcolatorQueriesRequestHander extends SolcolatorRequestHandler {
 			
 			switch (reqCommand) {
 				case REFRESH:
-					manager.updateAllQueries();
+					manager.refreshDateMathQueries();
 					break;
 					
 				case REREAD:
-					manager.loadQueriesToSolcolator(getRequestHandlerMetadata(req.getCore()));
+					manager.rereadQueries(getRequestHandlerMetadata(req.getCore()));
 					break;
 					
 				case UPDATE:
@@ -58,11 +57,7 @@ public class SolcolatorQueriesRequestHander extends SolcolatorRequestHandler {
 					if (!isQueryNameValid(req, rsp, queryName)) { return; }
 					
 					SolcolatorQuery solcolatorQuery = manager.getQueryReader().readByQueryId(queryId, queryName, getRequestHandlerMetadata(req.getCore()));
-					LuwakQuery luwakQuery = new LuwakQuery(solcolatorQuery.getQueryId(),
-							solcolatorQuery.getQueryName(),
-							solcolatorQuery.getQuery(),
-							solcolatorQuery.getQueryMetadata());
-					manager.updateQueryInMonitor(luwakQuery);
+					manager.updateQuery(solcolatorQuery);
 					break;
 					
 				case DELETE:
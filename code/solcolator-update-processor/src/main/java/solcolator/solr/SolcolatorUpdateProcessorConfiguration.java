@@ -3,13 +3,20 @@ package solcolator.solr;
 import org.apache.solr.common.util.NamedList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import solcolator.common.MatchLane;
 import solcolator.config.ConfigField;
 import solcolator.config.ConfigFieldType;
 import solcolator.config.SolrConfigurationInitializationException;
 import solcolator.config.SolrPluginConfigurationBase;
+import solcolator.monitor.LuwakMatchStrategy;
 import solcolator.monitor.LuwakMatcherFactory;
+import solcolator.monitor.LuwakPresearcherFactory;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
 
 /**
 <processor class="solcolator.solr.SolcolatorUpdateProcessorFactory">
@@ -17,12 +24,51 @@ import java.util.List;
 	<int name="targetHour">[hour]</int>
 	<int name="targetMin">[minute]</int>
 	<int name="targetSec">[second]</int>
+	<int name="refreshIntervalSec">86400</int> <!-- refresh is repeated every interval after the target time (optional, default is daily) -->
 
 	<!-- Components to use -->
 	<str name="components"/>
 	
 	<!-- Factories for matching docs -->
 	<str name="matchFactory">simple</str> <!-- simple/highlighting -->
+	<str name="matchStrategy">adaptive</str> <!-- serial/parallel/partition/adaptive - how candidate queries are run against a batch -->
+	<int name="matchThreads">[number of cores]</int> <!-- threads (parallel) or slices (partition) of matching a batch -->
+	<int name="matchBatchThreads">4</int> <!-- number of batches are matched concurrently -->
+	<int name="matchQueueSize">64</int> <!-- max number of batches wait for matching -->
+	<long name="matchQueueTimeoutMs">30000</long> <!-- max time an update waits for the full match queue before it's rejected (0 - rejected at once) -->
+	<int name="microBatchMaxSize">1000</int> <!-- max number of docs of concurrent updates are matched as one batch -->
+	<long name="microBatchMaxBytes">4194304</long> <!-- max estimated bytes of docs in a batch, bigger updates are split to several batches -->
+	<long name="microBatchMaxLatencyMs">20</long> <!-- max time docs wait for docs of other updates (0 - every update is a batch) -->
+	<long name="microBatchTargetMs">200</long> <!-- target time of matching a batch, the batch size adapts to it -->
+	<str name="defaultMatchLane">realtime</str> <!-- realtime/bulk - lane of updates without the solcolator.lane param -->
+	<int name="realtimeLaneWeight">3</int> <!-- share of batch threads, matcher threads and queue of the realtime lane -->
+	<int name="bulkLaneWeight">1</int> <!-- share of batch threads, matcher threads and queue of the bulk lane -->
+	<float name="bulkMatchSampleRate">1</float> <!-- part of bulk docs are matched (0 - bulk docs aren't matched) -->
+	
+	<!-- Presearcher for selecting candidate queries (optional, default is term) -->
+	<str name="presearcher">term</str> <!-- none/term/multipass -->
+	<int name="presearcherPasses">2</int> <!-- multipass only -->
+	<float name="presearcherMinWeight">0</float> <!-- multipass only -->
+	<bool name="indexTermWeights">true</bool> <!-- weight terms by their frequencies in the index (optional, default is false) -->
+	<int name="termWeightsRefreshIntervalSec">604800</int> <!-- term weights are rebuilt every interval after the target time, queries are registered again if they changed (default is weekly) -->
+	<int name="wildcardKeyLength">4</int> <!-- max length of prefix/ngram keys of prefix, wildcard and regexp queries (optional, default is 0 - disabled) -->
+	<lst name="rangeBuckets"> <!-- bucket width per numeric/date field for filtering range queries (optional) -->
+		<double name="[field name]">[bucket width (date fields - in miliseconds)]</double>
+	</lst>
+	<int name="maxRangeBuckets">64</int> <!-- ranges overlapping more buckets aren't filtered -->
+	<float name="geoCellSize">0.1</float> <!-- grid cell size (degrees) for filtering geofilt/bbox queries (optional, default is 0 - disabled) -->
+	<bool name="persistentMonitor">false</bool> <!-- keep monitor query index in the data dir of the core and restore it on start -->
+	<bool name="relativeDates">true</bool> <!-- resolve NOW of date range clauses (date:[NOW-1DAY TO NOW]) per matched batch instead of on refresh (optional, default is false) -->
+	<bool name="fieldFilters">true</bool> <!-- evaluate simple fq clauses (term/range) and fields required by queries on raw document values before the monitor (optional, default is false) -->
+	<bool name="keywordMatching">true</bool> <!-- match term/phrase queries by an Aho-Corasick automaton instead of the monitor (simple matchFactory only, optional, default is false) -->
+	<int name="monitorPartitions">1</int> <!-- number of monitors queries are split to by hash of their ids, they are registered and matched concurrently -->
+	<str name="routingField">[field name]</str> <!-- queries are routed to a monitor per value of this metadata param, docs are matched by the monitor of their value of the field and a global one (optional) -->
+	<int name="parsedQueryCacheSize">100000</int> <!-- max number of parsed queries are cached by their params (0 - disabled) -->
+	
+	<!-- Query templates (optional): templated queries are matched by lookups of their params instead of the monitor -->
+	<lst name="templates">
+		<str name="[template name]">[field:$param clauses joined by AND]</str>
+	</lst>
 
 	<lst name="reader">
 		<str name="class">solcolator.io.readers.FileReader</str>
@@ -65,6 +111,34 @@ import java.util.List;
  */
 public class SolcolatorUpdateProcessorConfiguration extends SolrPluginConfigurationBase  {
 	private final static Logger log = LoggerFactory.getLogger(SolcolatorUpdateProcessorConfiguration.class);
+	private final static int DEFAULT_REFRESH_INTERVAL_SEC = 24 * 60 * 60;
+	private final static String DEFAULT_PRESEARCHER = LuwakPresearcherFactory.TERM.name();
+	private final static int DEFAULT_PRESEARCHER_PASSES = 2;
+	private final static float DEFAULT_PRESEARCHER_MIN_WEIGHT = 0;
+	private final static boolean DEFAULT_INDEX_TERM_WEIGHTS = false;
+	private final static int DEFAULT_TERM_WEIGHTS_REFRESH_INTERVAL_SEC = 7 * 24 * 60 * 60;
+	private final static int DEFAULT_WILDCARD_KEY_LENGTH = 0;
+	private final static int DEFAULT_MAX_RANGE_BUCKETS = 64;
+	private final static float DEFAULT_GEO_CELL_SIZE = 0;
+	private final static boolean DEFAULT_PERSISTENT_MONITOR = false;
+	private final static boolean DEFAULT_RELATIVE_DATES = false;
+	private final static boolean DEFAULT_FIELD_FILTERS = false;
+	private final static boolean DEFAULT_KEYWORD_MATCHING = false;
+	private final static int DEFAULT_PARSED_QUERY_CACHE_SIZE = 100000;
+	private final static int DEFAULT_MONITOR_PARTITIONS = 1;
+	private final static String DEFAULT_MATCH_STRATEGY = LuwakMatchStrategy.ADAPTIVE.name();
+	private final static int DEFAULT_MATCH_THREADS = Runtime.getRuntime().availableProcessors();
+	private final static int DEFAULT_MATCH_BATCH_THREADS = 4;
+	private final static int DEFAULT_MATCH_QUEUE_SIZE = 64;
+	private final static long DEFAULT_MATCH_QUEUE_TIMEOUT_MS = 30000;
+	private final static int DEFAULT_MICRO_BATCH_MAX_SIZE = 1000;
+	private final static long DEFAULT_MICRO_BATCH_MAX_BYTES = 4 * 1024 * 1024;
+	private final static long DEFAULT_MICRO_BATCH_MAX_LATENCY_MS = 20;
+	private final static long DEFAULT_MICRO_BATCH_TARGET_MS = 200;
+	private final static String DEFAULT_MATCH_LANE = MatchLane.REALTIME.name();
+	private final static int DEFAULT_REALTIME_LANE_WEIGHT = 3;
+	private final static int DEFAULT_BULK_LANE_WEIGHT = 1;
+	private final static float DEFAULT_BULK_MATCH_SAMPLE_RATE = 1;
 	
 	@ConfigField(fieldName = "targetHour", fieldType = ConfigFieldType.INT, isMandatory = true)
 	private int targetHour;
@@ -75,12 +149,105 @@ public class SolcolatorUpdateProcessorConfiguration extends SolrPluginConfigurat
 	@ConfigField(fieldName = "targetSec", fieldType = ConfigFieldType.INT, isMandatory = true)
 	private int targetSec;
 	
+	@ConfigField(fieldName = "refreshIntervalSec", fieldType = ConfigFieldType.INT, isMandatory = false)
+	private Integer refreshIntervalSec;
+	
 	@ConfigField(fieldName = "components", fieldType = ConfigFieldType.STRING, isMandatory = true)
 	private String componentsStr;
 	
 	@ConfigField(fieldName = "matchFactory", fieldType = ConfigFieldType.STRING, isMandatory = true)
 	private String matchFactoryStr;
 	
+	@ConfigField(fieldName = "matchStrategy", fieldType = ConfigFieldType.STRING, isMandatory = false)
+	private String matchStrategyStr;
+	
+	@ConfigField(fieldName = "matchThreads", fieldType = ConfigFieldType.INT, isMandatory = false)
+	private Integer matchThreads;
+	
+	@ConfigField(fieldName = "matchBatchThreads", fieldType = ConfigFieldType.INT, isMandatory = false)
+	private Integer matchBatchThreads;
+	
+	@ConfigField(fieldName = "matchQueueSize", fieldType = ConfigFieldType.INT, isMandatory = false)
+	private Integer matchQueueSize;
+	
+	@ConfigField(fieldName = "matchQueueTimeoutMs", fieldType = ConfigFieldType.LONG, isMandatory = false)
+	private Long matchQueueTimeoutMs;
+	
+	@ConfigField(fieldName = "microBatchMaxSize", fieldType = ConfigFieldType.INT, isMandatory = false)
+	private Integer microBatchMaxSize;
+	
+	@ConfigField(fieldName = "microBatchMaxBytes", fieldType = ConfigFieldType.LONG, isMandatory = false)
+	private Long microBatchMaxBytes;
+	
+	@ConfigField(fieldName = "microBatchMaxLatencyMs", fieldType = ConfigFieldType.LONG, isMandatory = false)
+	private Long microBatchMaxLatencyMs;
+	
+	@ConfigField(fieldName = "microBatchTargetMs", fieldType = ConfigFieldType.LONG, isMandatory = false)
+	private Long microBatchTargetMs;
+	
+	@ConfigField(fieldName = "defaultMatchLane", fieldType = ConfigFieldType.STRING, isMandatory = false)
+	private String defaultMatchLaneStr;
+	
+	@ConfigField(fieldName = "realtimeLaneWeight", fieldType = ConfigFieldType.INT, isMandatory = false)
+	private Integer realtimeLaneWeight;
+	
+	@ConfigField(fieldName = "bulkLaneWeight", fieldType = ConfigFieldType.INT, isMandatory = false)
+	private Integer bulkLaneWeight;
+	
+	@ConfigField(fieldName = "bulkMatchSampleRate", fieldType = ConfigFieldType.FLOAT, isMandatory = false)
+	private Float bulkMatchSampleRate;
+	
+	@ConfigField(fieldName = "presearcher", fieldType = ConfigFieldType.STRING, isMandatory = false)
+	private String presearcherStr;
+	
+	@ConfigField(fieldName = "presearcherPasses", fieldType = ConfigFieldType.INT, isMandatory = false)
+	private Integer presearcherPasses;
+	
+	@ConfigField(fieldName = "presearcherMinWeight", fieldType = ConfigFieldType.FLOAT, isMandatory = false)
+	private Float presearcherMinWeight;
+	
+	@ConfigField(fieldName = "indexTermWeights", fieldType = ConfigFieldType.BOOLEAN, isMandatory = false)
+	private Boolean indexTermWeights;
+	
+	@ConfigField(fieldName = "termWeightsRefreshIntervalSec", fieldType = ConfigFieldType.INT, isMandatory = false)
+	private Integer termWeightsRefreshIntervalSec;
+	
+	@ConfigField(fieldName = "wildcardKeyLength", fieldType = ConfigFieldType.INT, isMandatory = false)
+	private Integer wildcardKeyLength;
+	
+	@ConfigField(fieldName = "rangeBuckets", fieldType = ConfigFieldType.NAMED_LIST, isMandatory = false)
+	private NamedList<?> rangeBucketsConfig;
+	
+	@ConfigField(fieldName = "maxRangeBuckets", fieldType = ConfigFieldType.INT, isMandatory = false)
+	private Integer maxRangeBuckets;
+	
+	@ConfigField(fieldName = "geoCellSize", fieldType = ConfigFieldType.FLOAT, isMandatory = false)
+	private Float geoCellSize;
+	
+	@ConfigField(fieldName = "persistentMonitor", fieldType = ConfigFieldType.BOOLEAN, isMandatory = false)
+	private Boolean persistentMonitor;
+	
+	@ConfigField(fieldName = "relativeDates", fieldType = ConfigFieldType.BOOLEAN, isMandatory = false)
+	private Boolean relativeDates;
+	
+	@ConfigField(fieldName = "fieldFilters", fieldType = ConfigFieldType.BOOLEAN, isMandatory = false)
+	private Boolean fieldFilters;
+	
+	@ConfigField(fieldName = "keywordMatching", fieldType = ConfigFieldType.BOOLEAN, isMandatory = false)
+	private Boolean keywordMatching;
+	
+	@ConfigField(fieldName = "monitorPartitions", fieldType = ConfigFieldType.INT, isMandatory = false)
+	private Integer monitorPartitions;
+	
+	@ConfigField(fieldName = "routingField", fieldType = ConfigFieldType.STRING, isMandatory = false)
+	private String routingField;
+	
+	@ConfigField(fieldName = "parsedQueryCacheSize", fieldType = ConfigFieldType.INT, isMandatory = false)
+	private Integer parsedQueryCacheSize;
+	
+	@ConfigField(fieldName = "templates", fieldType = ConfigFieldType.NAMED_LIST, isMandatory = false)
+	private NamedList<?> templatesConfig;
+	
 	@ConfigField(fieldName = "reader", fieldType = ConfigFieldType.NAMED_LIST, isMandatory = true)
 	private NamedList<?> reader;
 	
@@ -89,6 +256,11 @@ public class SolcolatorUpdateProcessorConfiguration extends SolrPluginConfigurat
 	
 	private List<String> components;
 	private LuwakMatcherFactory matchFactory;
+	private LuwakMatchStrategy matchStrategy;
+	private MatchLane defaultMatchLane;
+	private LuwakPresearcherFactory presearcherFactory;
+	private Map<String, Double> rangeBuckets = new HashMap<>();
+	private Map<String, String> templates = new HashMap<>();
 	
 	public SolcolatorUpdateProcessorConfiguration(NamedList<?> args) throws SolrConfigurationInitializationException {
 		super(args);
@@ -98,7 +270,130 @@ public class SolcolatorUpdateProcessorConfiguration extends SolrPluginConfigurat
 	
 	public void setAndValidateConfig(NamedList<?> args) {		
 		try {
+			// defaults of optional fields (field initializers would override values were set by the base class)
+			refreshIntervalSec = Objects.requireNonNullElse(refreshIntervalSec, DEFAULT_REFRESH_INTERVAL_SEC);
+			presearcherStr = Objects.requireNonNullElse(presearcherStr, DEFAULT_PRESEARCHER);
+			presearcherPasses = Objects.requireNonNullElse(presearcherPasses, DEFAULT_PRESEARCHER_PASSES);
+			presearcherMinWeight = Objects.requireNonNullElse(presearcherMinWeight, DEFAULT_PRESEARCHER_MIN_WEIGHT);
+			indexTermWeights = Objects.requireNonNullElse(indexTermWeights, DEFAULT_INDEX_TERM_WEIGHTS);
+			termWeightsRefreshIntervalSec = Objects.requireNonNullElse(termWeightsRefreshIntervalSec, DEFAULT_TERM_WEIGHTS_REFRESH_INTERVAL_SEC);
+			wildcardKeyLength = Objects.requireNonNullElse(wildcardKeyLength, DEFAULT_WILDCARD_KEY_LENGTH);
+			maxRangeBuckets = Objects.requireNonNullElse(maxRangeBuckets, DEFAULT_MAX_RANGE_BUCKETS);
+			geoCellSize = Objects.requireNonNullElse(geoCellSize, DEFAULT_GEO_CELL_SIZE);
+			persistentMonitor = Objects.requireNonNullElse(persistentMonitor, DEFAULT_PERSISTENT_MONITOR);
+			relativeDates = Objects.requireNonNullElse(relativeDates, DEFAULT_RELATIVE_DATES);
+			fieldFilters = Objects.requireNonNullElse(fieldFilters, DEFAULT_FIELD_FILTERS);
+			keywordMatching = Objects.requireNonNullElse(keywordMatching, DEFAULT_KEYWORD_MATCHING);
+			parsedQueryCacheSize = Objects.requireNonNullElse(parsedQueryCacheSize, DEFAULT_PARSED_QUERY_CACHE_SIZE);
+			monitorPartitions = Objects.requireNonNullElse(monitorPartitions, DEFAULT_MONITOR_PARTITIONS);
+			matchStrategyStr = Objects.requireNonNullElse(matchStrategyStr, DEFAULT_MATCH_STRATEGY);
+			matchThreads = Objects.requireNonNullElse(matchThreads, DEFAULT_MATCH_THREADS);
+			matchBatchThreads = Objects.requireNonNullElse(matchBatchThreads, DEFAULT_MATCH_BATCH_THREADS);
+			matchQueueSize = Objects.requireNonNullElse(matchQueueSize, DEFAULT_MATCH_QUEUE_SIZE);
+			matchQueueTimeoutMs = Objects.requireNonNullElse(matchQueueTimeoutMs, DEFAULT_MATCH_QUEUE_TIMEOUT_MS);
+			microBatchMaxSize = Objects.requireNonNullElse(microBatchMaxSize, DEFAULT_MICRO_BATCH_MAX_SIZE);
+			microBatchMaxBytes = Objects.requireNonNullElse(microBatchMaxBytes, DEFAULT_MICRO_BATCH_MAX_BYTES);
+			microBatchMaxLatencyMs = Objects.requireNonNullElse(microBatchMaxLatencyMs, DEFAULT_MICRO_BATCH_MAX_LATENCY_MS);
+			microBatchTargetMs = Objects.requireNonNullElse(microBatchTargetMs, DEFAULT_MICRO_BATCH_TARGET_MS);
+			defaultMatchLaneStr = Objects.requireNonNullElse(defaultMatchLaneStr, DEFAULT_MATCH_LANE);
+			realtimeLaneWeight = Objects.requireNonNullElse(realtimeLaneWeight, DEFAULT_REALTIME_LANE_WEIGHT);
+			bulkLaneWeight = Objects.requireNonNullElse(bulkLaneWeight, DEFAULT_BULK_LANE_WEIGHT);
+			bulkMatchSampleRate = Objects.requireNonNullElse(bulkMatchSampleRate, DEFAULT_BULK_MATCH_SAMPLE_RATE);
+			
 			matchFactory = LuwakMatcherFactory.get(matchFactoryStr);
+			matchStrategy = LuwakMatchStrategy.get(matchStrategyStr);
+			defaultMatchLane = MatchLane.get(defaultMatchLaneStr);
+			presearcherFactory = LuwakPresearcherFactory.get(presearcherStr);
+			
+			if (refreshIntervalSec < 1) {
+				throw new Exception(String.format("refreshIntervalSec must be positive, but was %d", refreshIntervalSec));
+			}
+			
+			if (termWeightsRefreshIntervalSec < 1) {
+				throw new Exception(String.format("termWeightsRefreshIntervalSec must be positive, but was %d", termWeightsRefreshIntervalSec));
+			}
+			
+			if (presearcherPasses < 1) {
+				throw new Exception(String.format("presearcherPasses must be positive, but was %d", presearcherPasses));
+			}
+			
+			if (matchThreads < 1) {
+				throw new Exception(String.format("matchThreads must be positive, but was %d", matchThreads));
+			}
+			
+			if (matchBatchThreads < 1) {
+				throw new Exception(String.format("matchBatchThreads must be positive, but was %d", matchBatchThreads));
+			}
+			
+			if (matchQueueSize < 0) {
+				throw new Exception(String.format("matchQueueSize must not be negative, but was %d", matchQueueSize));
+			}
+			
+			if (matchQueueTimeoutMs < 0) {
+				throw new Exception(String.format("matchQueueTimeoutMs must not be negative, but was %d", matchQueueTimeoutMs));
+			}
+			
+			if (microBatchMaxSize < 1) {
+				throw new Exception(String.format("microBatchMaxSize must be positive, but was %d", microBatchMaxSize));
+			}
+			
+			if (microBatchMaxBytes < 1) {
+				throw new Exception(String.format("microBatchMaxBytes must be positive, but was %d", microBatchMaxBytes));
+			}
+			
+			if (microBatchMaxLatencyMs < 0) {
+				throw new Exception(String.format("microBatchMaxLatencyMs must not be negative, but was %d", microBatchMaxLatencyMs));
+			}
+			
+			if (microBatchTargetMs < 1) {
+				throw new Exception(String.format("microBatchTargetMs must be positive, but was %d", microBatchTargetMs));
+			}
+			
+			if (realtimeLaneWeight < 1) {
+				throw new Exception(String.format("realtimeLaneWeight must be positive, but was %d", realtimeLaneWeight));
+			}
+			
+			if (bulkLaneWeight < 1) {
+				throw new Exception(String.format("bulkLaneWeight must be positive, but was %d", bulkLaneWeight));
+			}
+			
+			if (bulkMatchSampleRate < 0 || bulkMatchSampleRate > 1) {
+				throw new Exception(String.format("bulkMatchSampleRate must be between 0 and 1, but was %s", bulkMatchSampleRate));
+			}
+			
+			if (monitorPartitions < 1) {
+				throw new Exception(String.format("monitorPartitions must be positive, but was %d", monitorPartitions));
+			}
+			
+			if (routingField != null && routingField.isBlank()) {
+				throw new Exception("routingField must not be blank");
+			}
+			
+			if (parsedQueryCacheSize < 0) {
+				throw new Exception(String.format("parsedQueryCacheSize must not be negative, but was %d", parsedQueryCacheSize));
+			}
+			
+			if (geoCellSize < 0 || geoCellSize > 90) {
+				throw new Exception(String.format("geoCellSize must be between 0 and 90 degrees, but was %s", geoCellSize));
+			}
+			
+			if (rangeBucketsConfig != null) {
+				for (Entry<String, ?> fieldToWidth : rangeBucketsConfig) {
+					double width = Double.parseDouble(fieldToWidth.getValue().toString());
+					
+					if (width <= 0) {
+						throw new Exception(String.format("Bucket width of field %s must be positive, but was %s", fieldToWidth.getKey(), width));
+					}
+					
+					rangeBuckets.put(fieldToWidth.getKey(), width);
+				}
+			}
+			
+			if (templatesConfig != null) {
+				for (Entry<String, ?> nameToTemplate : templatesConfig) {
+					templates.put(nameToTemplate.getKey(), nameToTemplate.getValue().toString());
+				}
+			}
 		} catch(Exception ex) {
 			String errMsg = "Config validation is failed";
 			log.error(errMsg, ex);
@@ -119,6 +414,10 @@ public class SolcolatorUpdateProcessorConfiguration extends SolrPluginConfigurat
 		return targetSec;
 	}
 	
+	public int getRefreshIntervalSec() {
+		return refreshIntervalSec;
+	}
+	
 	public List<String> getComponents() {
 		return components;
 	}
@@ -127,6 +426,132 @@ public class SolcolatorUpdateProcessorConfiguration extends SolrPluginConfigurat
 		return matchFactory;
 	}
 	
+	public LuwakMatchStrategy getMatchStrategy() {
+		return matchStrategy;
+	}
+	
+	public int getMatchThreads() {
+		return matchThreads;
+	}
+	
+	public int getMatchBatchThreads() {
+		return matchBatchThreads;
+	}
+	
+	public int getMatchQueueSize() {
+		return matchQueueSize;
+	}
+	
+	public long getMatchQueueTimeoutMs() {
+		return matchQueueTimeoutMs;
+	}
+	
+	public int getMicroBatchMaxSize() {
+		return microBatchMaxSize;
+	}
+	
+	public long getMicroBatchMaxBytes() {
+		return microBatchMaxBytes;
+	}
+	
+	public long getMicroBatchMaxLatencyMs() {
+		return microBatchMaxLatencyMs;
+	}
+	
+	public long getMicroBatchTargetMs() {
+		return microBatchTargetMs;
+	}
+	
+	public MatchLane getDefaultMatchLane() {
+		return defaultMatchLane;
+	}
+	
+	/**
+	 * @param lane - match lane
+	 * @return weight of the lane in the split of batch threads, matcher threads and queue
+	 */
+	public int getLaneWeight(MatchLane lane) {
+		return lane == MatchLane.BULK ? bulkLaneWeight : realtimeLaneWeight;
+	}
+	
+	public float getBulkMatchSampleRate() {
+		return bulkMatchSampleRate;
+	}
+	
+	public LuwakPresearcherFactory getPresearcherFactory() {
+		return presearcherFactory;
+	}
+	
+	public int getPresearcherPasses() {
+		return presearcherPasses;
+	}
+	
+	public float getPresearcherMinWeight() {
+		return presearcherMinWeight;
+	}
+	
+	public boolean isIndexTermWeights() {
+		return indexTermWeights;
+	}
+	
+	public int getTermWeightsRefreshIntervalSec() {
+		return termWeightsRefreshIntervalSec;
+	}
+	
+	public int getWildcardKeyLength() {
+		return wildcardKeyLength;
+	}
+	
+	public Map<String, Double> getRangeBuckets() {
+		return rangeBuckets;
+	}
+	
+	public int getMaxRangeBuckets() {
+		return maxRangeBuckets;
+	}
+	
+	public float getGeoCellSize() {
+		return geoCellSize;
+	}
+	
+	public boolean isPersistentMonitor() {
+		return persistentMonitor;
+	}
+	
+	public boolean isRelativeDates() {
+		return relativeDates;
+	}
+	
+	public boolean isFieldFilters() {
+		return fieldFilters;
+	}
+	
+	/**
+	 * @return if keyword queries are matched by the keyword matcher (highlighting needs the monitor for all queries)
+	 */
+	public boolean isKeywordMatching() {
+		return keywordMatching && matchFactory == LuwakMatcherFactory.SIMPLE;
+	}
+	
+	public int getMonitorPartitions() {
+		return monitorPartitions;
+	}
+	
+	/**
+	 * @return field queries are routed by (null - no routing)
+	 */
+	public String getRoutingField() {
+		return routingField;
+	}
+	
+	public int getParsedQueryCacheSize() {
+		return parsedQueryCacheSize;
+	}
+	
+	public Map<String, String> getTemplates() {
+		return templates;
+	}
+	
 	public NamedList<?> getReader() {
 		return this.getNamedListParameter("reader", true);
 	}
@@ -1,35 +1,54 @@
 package solcolator.solr;
 
+import org.apache.lucene.monitor.Presearcher;
+import org.apache.lucene.monitor.TermFilteredPresearcher;
+import org.apache.lucene.monitor.TermWeightor;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.core.CloseHook;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.update.processor.UpdateRequestProcessor;
 import org.apache.solr.update.processor.UpdateRequestProcessorFactory;
 import org.apache.solr.util.plugin.SolrCoreAware;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import solcolator.common.IScheduledTask;
+import solcolator.common.MatchExecutor;
+import solcolator.common.MatchLane;
+import solcolator.common.MicroBatcher;
 import solcolator.common.ScheduledTaskExecutor;
 import solcolator.io.IOFactoryWithReflection;
 import solcolator.io.api.IQueryReader;
 import solcolator.io.api.ISolcolatorResultsWriter;
 import solcolator.monitor.LuwakQueriesManager;
-
+import solcolator.presearcher.GeoQueryHandler;
+import solcolator.presearcher.IPresearcherComponent;
+import solcolator.presearcher.IndexStatsTermWeightor;
+import solcolator.presearcher.RangeBucketQueryHandler;
+import solcolator.presearcher.WildcardQueryHandler;
+import solcolator.solr.SolcolatorBatchMatcher.BatchDocument;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.Objects;
 
 public class SolcolatorUpdateProcessorFactory extends UpdateRequestProcessorFactory implements SolrCoreAware {
 	private final static Logger log = LoggerFactory.getLogger(SolcolatorUpdateProcessorFactory.class);
+	private final static int PARTITION_THREADS = Runtime.getRuntime().availableProcessors();
 
 	private SolcolatorUpdateProcessorConfiguration config;
-	private ExecutorService execService = Executors.newCachedThreadPool();
+	private final Map<MatchLane, MatchExecutor> laneToMatchExecutor = new EnumMap<>(MatchLane.class);
+	private final Map<MatchLane, MicroBatcher<BatchDocument>> laneToMicroBatcher = new EnumMap<>(MatchLane.class); // docs of concurrent updates are matched together
 	private LuwakQueriesManager manager;
 	private ScheduledTaskExecutor scheduledTaskExecutor; // scheduling queries refresh
+	private ScheduledTaskExecutor termWeightsTaskExecutor; // scheduling term weights rebuild (null - term weights aren't from the index)
+	private IndexStatsTermWeightor indexStatsTermWeightor; // term weights from index statistics
 
 	@SuppressWarnings("rawtypes")
 	@Override
@@ -45,17 +64,19 @@ public class SolcolatorUpdateProcessorFactory extends UpdateRequestProcessorFact
 			IQueryReader queryReader = factory.getQueryReader();
 			List<ISolcolatorResultsWriter> solcolatorResultsWriters = factory.getWriters();
 
-			List<String> componentsToParser = config.getComponents();
-
 			manager.init(queryReader, solcolatorResultsWriters);
+			createMatchLanes();
 			scheduledTaskExecutor = new ScheduledTaskExecutor(new IScheduledTask() {
 
 				@Override
 				public void scheduledMethod() {
-					manager.updateAllQueries();
-
+					try {
+						manager.refreshDateMathQueries();				// only queries with date math (NOW) change over time
+					} catch (Exception e) {
+						log.error("Scheduled refresh of queries is failed", e);
+					}
 				}
-			}, config.getTargetHour(), config.getTargetMin(), config.getTargetSec());
+			}, config.getTargetHour(), config.getTargetMin(), config.getTargetSec(), config.getRefreshIntervalSec());
 		} catch (Exception e) {
 			String errMessage = String.format("Creating manager is failed. %s", e.getMessage());
 			log.error(errMessage, e);
@@ -67,16 +88,151 @@ public class SolcolatorUpdateProcessorFactory extends UpdateRequestProcessorFact
 	@Override
 	public UpdateRequestProcessor getInstance(SolrQueryRequest solrQueryRequest, SolrQueryResponse solrQueryResponse,
 			UpdateRequestProcessor next) {
-		return new SolcolatorUpdateProcessor(next, execService, manager, config.getMatcherFactory());
+		MatchLane lane = getMatchLane(solrQueryRequest);
+		float sampleRate = lane == MatchLane.BULK ? config.getBulkMatchSampleRate() : 1;
+
+		return new SolcolatorUpdateProcessor(next, laneToMicroBatcher.get(lane), manager, sampleRate);
+	}
+
+	/**
+	 * Create executor and micro batcher of every match lane, batch threads, matcher threads and queue are split
+	 * between the lanes by their weights
+	 */
+	private void createMatchLanes() {
+		int totalWeight = 0;
+		for (MatchLane lane : MatchLane.values()) {
+			totalWeight += config.getLaneWeight(lane);
+		}
+
+		for (MatchLane lane : MatchLane.values()) {
+			int weight = config.getLaneWeight(lane);
+			int batchThreads = getLaneShare(config.getMatchBatchThreads(), weight, totalWeight, 1);
+			int queueSize = getLaneShare(config.getMatchQueueSize(), weight, totalWeight, 0);
+			int matcherThreads = getLaneShare(config.getMatchThreads(), weight, totalWeight, 1);
+			int partitionThreads = getLaneShare(PARTITION_THREADS, weight, totalWeight, 1);
+			MatchExecutor matchExecutor = new MatchExecutor(lane.getName(), batchThreads, queueSize, matcherThreads, partitionThreads,
+					config.getMatchQueueTimeoutMs());
+			SolcolatorBatchMatcher batchMatcher = new SolcolatorBatchMatcher(manager, config.getMatcherFactory(), config.getMatchStrategy(),
+					matcherThreads, matchExecutor, config.isFieldFilters() || config.isRelativeDates());
+			MicroBatcher<BatchDocument> microBatcher = new MicroBatcher<>(lane.getName(), matchExecutor, batchMatcher::match,
+					BatchDocument::getEstimatedBytes, config.getMicroBatchMaxSize(), config.getMicroBatchMaxBytes(),
+					config.getMicroBatchMaxLatencyMs(), config.getMicroBatchTargetMs());
+
+			laneToMatchExecutor.put(lane, matchExecutor);
+			laneToMicroBatcher.put(lane, microBatcher);
+			manager.setMatchLane(lane, matchExecutor, microBatcher);
+			log.info(String.format("Match lane %s has %d batch threads, %d matcher threads, %d partition threads and queue of %d batches",
+					lane.getName(), batchThreads, matcherThreads, partitionThreads, queueSize));
+		}
+	}
+
+	private static int getLaneShare(int total, int weight, int totalWeight, int min) {
+		return Math.max(min, total * weight / totalWeight);
+	}
+
+	/**
+	 * @param req - update request
+	 * @return lane of the solcolator.lane param of the request, otherwise the default lane of the update chain
+	 */
+	private MatchLane getMatchLane(SolrQueryRequest req) {
+		String laneName = req.getParams().get(MatchLane.LANE_PARAM);
+
+		if (laneName == null) {
+			return config.getDefaultMatchLane();
+		}
+
+		try {
+			return MatchLane.get(laneName);
+		} catch (Exception e) {
+			throw new SolrException(ErrorCode.BAD_REQUEST, e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Create presearcher components by config (wildcards, ranges, geo)
+	 * @param schema - schema of the core
+	 * @return presearcher components
+	 */
+	private List<IPresearcherComponent> createPresearcherComponents(IndexSchema schema) {
+		List<IPresearcherComponent> components = new ArrayList<>();
+		
+		if (config.getWildcardKeyLength() > 0) {
+			components.add(new WildcardQueryHandler(config.getWildcardKeyLength()));
+		}
+		
+		if (!config.getRangeBuckets().isEmpty()) {
+			components.add(new RangeBucketQueryHandler(schema, config.getRangeBuckets(), config.getMaxRangeBuckets()));
+		}
+		
+		if (config.getGeoCellSize() > 0) {
+			components.add(new GeoQueryHandler(schema, config.getGeoCellSize()));
+		}
+		
+		return components;
+	}
+
+	/**
+	 * Fingerprint of everything the persistent monitor index depends on (schema and presearcher config).
+	 * The index is rebuilt when the fingerprint changes
+	 * @param schema - schema of the core
+	 * @return fingerprint
+	 */
+	private String getMonitorIndexFingerprint(IndexSchema schema) {
+		return String.join("\n",
+				config.getPresearcherFactory().name(),
+				Integer.toString(config.getPresearcherPasses()),
+				Float.toString(config.getPresearcherMinWeight()),
+				Boolean.toString(config.isIndexTermWeights()),
+				Integer.toString(config.getWildcardKeyLength()),
+				config.getRangeBuckets().toString(),
+				Integer.toString(config.getMaxRangeBuckets()),
+				Float.toString(config.getGeoCellSize()),
+				Boolean.toString(config.isRelativeDates()),
+				Integer.toString(config.getMonitorPartitions()),
+				Objects.toString(config.getRoutingField()),
+				Integer.toString(schema.getNamedPropertyValues().toString().hashCode()));
 	}
 
 	@Override
 	public void inform(SolrCore core) {
-		manager.createMonitor(core);
+		TermWeightor termWeightor = TermFilteredPresearcher.DEFAULT_WEIGHTOR;
+		if (config.isIndexTermWeights()) {
+			indexStatsTermWeightor = new IndexStatsTermWeightor();
+			indexStatsTermWeightor.rebuild(core);
+			termWeightor = indexStatsTermWeightor;
+			termWeightsTaskExecutor = new ScheduledTaskExecutor(new IScheduledTask() {
+
+				@Override
+				public void scheduledMethod() {
+					try {
+						// all queries are registered again (to a new generation), so they are indexed by their new rarest terms
+						if (indexStatsTermWeightor.rebuild(core)) {
+							manager.updateAllQueries();
+						}
+					} catch (Exception e) {
+						log.error("Scheduled rebuild of term weights is failed", e);
+					}
+				}
+			}, config.getTargetHour(), config.getTargetMin(), config.getTargetSec(), config.getTermWeightsRefreshIntervalSec());
+		}
+		
+		List<IPresearcherComponent> presearcherComponents = createPresearcherComponents(core.getLatestSchema());
+		Presearcher presearcher = config.getPresearcherFactory().create(core.getLatestSchema(), termWeightor,
+				config.getPresearcherPasses(), config.getPresearcherMinWeight(), presearcherComponents);
+		String indexFingerprint = config.isPersistentMonitor() ? getMonitorIndexFingerprint(core.getLatestSchema()) : null;
+		manager.setKeywordMatching(config.isKeywordMatching() ? core.getLatestSchema() : null);
+		manager.setTemplates(core.getLatestSchema(), config.getTemplates());
+		manager.setParsedQueryCache(config.getParsedQueryCacheSize());
+		manager.setMonitorPartitions(config.getMonitorPartitions());
+		manager.setRoutingField(core.getLatestSchema(), config.getRoutingField());
+		manager.createMonitor(core, presearcher, presearcherComponents, config.isFieldFilters(), config.isRelativeDates(), indexFingerprint);
 		Map<String, String> reqHandlerMetadata = SolcolatorQueriesRequestHander.getRequestHandlerMetadata(core);
 		manager.loadQueriesToSolcolator(reqHandlerMetadata);
 
 		scheduledTaskExecutor.startExecutionAt();
+		if (termWeightsTaskExecutor != null) {
+			termWeightsTaskExecutor.startExecutionAt();
+		}
 
 		core.addCloseHook(new CloseHook() {
 
@@ -86,19 +242,12 @@ public class SolcolatorUpdateProcessorFactory extends UpdateRequestProcessorFact
 
 			@Override
 			public void postClose(SolrCore core) {
-				try {
-					execService.shutdown();
-					execService.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-				} catch (InterruptedException e) {
-					log.error("Stopping of executors service is interrupted");
-				} finally {
-					if (!execService.isTerminated()) {
-						log.error("Stopping of executors service is interrupted: cancel non-finished tasks");
-					}
-
-					execService.shutdownNow();
+				laneToMicroBatcher.values().forEach(MicroBatcher::close);
+				laneToMatchExecutor.values().forEach(MatchExecutor::shutdown);
+				scheduledTaskExecutor.stop();
+				if (termWeightsTaskExecutor != null) {
+					termWeightsTaskExecutor.stop();
 				}
-
 				manager.close();
 			}
 		});
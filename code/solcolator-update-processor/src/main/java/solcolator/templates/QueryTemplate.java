@@ -0,0 +1,116 @@
+package solcolator.templates;
+
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Query template is a conjunction of field:$param clauses (category:$c AND brand:$b).
+ * Every param is a single term, so a templated query is matched by lookups of the document's terms
+ * (see QueryTemplateIndex) instead of evaluating a Lucene query.
+ */
+public class QueryTemplate {
+	private static final Pattern AND = Pattern.compile("\\s+AND\\s+");
+	private static final Pattern CLAUSE = Pattern.compile("([^\\s:]+):\\$(\\w+)");
+
+	private final String name;
+	private final String template;
+	private final List<String> fields;
+	private final List<String> params;
+
+	private QueryTemplate(String name, String template, List<String> fields, List<String> params) {
+		this.name = name;
+		this.template = template;
+		this.fields = fields;
+		this.params = params;
+	}
+
+	/**
+	 * Parse query template
+	 * @param name - template name
+	 * @param template - field:$param clauses joined by AND
+	 * @param schema - schema of the core, all fields of the template must be indexed and not copyField targets
+	 * @return query template
+	 * @throws IllegalArgumentException
+	 */
+	public static QueryTemplate parse(String name, String template, IndexSchema schema) throws IllegalArgumentException {
+		List<String> fields = new ArrayList<>();
+		List<String> params = new ArrayList<>();
+
+		for (String clause : AND.split(template.trim())) {
+			Matcher matcher = CLAUSE.matcher(clause);
+
+			if (!matcher.matches()) {
+				throw new IllegalArgumentException(String.format("Clause %s of template %s isn't field:$param", clause, name));
+			}
+
+			SchemaField field = schema.getFieldOrNull(matcher.group(1));
+			if (field == null || !field.indexed()) {
+				throw new IllegalArgumentException(String.format("Field %s of template %s doesn't exist or isn't indexed", matcher.group(1), name));
+			}
+
+			// Values of copyField targets aren't in the indexed document, so the template would never match
+			if (schema.isCopyFieldTarget(field)) {
+				throw new IllegalArgumentException(String.format("Field %s of template %s is a copyField target", matcher.group(1), name));
+			}
+
+			fields.add(field.getName());
+			params.add(matcher.group(2));
+		}
+
+		return new QueryTemplate(name, template, Collections.unmodifiableList(fields), Collections.unmodifiableList(params));
+	}
+
+	/**
+	 * Render the template with param values (for printing/writing the query of a match)
+	 * @param paramToValue - values of template params
+	 * @return query string
+	 */
+	public String render(Map<String, String> paramToValue) {
+		StringBuilder query = new StringBuilder();
+
+		for (int i = 0; i < fields.size(); i++) {
+			if (i > 0) {
+				query.append(" AND ");
+			}
+
+			query.append(fields.get(i)).append(':').append(ClientUtils.escapeQueryChars(paramToValue.get(params.get(i))));
+		}
+
+		return query.toString();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getTemplate() {
+		return template;
+	}
+
+	/**
+	 * @return fields of the clauses
+	 */
+	public List<String> getFields() {
+		return fields;
+	}
+
+	/**
+	 * @return params of the clauses (without $), in the order of fields
+	 */
+	public List<String> getParams() {
+		return params;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s (%s)", name, template);
+	}
+}
@@ -0,0 +1,331 @@
+package solcolator.templates;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.IndexSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Index of templated queries. Per template, queries are kept in a tree of their param terms
+ * (a level per clause of the template), so matching a document is a few hash lookups per template
+ * whatever the number of templated queries is.
+ */
+public class QueryTemplateIndex {
+	private static final Logger log = LoggerFactory.getLogger(QueryTemplateIndex.class);
+
+	private final IndexSchema schema;
+	private final Map<String, QueryTemplate> nameToTemplate;
+	private final Map<String, Node> templateToRoot = new HashMap<>();
+	private final Map<String, TemplatedQuery> queryIdToQuery = new HashMap<>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	public QueryTemplateIndex(IndexSchema schema, Map<String, QueryTemplate> nameToTemplate) {
+		this.schema = schema;
+		this.nameToTemplate = nameToTemplate;
+	}
+
+	/**
+	 * Add/update templated query
+	 * @param queryId - query id
+	 * @param templateName - name of the template (from config)
+	 * @param paramToValue - values of the template params, every value must be a single term
+	 * @throws Exception
+	 */
+	public void register(String queryId, String templateName, Map<String, String> paramToValue) throws Exception {
+		QueryTemplate template = nameToTemplate.get(templateName);
+
+		if (template == null) {
+			throw new Exception(String.format("Template %s of query %s doesn't exist", templateName, queryId));
+		}
+
+		List<BytesRef> terms = new ArrayList<>(template.getFields().size());
+		for (int i = 0; i < template.getFields().size(); i++) {
+			String param = template.getParams().get(i);
+			String value = paramToValue == null ? null : paramToValue.get(param);
+
+			if (value == null) {
+				throw new Exception(String.format("Param %s of template %s is absent in query %s", param, templateName, queryId));
+			}
+
+			List<BytesRef> valueTerms = toTerms(template.getFields().get(i), value, true);
+			if (valueTerms.size() != 1) {
+				throw new Exception(String.format("Param %s of query %s must be a single term, but was analyzed to %d terms", param, queryId, valueTerms.size()));
+			}
+
+			terms.add(valueTerms.get(0));
+		}
+
+		lock.writeLock().lock();
+		try {
+			remove(queryId);
+			add(queryId, new TemplatedQuery(template, paramToValue, terms));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Copy of the index with all its queries (templated queries have no dynamic values, so they are copied as is)
+	 * @return new index
+	 */
+	public QueryTemplateIndex copy() {
+		QueryTemplateIndex copy = new QueryTemplateIndex(schema, nameToTemplate);
+
+		lock.readLock().lock();
+		try {
+			queryIdToQuery.forEach(copy::add);
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return copy;
+	}
+
+	/**
+	 * Delete templated query
+	 * @param queryId - query id
+	 * @return true if the query existed
+	 */
+	public boolean delete(String queryId) {
+		lock.writeLock().lock();
+		try {
+			return remove(queryId);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Match document against all templated queries
+	 * @param doc - indexed document
+	 * @return ids of matched queries
+	 */
+	public Set<String> match(SolrInputDocument doc) {
+		Set<String> matchedQueryIds = new HashSet<>();
+		Map<String, Set<BytesRef>> fieldToTerms = new HashMap<>();
+
+		lock.readLock().lock();
+		try {
+			for (Map.Entry<String, Node> templateToRootEntry : templateToRoot.entrySet()) {
+				QueryTemplate template = nameToTemplate.get(templateToRootEntry.getKey());
+				List<Set<BytesRef>> docTerms = new ArrayList<>(template.getFields().size());
+
+				for (String field : template.getFields()) {
+					Set<BytesRef> terms = fieldToTerms.computeIfAbsent(field, f -> getDocTerms(doc, f));
+
+					if (terms.isEmpty()) {
+						break;
+					}
+
+					docTerms.add(terms);
+				}
+
+				if (docTerms.size() == template.getFields().size()) {
+					collect(templateToRootEntry.getValue(), docTerms, 0, matchedQueryIds);
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return matchedQueryIds;
+	}
+
+	/**
+	 * @param queryId - query id
+	 * @return true if the query is a templated query
+	 */
+	public boolean contains(String queryId) {
+		lock.readLock().lock();
+		try {
+			return queryIdToQuery.containsKey(queryId);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param queryId - query id
+	 * @return rendered template of the query or null if the query doesn't exist
+	 */
+	public String getQueryString(String queryId) {
+		lock.readLock().lock();
+		try {
+			TemplatedQuery query = queryIdToQuery.get(queryId);
+
+			return query == null ? null : query.template.render(query.paramToValue);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return map between query id and rendered template of the query
+	 */
+	public Map<String, String> getQueryIdToQueryString() {
+		Map<String, String> queryIdToQueryString = new HashMap<>();
+
+		lock.readLock().lock();
+		try {
+			for (Map.Entry<String, TemplatedQuery> queryIdToQueryEntry : queryIdToQuery.entrySet()) {
+				TemplatedQuery query = queryIdToQueryEntry.getValue();
+				queryIdToQueryString.put(queryIdToQueryEntry.getKey(), query.template.render(query.paramToValue));
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return queryIdToQueryString;
+	}
+
+	public int getQueryCount() {
+		lock.readLock().lock();
+		try {
+			return queryIdToQuery.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void add(String queryId, TemplatedQuery query) {
+		Node node = templateToRoot.computeIfAbsent(query.template.getName(), name -> new Node());
+		for (BytesRef term : query.terms) {
+			node = node.children.computeIfAbsent(term, t -> new Node());
+		}
+
+		node.queryIds.add(queryId);
+		queryIdToQuery.put(queryId, query);
+	}
+
+	private boolean remove(String queryId) {
+		TemplatedQuery query = queryIdToQuery.remove(queryId);
+
+		if (query == null) {
+			return false;
+		}
+
+		Node root = templateToRoot.get(query.template.getName());
+		if (root != null && remove(root, query.terms, 0, queryId)) {
+			templateToRoot.remove(query.template.getName());
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return true if the node became empty and can be removed
+	 */
+	private static boolean remove(Node node, List<BytesRef> terms, int depth, String queryId) {
+		if (depth == terms.size()) {
+			node.queryIds.remove(queryId);
+		} else {
+			Node child = node.children.get(terms.get(depth));
+
+			if (child != null && remove(child, terms, depth + 1, queryId)) {
+				node.children.remove(terms.get(depth));
+			}
+		}
+
+		return node.queryIds.isEmpty() && node.children.isEmpty();
+	}
+
+	private static void collect(Node node, List<Set<BytesRef>> docTerms, int depth, Set<String> matchedQueryIds) {
+		if (depth == docTerms.size()) {
+			matchedQueryIds.addAll(node.queryIds);
+			return;
+		}
+
+		for (BytesRef term : docTerms.get(depth)) {
+			Node child = node.children.get(term);
+
+			if (child != null) {
+				collect(child, docTerms, depth + 1, matchedQueryIds);
+			}
+		}
+	}
+
+	private Set<BytesRef> getDocTerms(SolrInputDocument doc, String field) {
+		Collection<Object> values = doc.getFieldValues(field);
+		Set<BytesRef> terms = new LinkedHashSet<>();
+
+		if (values == null) {
+			return terms;
+		}
+
+		for (Object value : values) {
+			try {
+				terms.addAll(toTerms(field, value instanceof Date ? ((Date) value).toInstant().toString() : value.toString(), false));
+			} catch (Exception e) {
+				log.warn(String.format("Value %s of field %s can't be converted to terms", value, field));
+			}
+		}
+
+		return terms;
+	}
+
+	/**
+	 * Convert a value to indexed terms like the field does (analyzed fields by their analyzers)
+	 */
+	private List<BytesRef> toTerms(String field, String value, boolean isQuery) throws IOException {
+		FieldType type = schema.getField(field).getType();
+		List<BytesRef> terms = new ArrayList<>();
+
+		if (!type.isTokenized()) {
+			BytesRefBuilder term = new BytesRefBuilder();
+			type.readableToIndexed(value, term);
+			terms.add(term.toBytesRef());
+
+			return terms;
+		}
+
+		Analyzer analyzer = isQuery ? type.getQueryAnalyzer() : type.getIndexAnalyzer();
+		try (TokenStream tokenStream = analyzer.tokenStream(field, value)) {
+			TermToBytesRefAttribute termAtt = tokenStream.addAttribute(TermToBytesRefAttribute.class);
+			tokenStream.reset();
+
+			while (tokenStream.incrementToken()) {
+				terms.add(BytesRef.deepCopyOf(termAtt.getBytesRef()));
+			}
+
+			tokenStream.end();
+		}
+
+		return terms;
+	}
+
+	private static class Node {
+		private final Map<BytesRef, Node> children = new HashMap<>();
+		private final Set<String> queryIds = new HashSet<>();
+	}
+
+	private static class TemplatedQuery {
+		private final QueryTemplate template;
+		private final Map<String, String> paramToValue;
+		private final List<BytesRef> terms;
+
+		private TemplatedQuery(QueryTemplate template, Map<String, String> paramToValue, List<BytesRef> terms) {
+			this.template = template;
+			this.paramToValue = paramToValue;
+			this.terms = terms;
+		}
+	}
+}
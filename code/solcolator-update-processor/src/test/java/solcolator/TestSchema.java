@@ -0,0 +1,159 @@
+package solcolator;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.DelegatingAnalyzerWrapper;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.util.Version;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.schema.BoolField;
+import org.apache.solr.schema.DatePointField;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.IntPointField;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.StrField;
+import org.apache.solr.schema.TextField;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Schema of unit tests with fields of given types, without a core and config files
+ */
+public class TestSchema extends IndexSchema {
+  private final Map<String, SchemaField> nameToField = new HashMap<>();
+  private final Set<String> copyFieldTargets = new HashSet<>();
+
+  public TestSchema() {
+    super(Version.LATEST, null, new Properties());
+  }
+
+  /**
+   * Add indexed string field
+   */
+  public TestSchema str(String name) {
+    return field(name, new IndexedStrField());
+  }
+
+  /**
+   * Add indexed text field analyzed by the standard analyzer (lower cased words)
+   */
+  public TestSchema text(String name) {
+    return field(name, new IndexedTextField());
+  }
+
+  /**
+   * Add indexed date point field
+   */
+  public TestSchema date(String name) {
+    return field(name, new IndexedDateField());
+  }
+
+  /**
+   * Add indexed int point field
+   */
+  public TestSchema integer(String name) {
+    return field(name, new IndexedIntField());
+  }
+
+  /**
+   * Add indexed boolean field
+   */
+  public TestSchema bool(String name) {
+    return field(name, new IndexedBoolField());
+  }
+
+  public TestSchema field(String name, FieldType type) {
+    nameToField.put(name, new SchemaField(name, type));
+
+    return this;
+  }
+
+  /**
+   * Set default value of an added field
+   */
+  public TestSchema defaultValue(String name, String value) {
+    SchemaField field = getField(name);
+    nameToField.put(name, new SchemaField(name, field.getType(), field.getProperties(), value));
+
+    return this;
+  }
+
+  /**
+   * Mark field as destination of a copyField
+   */
+  public TestSchema copyFieldTarget(String name) {
+    copyFieldTargets.add(name);
+
+    return this;
+  }
+
+  @Override
+  public SchemaField getFieldOrNull(String fieldName) {
+    return nameToField.get(fieldName);
+  }
+
+  @Override
+  public SchemaField getField(String fieldName) {
+    SchemaField field = getFieldOrNull(fieldName);
+    if (field == null) {
+      throw new SolrException(ErrorCode.BAD_REQUEST, "undefined field " + fieldName);
+    }
+
+    return field;
+  }
+
+  /**
+   * Analyzer of documents by the index analyzers of their fields' types
+   */
+  @Override
+  public Analyzer getIndexAnalyzer() {
+    return new DelegatingAnalyzerWrapper(Analyzer.PER_FIELD_REUSE_STRATEGY) {
+      @Override
+      protected Analyzer getWrappedAnalyzer(String fieldName) {
+        return getField(fieldName).getType().getIndexAnalyzer();
+      }
+    };
+  }
+
+  @Override
+  public boolean isCopyFieldTarget(SchemaField field) {
+    return copyFieldTargets.contains(field.getName());
+  }
+
+  private static class IndexedStrField extends StrField {
+    IndexedStrField() {
+      properties |= INDEXED;
+    }
+  }
+
+  private static class IndexedDateField extends DatePointField {
+    IndexedDateField() {
+      properties |= INDEXED;
+    }
+  }
+
+  private static class IndexedIntField extends IntPointField {
+    IndexedIntField() {
+      properties |= INDEXED;
+    }
+  }
+
+  private static class IndexedBoolField extends BoolField {
+    IndexedBoolField() {
+      properties |= INDEXED;
+    }
+  }
+
+  private static class IndexedTextField extends TextField {
+    IndexedTextField() {
+      properties |= INDEXED | TOKENIZED;
+      setIndexAnalyzer(new StandardAnalyzer());
+      setQueryAnalyzer(new StandardAnalyzer());
+    }
+  }
+}
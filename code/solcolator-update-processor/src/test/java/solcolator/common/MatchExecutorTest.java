@@ -0,0 +1,38 @@
+package solcolator.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MatchExecutorTest {
+
+  @Test
+  void shouldRejectBatchWhenQueueIsFull() throws InterruptedException {
+    var executor = new MatchExecutor("test", 1, 1, 1, 1, 10);
+    var release = new CountDownLatch(1);
+    var matched = new CountDownLatch(2);
+    Runnable batch = () -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      matched.countDown();
+    };
+
+    executor.submitBatch(batch);
+    executor.submitBatch(batch);
+    assertThrows(RejectedExecutionException.class, () -> executor.submitBatch(batch));
+
+    release.countDown();
+    matched.await();
+    executor.shutdown();
+
+    assertEquals(1L, executor.toNamedList().get("rejectedBatches"));
+    assertEquals(1L, executor.toNamedList().get("blockedBatches"));
+  }
+}
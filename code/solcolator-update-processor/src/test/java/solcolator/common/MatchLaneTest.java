@@ -0,0 +1,16 @@
+package solcolator.common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MatchLaneTest {
+
+  @Test
+  void shouldGetLaneByCaseInsensitiveName() throws Exception {
+    assertEquals(MatchLane.BULK, MatchLane.get("Bulk"));
+    assertEquals("realtime", MatchLane.get("REALTIME").getName());
+    assertThrows(Exception.class, () -> MatchLane.get("reindex"));
+  }
+}
@@ -0,0 +1,77 @@
+package solcolator.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MicroBatcherTest {
+
+  @Test
+  void shouldMatchDocsOfSeveralUpdatesAsOneBatch() throws InterruptedException {
+    var executor = new MatchExecutor("test", 1, 1, 1, 1, 1000);
+    List<List<String>> batches = new CopyOnWriteArrayList<>();
+    var batcher = new MicroBatcher<String>("test", executor, batches::add, doc -> 1, 3, Long.MAX_VALUE, 60_000, 60_000);
+
+    batcher.add(List.of("a"));
+    batcher.add(List.of("b", "c"));
+    batcher.add(List.of("d"));
+    batcher.close();
+    executor.shutdown();
+
+    assertEquals(List.of(List.of("a", "b", "c"), List.of("d")), batches);
+  }
+
+  @Test
+  void shouldMatchEveryUpdateWithoutLatency() throws InterruptedException {
+    var executor = new MatchExecutor("test", 1, 1, 1, 1, 1000);
+    List<List<String>> batches = new CopyOnWriteArrayList<>();
+    var batcher = new MicroBatcher<String>("test", executor, batches::add, doc -> 1, 100, Long.MAX_VALUE, 0, 60_000);
+
+    batcher.add(List.of("a"));
+    batcher.add(List.of("b"));
+    batcher.close();
+    executor.shutdown();
+
+    assertEquals(List.of(List.of("a"), List.of("b")), batches);
+  }
+
+  @Test
+  void shouldSplitUpdateToBatchesByBytes() throws InterruptedException {
+    var executor = new MatchExecutor("test", 2, 2, 1, 1, 1000);
+    List<List<String>> batches = new CopyOnWriteArrayList<>();
+    var batcher = new MicroBatcher<String>("test", executor, batches::add, String::length, 100, 4, 60_000, 60_000);
+
+    batcher.add(List.of("aa", "bb", "cccc", "d"));
+    batcher.close();
+    executor.shutdown();
+
+    assertEquals(3, batches.size());
+    assertEquals(List.of("aa", "bb", "cccc", "d"), batches.stream().flatMap(List::stream).sorted().collect(Collectors.toList()));
+  }
+
+  @Test
+  void shouldShrinkBatchSizeWhenMatchIsSlow() throws InterruptedException {
+    var executor = new MatchExecutor("test", 1, 1, 1, 1, 1000);
+    var batcher = new MicroBatcher<Integer>("test", executor, batch -> sleep(20), doc -> 1, 8, Long.MAX_VALUE, 0, 1);
+    var docs = new ArrayList<Integer>(List.of(1, 2, 3, 4, 5, 6, 7, 8));
+
+    batcher.add(docs);
+    batcher.close();
+    executor.shutdown();
+
+    assertEquals(6, batcher.getBatchSizeLimit());
+  }
+
+  private static void sleep(long ms) {
+    try {
+      Thread.sleep(ms);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package solcolator.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScheduledTaskExecutorTest {
+
+  @Test
+  void shouldRepeatTaskAfterItThrows() throws InterruptedException {
+    var runs = new AtomicInteger();
+    var repeated = new CountDownLatch(3);
+    var executor = new ScheduledTaskExecutor(() -> {
+      repeated.countDown();
+
+      if (runs.incrementAndGet() == 1) {
+        throw new IllegalStateException("The first run fails");
+      }
+    }, 0, 0, 0, 1);
+
+    executor.startExecution(0, 10, TimeUnit.MILLISECONDS);
+
+    assertTrue(repeated.await(10, TimeUnit.SECONDS));
+    executor.stop();
+  }
+
+  @Test
+  void shouldDelayToTargetTimeOfToday() {
+    var now = LocalDateTime.of(2021, 3, 1, 10, 0, 0);
+
+    assertEquals(TimeUnit.HOURS.toSeconds(2), ScheduledTaskExecutor.computeNextDelay(now, 12, 0, 0));
+    assertEquals(0, ScheduledTaskExecutor.computeNextDelay(now, 10, 0, 0));
+  }
+
+  @Test
+  void shouldDelayToTargetTimeOfTomorrowWhenItPassed() {
+    var now = LocalDateTime.of(2021, 3, 1, 10, 0, 0);
+
+    assertEquals(TimeUnit.HOURS.toSeconds(23) + 30 * 60, ScheduledTaskExecutor.computeNextDelay(now, 9, 30, 0));
+  }
+}
@@ -0,0 +1,82 @@
+package solcolator.dates;
+
+import org.apache.lucene.document.LongPoint;
+import org.junit.jupiter.api.Test;
+import solcolator.TestSchema;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RelativeDateRangeQueryTest {
+  private static final Date NOW = Date.from(Instant.parse("2021-03-10T12:34:56Z"));
+
+  private final TestSchema schema = new TestSchema().date("created").integer("price").str("status");
+
+  @Test
+  void shouldParseRangesRelativeToNow() {
+    assertNotNull(RelativeDateRangeQuery.parse("created:[NOW-1DAY TO NOW]", schema));
+    assertNotNull(RelativeDateRangeQuery.parse(" created:{* TO NOW/DAY+1DAY} ", schema));
+    assertNotNull(RelativeDateRangeQuery.parse("created:[2021-01-01T00:00:00Z TO NOW]", schema));
+  }
+
+  @Test
+  void shouldNotParseRangesOfNonDateFields() {
+    assertNull(RelativeDateRangeQuery.parse("price:[NOW TO *]", schema));
+    assertNull(RelativeDateRangeQuery.parse("status:[NOW TO *]", schema));
+    assertNull(RelativeDateRangeQuery.parse("unknown:[NOW TO *]", schema));
+  }
+
+  @Test
+  void shouldNotParseAbsoluteOrInvalidRanges() {
+    assertNull(RelativeDateRangeQuery.parse("created:[2021-01-01T00:00:00Z TO *]", schema));
+    assertNull(RelativeDateRangeQuery.parse("created:[NOW-1FORTNIGHT TO NOW]", schema));
+    assertNull(RelativeDateRangeQuery.parse("created:NOW", schema));
+    assertNull(RelativeDateRangeQuery.parse("created:[NOW-1DAY TO NOW] AND status:active", schema));
+  }
+
+  @Test
+  void shouldResolveDateMathByGivenNow() {
+    RelativeDateRangeQuery query = RelativeDateRangeQuery.parse("created:[NOW-1DAY TO NOW]", schema);
+
+    assertEquals(LongPoint.newRangeQuery("created", millis("2021-03-09T12:34:56Z"), millis("2021-03-10T12:34:56Z")), query.resolve(NOW));
+  }
+
+  @Test
+  void shouldResolveExclusiveBounds() {
+    RelativeDateRangeQuery query = RelativeDateRangeQuery.parse("created:{NOW/DAY TO NOW/DAY+1DAY}", schema);
+
+    assertEquals(LongPoint.newRangeQuery("created", millis("2021-03-10T00:00:00Z") + 1, millis("2021-03-11T00:00:00Z") - 1), query.resolve(NOW));
+  }
+
+  @Test
+  void shouldResolveOpenBounds() {
+    assertEquals(LongPoint.newRangeQuery("created", millis("2021-03-10T00:00:00Z"), Long.MAX_VALUE),
+        RelativeDateRangeQuery.parse("created:[NOW/DAY TO *]", schema).resolve(NOW));
+    assertEquals(LongPoint.newRangeQuery("created", Long.MIN_VALUE, millis("2021-03-10T12:34:56Z")),
+        RelativeDateRangeQuery.parse("created:[* TO NOW]", schema).resolve(NOW));
+  }
+
+  @Test
+  void shouldRoundInTimeZoneOfQuery() {
+    var query = RelativeDateRangeQuery.parse("created:[NOW/DAY TO *]", schema, TimeZone.getTimeZone("America/Los_Angeles"));
+
+    assertEquals(LongPoint.newRangeQuery("created", millis("2021-03-10T08:00:00Z"), Long.MAX_VALUE), query.resolve(NOW));
+    assertNotEquals(RelativeDateRangeQuery.parse("created:[NOW/DAY TO *]", schema), query);
+  }
+
+  @Test
+  void shouldBeEqualByUnresolvedBounds() {
+    assertEquals(RelativeDateRangeQuery.parse("created:[NOW-1DAY TO NOW]", schema), RelativeDateRangeQuery.parse("created:[NOW-1DAY  TO NOW]", schema));
+    assertEquals("created:{NOW/DAY TO *]", RelativeDateRangeQuery.parse("created:{NOW/DAY TO *]", schema).toString());
+  }
+
+  private static long millis(String date) {
+    return Instant.parse(date).toEpochMilli();
+  }
+}
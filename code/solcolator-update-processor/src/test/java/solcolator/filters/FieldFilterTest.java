@@ -0,0 +1,126 @@
+package solcolator.filters;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.Test;
+import solcolator.TestSchema;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FieldFilterTest {
+  private final TestSchema schema = new TestSchema()
+      .str("status").str("text").copyFieldTarget("text").text("title")
+      .integer("price").date("created").bool("in_stock")
+      .str("country").defaultValue("country", "US");
+
+  @Test
+  void shouldParseSimpleClauses() {
+    assertNotNull(FieldFilter.parse("status:active", schema));
+    assertNotNull(FieldFilter.parse(" status:\"on hold\" ", schema));
+    assertNotNull(FieldFilter.parse("price:[100 TO 200}", schema));
+    assertNotNull(FieldFilter.parse("created:[* TO NOW/DAY]", schema));
+  }
+
+  @Test
+  void shouldNotParseComplexClauses() {
+    assertNull(FieldFilter.parse("status:activ*", schema));
+    assertNull(FieldFilter.parse("status:active OR status:new", schema));
+    assertNull(FieldFilter.parse("-status:active", schema));
+    assertNull(FieldFilter.parse("{!terms f=status}active,new", schema));
+  }
+
+  @Test
+  void shouldNotParseUnsupportedFields() {
+    assertNull(FieldFilter.parse("unknown:active", schema));
+    assertNull(FieldFilter.parse("text:active", schema));			// copyField target
+    assertNull(FieldFilter.parse("title:shoes", schema));			// analyzed
+    assertNull(FieldFilter.parse("status:[a TO c]", schema));		// string range
+    assertNull(FieldFilter.parse("price:cheap", schema));			// not a number
+  }
+
+  @Test
+  void shouldCompareTerms() {
+    FieldFilter filter = FieldFilter.parse("status:active", schema);
+
+    assertTrue(filter.accept(doc("status", "active")));
+    assertFalse(filter.accept(doc("status", "Active")));
+    assertTrue(filter.accept(doc("status", "sold", "active")));
+  }
+
+  @Test
+  void shouldCompareNumericTermsByValue() {
+    FieldFilter filter = FieldFilter.parse("price:100", schema);
+
+    assertTrue(filter.accept(doc("price", 100L)));
+    assertTrue(filter.accept(doc("price", "100")));
+    assertFalse(filter.accept(doc("price", 101)));
+  }
+
+  @Test
+  void shouldNormalizeBooleansLikeBoolField() {
+    FieldFilter filter = FieldFilter.parse("in_stock:true", schema);
+
+    assertTrue(filter.accept(doc("in_stock", true)));
+    assertTrue(filter.accept(doc("in_stock", "T")));
+    assertTrue(filter.accept(doc("in_stock", "1")));
+    assertFalse(filter.accept(doc("in_stock", "false")));
+    assertTrue(FieldFilter.parse("in_stock:T", schema).accept(doc("in_stock", "true")));
+  }
+
+  @Test
+  void shouldCompareRangeBounds() {
+    FieldFilter filter = FieldFilter.parse("price:[100 TO 200}", schema);
+
+    assertTrue(filter.accept(doc("price", 100)));
+    assertTrue(filter.accept(doc("price", 199.5)));
+    assertFalse(filter.accept(doc("price", 200)));
+    assertFalse(filter.accept(doc("price", 99)));
+  }
+
+  @Test
+  void shouldCompareOpenRanges() {
+    FieldFilter filter = FieldFilter.parse("price:{100 TO *]", schema);
+
+    assertFalse(filter.accept(doc("price", 100)));
+    assertTrue(filter.accept(doc("price", Integer.MAX_VALUE)));
+  }
+
+  @Test
+  void shouldCompareDateRanges() {
+    FieldFilter filter = FieldFilter.parse("created:[2021-01-01T00:00:00Z TO 2021-02-01T00:00:00Z]", schema);
+
+    assertTrue(filter.accept(doc("created", "2021-01-15T10:00:00Z")));
+    assertTrue(filter.accept(doc("created", new Date(1610000000000L))));			// 2021-01-07
+    assertFalse(filter.accept(doc("created", "2021-02-01T00:00:01Z")));
+  }
+
+  @Test
+  void shouldAcceptMissingFieldWithDefaultValue() {
+    assertTrue(FieldFilter.parse("country:US", schema).accept(new SolrInputDocument()));
+    assertFalse(FieldFilter.parse("status:active", schema).accept(new SolrInputDocument()));
+  }
+
+  @Test
+  void shouldAcceptValuesCantBeCompared() {
+    assertTrue(FieldFilter.parse("price:[100 TO 200]", schema).accept(doc("price", "cheap")));
+  }
+
+  @Test
+  void shouldBeEqualByClauseAndBounds() {
+    assertTrue(FieldFilter.parse("status:active", schema).equals(FieldFilter.parse(" status:active", schema)));
+    assertFalse(FieldFilter.parse("status:active", schema).equals(FieldFilter.parse("status:sold", schema)));
+  }
+
+  static SolrInputDocument doc(String field, Object... values) {
+    SolrInputDocument doc = new SolrInputDocument();
+    for (Object value : values) {
+      doc.addField(field, value);
+    }
+
+    return doc;
+  }
+}
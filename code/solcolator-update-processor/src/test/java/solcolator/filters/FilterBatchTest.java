@@ -0,0 +1,62 @@
+package solcolator.filters;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.junit.jupiter.api.Test;
+import solcolator.TestSchema;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static solcolator.filters.TestBatch.bits;
+
+class FilterBatchTest {
+  private final TestSchema schema = new TestSchema().str("status").str("brand");
+
+  @Test
+  void shouldAcceptDocsPassedFiltersAndHaveRequiredFields() {
+    FilterBatch batch = new TestBatch().add("active", "nike").add("sold", "nike").add("active", null).batch;
+    FieldFilter active = FieldFilter.parse("status:active", schema);
+
+    assertEquals(bits(0, 2), batch.accept(List.of(active), Set.of()));
+    assertEquals(bits(0), batch.accept(List.of(active), Set.of("brand")));
+    assertEquals(bits(0, 1), batch.accept(List.of(), Set.of("brand")));
+    assertEquals(bits(0, 1, 2), batch.accept(List.of(), Set.of()));
+    assertEquals(4, batch.getRejectedCount());
+  }
+
+  @Test
+  void shouldRestrictToAcceptedOrdinals() throws IOException {
+    TestBatch testBatch = new TestBatch().add("active", "nike").add("sold", "nike").add("active", "adidas");
+
+    try (DirectoryReader reader = testBatch.reader()) {
+      IndexSearcher searcher = new IndexSearcher(reader);
+
+      assertEquals(2, searcher.count(testBatch.batch.getOrdinalsQuery(bits(0, 2))));
+      assertEquals(0, searcher.count(testBatch.batch.getOrdinalsQuery(new BitSet())));
+    }
+  }
+
+  @Test
+  void shouldFindOpenBatchOfReader() throws IOException {
+    TestBatch testBatch = new TestBatch().add("active", "nike");
+
+    try (DirectoryReader reader = testBatch.reader()) {
+      assertNull(FilterBatch.get(reader));
+
+      testBatch.batch.open();
+      assertSame(testBatch.batch, FilterBatch.get(reader));
+      assertNotNull(FilterBatch.getNow(reader));
+
+      testBatch.batch.close();
+      assertNull(FilterBatch.get(reader));
+      assertNull(FilterBatch.getNow(reader));
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package solcolator.filters;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.junit.jupiter.api.Test;
+import solcolator.TestSchema;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrefilteredQueryTest {
+  private final TestSchema schema = new TestSchema().str("status").str("brand");
+  private final Query query = new MatchAllDocsQuery();
+
+  @Test
+  void shouldRunQueryAsIsWithoutBatch() throws IOException {
+    TestBatch testBatch = new TestBatch().add("sold", "nike");
+
+    try (DirectoryReader reader = testBatch.reader()) {
+      assertSame(query, prefiltered("status:active").rewrite(reader));
+    }
+  }
+
+  @Test
+  void shouldNotRunQueryIfNoDocPassedFilters() throws IOException {
+    assertTrue(rewrite(new TestBatch().add("sold", "nike"), prefiltered("status:active")) instanceof MatchNoDocsQuery);
+    assertTrue(rewrite(new TestBatch().add("active", null), new PrefilteredQuery(query, List.of(), Set.of("brand"))) instanceof MatchNoDocsQuery);
+  }
+
+  @Test
+  void shouldRunQueryAsIsIfAllDocsPassedFilters() throws IOException {
+    assertSame(query, rewrite(new TestBatch().add("active", "nike").add("active", "adidas"), prefiltered("status:active")));
+  }
+
+  @Test
+  void shouldRestrictQueryToDocsPassedFilters() throws IOException {
+    TestBatch testBatch = new TestBatch().add("active", "nike").add("sold", "nike").add("active", "adidas");
+    testBatch.batch.open();
+
+    try (DirectoryReader reader = testBatch.reader()) {
+      Query rewritten = prefiltered("status:active", "brand:nike").rewrite(reader);
+
+      assertTrue(rewritten instanceof BooleanQuery);
+      assertEquals(1, new IndexSearcher(reader).count(rewritten));
+    } finally {
+      testBatch.batch.close();
+    }
+  }
+
+  private PrefilteredQuery prefiltered(String... fqs) {
+    List<FieldFilter> filters = new ArrayList<>();
+    for (String fq : fqs) {
+      filters.add(FieldFilter.parse(fq, schema));
+    }
+
+    return new PrefilteredQuery(query, filters, Set.of());
+  }
+
+  private static Query rewrite(TestBatch testBatch, PrefilteredQuery prefilteredQuery) throws IOException {
+    testBatch.batch.open();
+
+    try (DirectoryReader reader = testBatch.reader()) {
+      return prefilteredQuery.rewrite(reader);
+    } finally {
+      testBatch.batch.close();
+    }
+  }
+}
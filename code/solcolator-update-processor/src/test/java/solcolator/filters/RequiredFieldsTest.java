@@ -0,0 +1,58 @@
+package solcolator.filters;
+
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RequiredFieldsTest {
+
+  @Test
+  void shouldRequireFieldsOfRequiredClauses() {
+    var query = new BooleanQuery.Builder()
+        .add(term("title", "shoes"), Occur.MUST)
+        .add(IntPoint.newRangeQuery("price", 100, 200), Occur.FILTER)
+        .add(term("brand", "nike"), Occur.SHOULD)
+        .add(term("status", "sold"), Occur.MUST_NOT)
+        .build();
+
+    assertEquals(Set.of("title", "price"), RequiredFields.of(query));
+  }
+
+  @Test
+  void shouldRequireFieldsCommonToAllAlternatives() {
+    var disjunction = new BooleanQuery.Builder()
+        .add(term("title", "shoes"), Occur.SHOULD)
+        .add(new WildcardQuery(new Term("title", "boot*")), Occur.SHOULD)
+        .build();
+    var dismax = new DisjunctionMaxQuery(List.of(term("title", "shoes"), term("description", "shoes")), 0);
+
+    assertEquals(Set.of("title"), RequiredFields.of(disjunction));
+    assertEquals(Set.of(), RequiredFields.of(dismax));
+  }
+
+  @Test
+  void shouldNotRequireFieldsOfUnknownQuery() {
+    var query = new BooleanQuery.Builder()
+        .add(new MatchAllDocsQuery(), Occur.MUST)
+        .add(term("status", "sold"), Occur.MUST_NOT)
+        .build();
+
+    assertEquals(Set.of(), RequiredFields.of(query));
+  }
+
+  private static Query term(String field, String value) {
+    return new TermQuery(new Term(field, value));
+  }
+}
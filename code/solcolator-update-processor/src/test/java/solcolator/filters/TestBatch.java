@@ -0,0 +1,67 @@
+package solcolator.filters;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.solr.common.SolrInputDocument;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Filter batch of documents with status and brand fields, and the index of their monitor documents
+ */
+class TestBatch {
+  final FilterBatch batch = new FilterBatch();
+  private final List<Document> luceneDocs = new ArrayList<>();
+
+  /**
+   * Add document, its monitor document has the raw values as string fields
+   * @param brand - brand of the document (null - the document has no brand)
+   */
+  TestBatch add(String status, String brand) {
+    SolrInputDocument solrDoc = new SolrInputDocument();
+    Document luceneDoc = new Document();
+    solrDoc.addField("status", status);
+    luceneDoc.add(new StringField("status", status, Store.NO));
+
+    if (brand != null) {
+      solrDoc.addField("brand", brand);
+      luceneDoc.add(new StringField("brand", brand, Store.NO));
+    }
+
+    batch.add(solrDoc, luceneDoc);
+    luceneDocs.add(luceneDoc);
+
+    return this;
+  }
+
+  /**
+   * @return reader of the monitor documents, in the order they were added
+   */
+  DirectoryReader reader() throws IOException {
+    ByteBuffersDirectory directory = new ByteBuffersDirectory();
+
+    try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+      writer.addDocuments(luceneDocs);
+    }
+
+    return DirectoryReader.open(directory);
+  }
+
+  static BitSet bits(int... ordinals) {
+    BitSet bits = new BitSet();
+    for (int ordinal : ordinals) {
+      bits.set(ordinal);
+    }
+
+    return bits;
+  }
+}
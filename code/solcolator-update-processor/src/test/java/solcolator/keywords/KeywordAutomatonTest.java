@@ -0,0 +1,61 @@
+package solcolator.keywords;
+
+import org.apache.lucene.util.BytesRef;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class KeywordAutomatonTest {
+
+  @Test
+  void shouldMatchTermsAndPhrasesInOnePass() {
+    var automaton = createAutomaton(Map.of(
+      List.of("red", "shoes"), "1",
+      List.of("shoes"), "2",
+      List.of("blue"), "3",
+      List.of("red", "dress"), "4"));
+
+    assertEquals(Set.of("1", "2"), match(automaton, List.of(List.of("nice"), List.of("red"), List.of("shoes"))));
+  }
+
+  @Test
+  void shouldMatchPhraseAfterPartialMatch() {
+    var automaton = createAutomaton(Map.of(List.of("a", "a", "b"), "1"));
+
+    assertEquals(Set.of("1"), match(automaton, List.of(List.of("a"), List.of("a"), List.of("a"), List.of("b"))));
+  }
+
+  @Test
+  void shouldMatchPhraseThroughSynonyms() {
+    var automaton = createAutomaton(Map.of(List.of("running", "sneakers"), "1"));
+
+    assertEquals(Set.of("1"), match(automaton, List.of(List.of("running"), List.of("shoes", "sneakers"))));
+  }
+
+  private static KeywordAutomaton createAutomaton(Map<List<String>, String> patternToQueryId) {
+    Map<List<BytesRef>, Set<String>> patterns = new HashMap<>();
+    patternToQueryId.forEach((pattern, queryId) ->
+      patterns.put(toBytesRefs(pattern), Set.of(queryId)));
+    return new KeywordAutomaton(patterns);
+  }
+
+  private static Set<String> match(KeywordAutomaton automaton, List<List<String>> positions) {
+    Set<String> matchedQueryIds = new HashSet<>();
+    var states = automaton.start();
+    for (List<String> position : positions) {
+      states = automaton.step(states, toBytesRefs(position), matchedQueryIds);
+    }
+    return matchedQueryIds;
+  }
+
+  private static List<BytesRef> toBytesRefs(List<String> terms) {
+    return terms.stream().map(BytesRef::new).collect(Collectors.toList());
+  }
+}
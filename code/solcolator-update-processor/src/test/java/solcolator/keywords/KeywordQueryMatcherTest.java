@@ -0,0 +1,86 @@
+package solcolator.keywords;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.Test;
+import solcolator.TestSchema;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeywordQueryMatcherTest {
+  private final TestSchema schema = new TestSchema().text("title").str("brand").text("text").copyFieldTarget("text").date("created");
+  private final KeywordQueryMatcher matcher = new KeywordQueryMatcher(schema);
+
+  @Test
+  void shouldRegisterTermQueriesOnTextAndStringFields() {
+    assertTrue(matcher.register("1", new TermQuery(new Term("title", "shoes"))));
+    assertTrue(matcher.register("2", new TermQuery(new Term("brand", "Nike"))));
+  }
+
+  @Test
+  void shouldLeaveQueriesOnCopyFieldTargetsToMonitor() {
+    assertFalse(matcher.register("1", new TermQuery(new Term("text", "shoes"))));
+    assertFalse(matcher.contains("1"));
+  }
+
+  @Test
+  void shouldLeaveQueriesOnNonStringFieldsToMonitor() {
+    assertFalse(matcher.register("1", new TermQuery(new Term("created", "2021-01-01T00:00:00Z"))));
+    assertFalse(matcher.register("2", new TermQuery(new Term("unknown", "shoes"))));
+  }
+
+  @Test
+  void shouldMatchByBuiltAutomatons() {
+    matcher.register("1", new PhraseQuery("title", "red", "shoes"));
+    matcher.register("2", new TermQuery(new Term("brand", "Nike")));
+    matcher.buildAutomatons();
+
+    assertEquals(Set.of("1", "2"), matcher.match(doc("Red Shoes for running", "Nike")));
+    assertEquals(Set.of(), matcher.match(doc("shoes red", "nike")));
+  }
+
+  @Test
+  void shouldPublishChangesByNextBuild() {
+    matcher.register("1", new TermQuery(new Term("title", "shoes")));
+    matcher.buildAutomatons();
+    matcher.delete("1");
+    matcher.register("2", new TermQuery(new Term("title", "red")));
+    matcher.buildAutomatons();
+
+    assertEquals(Set.of("2"), matcher.match(doc("red shoes", "Nike")));
+  }
+
+  @Test
+  void shouldMatchRegisteredQueriesBeforeBuild() {
+    matcher.register("1", new TermQuery(new Term("title", "shoes")));
+    matcher.register("2", new PhraseQuery("title", "red", "shoes"));
+
+    assertEquals(Set.of("1", "2"), matcher.match(doc("red shoes", "Nike")));
+  }
+
+  @Test
+  void shouldMatchChangesOverBuiltAutomatons() {
+    matcher.register("1", new TermQuery(new Term("title", "shoes")));
+    matcher.register("2", new TermQuery(new Term("title", "boots")));
+    matcher.buildAutomatons();
+    matcher.register("1", new TermQuery(new Term("title", "red")));
+    matcher.delete("2");
+
+    assertEquals(Set.of("1"), matcher.match(doc("red boots", "Nike")));
+    assertEquals(Set.of(), matcher.match(doc("blue shoes", "Nike")));
+  }
+
+  private static SolrInputDocument doc(String title, String brand) {
+    SolrInputDocument doc = new SolrInputDocument();
+    doc.addField("title", title);
+    doc.addField("brand", brand);
+
+    return doc;
+  }
+}
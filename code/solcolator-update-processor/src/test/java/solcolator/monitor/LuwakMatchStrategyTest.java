@@ -0,0 +1,22 @@
+package solcolator.monitor;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LuwakMatchStrategyTest {
+
+  @Test
+  void shouldResolveAdaptiveStrategyByBatchAndCandidates() {
+    assertEquals(LuwakMatchStrategy.SERIAL, LuwakMatchStrategy.ADAPTIVE.resolve(3, 50));
+    assertEquals(LuwakMatchStrategy.PARALLEL, LuwakMatchStrategy.ADAPTIVE.resolve(100, 1000));
+    assertEquals(LuwakMatchStrategy.PARTITION, LuwakMatchStrategy.ADAPTIVE.resolve(10, 50_000));
+  }
+
+  @Test
+  void shouldKeepConfiguredStrategy() throws Exception {
+    assertEquals(LuwakMatchStrategy.PARALLEL, LuwakMatchStrategy.get("parallel").resolve(1, 1));
+    assertThrows(Exception.class, () -> LuwakMatchStrategy.get("sequential"));
+  }
+}
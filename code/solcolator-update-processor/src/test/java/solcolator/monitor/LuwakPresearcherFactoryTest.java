@@ -0,0 +1,34 @@
+package solcolator.monitor;
+
+import org.apache.lucene.monitor.MultipassTermFilteredPresearcher;
+import org.apache.lucene.monitor.Presearcher;
+import org.apache.lucene.monitor.TermFilteredPresearcher;
+import org.junit.jupiter.api.Test;
+import solcolator.TestSchema;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LuwakPresearcherFactoryTest {
+  private final TestSchema schema = new TestSchema().str("brand");
+
+  @Test
+  void shouldGetPresearcherByCaseInsensitiveName() throws Exception {
+    assertEquals(LuwakPresearcherFactory.MULTIPASS, LuwakPresearcherFactory.get("MultiPass"));
+    assertThrows(Exception.class, () -> LuwakPresearcherFactory.get("bloom"));
+  }
+
+  @Test
+  void shouldCreatePresearcherOfKind() {
+    assertSame(Presearcher.NO_FILTERING, create(LuwakPresearcherFactory.NONE));
+    assertEquals(TermFilteredPresearcher.class, create(LuwakPresearcherFactory.TERM).getClass());
+    assertEquals(MultipassTermFilteredPresearcher.class, create(LuwakPresearcherFactory.MULTIPASS).getClass());
+  }
+
+  private Presearcher create(LuwakPresearcherFactory factory) {
+    return factory.create(schema, TermFilteredPresearcher.DEFAULT_WEIGHTOR, 2, 0, List.of());
+  }
+}
@@ -0,0 +1,114 @@
+package solcolator.monitor;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.monitor.Monitor;
+import org.apache.lucene.monitor.MonitorQuery;
+import org.apache.lucene.monitor.QueryMatch;
+import org.apache.lucene.monitor.TermFilteredPresearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.Test;
+import solcolator.templates.QueryTemplateIndex;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LuwakQueriesGenerationTest {
+
+  @Test
+  void shouldKeepRetiredGenerationForBatchesInFlight() throws IOException {
+    var generation = createGeneration();
+    generation.getMonitor().register(List.of(new MonitorQuery("1", new TermQuery(new Term("title", "shoes")))));
+
+    assertTrue(generation.acquire());
+    generation.retire();
+
+    assertFalse(generation.isClosed());
+    assertEquals(1, match(generation).getMatches(0).size());   // the batch in flight is still matched by its generation
+
+    generation.release();
+    assertTrue(generation.isClosed());
+  }
+
+  @Test
+  void shouldCloseRetiredGenerationAfterLastRelease() throws IOException {
+    var generation = createGeneration();
+    assertTrue(generation.acquire());
+    assertTrue(generation.acquire());
+    generation.retire();
+
+    generation.release();
+    assertFalse(generation.isClosed());
+
+    generation.release();
+    assertTrue(generation.isClosed());
+    assertFalse(generation.acquire());
+  }
+
+  @Test
+  void shouldCloseRetiredGenerationWithoutBatches() throws Exception {
+    var generation = createGeneration();
+    generation.retire();
+
+    generation.awaitClosed();
+    assertTrue(generation.isClosed());
+  }
+
+  @Test
+  void shouldNotCloseReleasedGenerationBeforeRetire() throws IOException {
+    var generation = createGeneration();
+    assertTrue(generation.acquire());
+    generation.release();
+
+    assertFalse(generation.isClosed());
+    assertTrue(generation.acquire());
+
+    generation.release();
+    generation.retire();
+  }
+
+  @Test
+  void shouldRefreshOnlyDateMathQueriesWithoutDuplicates() throws IOException {
+    var generation = createGeneration();
+    generation.putQuery(query("1", "q=created:[NOW-1DAY TO NOW]"), true);
+    generation.putQuery(query("2", "q=title:shoes"), false);
+    generation.putQuery(query("3", "q=created:[NOW-1DAY TO NOW]"), true);
+    generation.getQueryGroups().add("1", "q=created:[NOW-1DAY TO NOW]");
+    generation.getQueryGroups().add("3", "q=created:[NOW-1DAY TO NOW]");    // matched by its representative 1
+
+    assertEquals(Set.of("1"), generation.getDateMathQueries(generation.getQueries().getSnapshot()).keySet());
+
+    generation.retire();
+  }
+
+  private static LuwakQueriesGeneration createGeneration() throws IOException {
+    var monitor = new RoutedMonitor(null, Map.of(RoutedMonitor.GLOBAL_ROUTE, createPartitions()), route -> createPartitions());
+
+    return new LuwakQueriesGeneration(1, monitor, null, null, null, new QueryTemplateIndex(null, Map.of()));
+  }
+
+  private static PartitionedMonitor createPartitions() throws IOException {
+    return new PartitionedMonitor(List.of(new Monitor(new StandardAnalyzer(), new TermFilteredPresearcher())), null);
+  }
+
+  private static LuwakQuery query(String id, String queryString) {
+    return new LuwakQuery(id, null, new TermQuery(new Term("title", id)), queryString, Map.of());
+  }
+
+  private static PartitionedMatches<QueryMatch> match(LuwakQueriesGeneration generation) throws IOException {
+    var doc = new Document();
+    doc.add(new TextField("title", "red shoes", Field.Store.NO));
+
+    return generation.getMonitor().match(new Document[] { doc }, new SolrInputDocument[] { new SolrInputDocument() }, QueryMatch.SIMPLE_MATCHER, null);
+  }
+}
@@ -0,0 +1,40 @@
+package solcolator.monitor;
+
+import org.junit.jupiter.api.Test;
+import solcolator.TestSchema;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LuwakQueryParserTest {
+  private final TestSchema schema = new TestSchema().str("brand").date("created");
+  private final LuwakQueryParser relativeDatesParser = new LuwakQueryParser(null, Collections.emptyList(), false, true, null);
+  private final LuwakQueryParser parser = new LuwakQueryParser(null, Collections.emptyList(), false, false, null);
+
+  @Test
+  void shouldNotRefreshQueriesWithoutNow() {
+    assertFalse(parser.hasFrozenDateMath(LuwakQueryParser.toSolrParams("q=brand:nike&fq=created:[2021-01-01T00:00:00Z TO *]", Map.of()), schema));
+  }
+
+  @Test
+  void shouldRefreshQueriesWithNow() {
+    assertTrue(parser.hasFrozenDateMath(LuwakQueryParser.toSolrParams("q=brand:nike&fq=created:[NOW-1DAY TO NOW]", Map.of()), schema));
+    assertTrue(parser.hasFrozenDateMath(LuwakQueryParser.toSolrParams("q=brand:nike", Map.of("fq", "created:[NOW/DAY TO *]")), schema));
+  }
+
+  @Test
+  void shouldNotRefreshRelativeDateRanges() {
+    assertFalse(relativeDatesParser.hasFrozenDateMath(LuwakQueryParser.toSolrParams("q=brand:nike&fq=created:[NOW-1DAY TO NOW]", Map.of()), schema));
+  }
+
+  @Test
+  void shouldRefreshNowOutsideOfRelativeDateRanges() {
+    assertTrue(relativeDatesParser.hasFrozenDateMath(
+        LuwakQueryParser.toSolrParams("q=brand:nike&fq={!frange l=0}ms(NOW,created)", Map.of()), schema));
+    assertTrue(relativeDatesParser.hasFrozenDateMath(
+        LuwakQueryParser.toSolrParams("q=brand:nike&bf=recip(ms(NOW,created),3.16e-11,1,1)", Map.of()), schema));
+  }
+}
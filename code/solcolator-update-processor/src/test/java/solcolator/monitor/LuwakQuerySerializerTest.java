@@ -0,0 +1,98 @@
+package solcolator.monitor;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.monitor.TermFilteredPresearcher;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.search.SyntaxError;
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LuwakQuerySerializerTest {
+  private final LuwakQuerySerializer serializer = new LuwakQuerySerializer(new TestQueryParser(), new TermFilteredPresearcher());
+
+  @Test
+  void shouldRestoreQueryWithNameAndMetadata() {
+    var query = new LuwakQuery("1", "shoes", new TermQuery(new Term("title", "shoes")), "q=title:shoes", Map.of("qt", "/select"));
+    var restored = (LuwakQuery) serializer.deserialize(serializer.serialize(query));
+
+    assertEquals("1", restored.getId());
+    assertEquals("shoes", restored.getQueryName());
+    assertEquals("q=title:shoes", restored.getQueryString());
+    assertEquals(Map.of("qt", "/select"), restored.getMetadata());
+    assertEquals(new TermQuery(new Term("title", "shoes")), restored.getQuery());
+    assertEquals(Set.of("1"), serializer.getRestoredQueries().keySet());
+    assertEquals(Set.of("1"), serializer.getStoredQueryIds());
+  }
+
+  @Test
+  void shouldRestoreQueryWithoutName() {
+    var query = new LuwakQuery("1", null, new TermQuery(new Term("title", "shoes")), "q=title:shoes", Map.of());
+    var restored = (LuwakQuery) serializer.deserialize(serializer.serialize(query));
+
+    assertNull(restored.getQueryName());
+  }
+
+  @Test
+  void shouldRejectUnsupportedVersion() {
+    var query = new LuwakQuery("1", "shoes", new TermQuery(new Term("title", "shoes")), "q=title:shoes", Map.of());
+    var bytes = serializer.serialize(query);
+    bytes.bytes[bytes.offset] = 2;
+
+    assertThrows(UncheckedIOException.class, () -> serializer.deserialize(bytes));
+    assertTrue(serializer.getStoredQueryIds().isEmpty());
+  }
+
+  @Test
+  void shouldReturnPlaceholderOfQueryCantBeParsed() {
+    var query = new LuwakQuery("1", "shoes", new TermQuery(new Term("title", "shoes")), "q=title:(shoes", Map.of("qt", "/select"));
+    var restored = (LuwakQuery) serializer.deserialize(serializer.serialize(query));
+
+    assertTrue(restored.getQuery() instanceof MatchNoDocsQuery);
+    assertEquals("1", restored.getId());
+    assertEquals("shoes", restored.getQueryName());
+    assertEquals("q=title:(shoes", restored.getQueryString());
+    assertEquals(Map.of("qt", "/select"), restored.getMetadata());
+    assertTrue(serializer.getRestoredQueries().isEmpty());
+    assertEquals(Set.of("1"), serializer.getStoredQueryIds());    // so it's registered again from the reader
+  }
+
+  @Test
+  void shouldNotCollectQueriesAfterRestoring() {
+    serializer.finishRestoring();
+    var query = new LuwakQuery("1", "shoes", new TermQuery(new Term("title", "shoes")), "q=title:shoes", Map.of());
+    serializer.deserialize(serializer.serialize(query));
+
+    assertTrue(serializer.getRestoredQueries().isEmpty());
+    assertTrue(serializer.getStoredQueryIds().isEmpty());
+  }
+
+  /**
+   * Parser of "q=field:term" query strings without a core
+   */
+  private static class TestQueryParser extends LuwakQueryParser {
+    TestQueryParser() {
+      super(null);
+    }
+
+    @Override
+    public Query parse(String queryString, Map<String, String> queryMetadata) throws SyntaxError {
+      String[] fieldAndTerm = queryString.substring("q=".length()).split(":");
+
+      if (fieldAndTerm[1].startsWith("(")) {
+        throw new SyntaxError("Unbalanced parenthesis in " + queryString);
+      }
+
+      return new TermQuery(new Term(fieldAndTerm[0], fieldAndTerm[1]));
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package solcolator.monitor;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ParsedQueryCacheTest {
+
+  @Test
+  void shouldNormalizeParamsOrderAndDefaults() {
+    var cache = new ParsedQueryCache(10);
+    var query = new TermQuery(new Term("title", "shoes"));
+    cache.put(LuwakQueryParser.toSolrParams("q=title:shoes&defType=edismax", Map.of()), null, query);
+
+    assertSame(query, cache.get(LuwakQueryParser.toSolrParams("defType=edismax&q=title:shoes", Map.of()), null));
+    assertSame(query, cache.get(LuwakQueryParser.toSolrParams("q=title:shoes", Map.of("defType", "edismax")), null));
+    assertNull(cache.get(LuwakQueryParser.toSolrParams("q=title:shoes", Map.of()), null));
+    assertEquals(2L, cache.toNamedList().get("hits"));
+    assertEquals(1L, cache.toNamedList().get("misses"));
+  }
+
+  @Test
+  void shouldEvictLeastRecentlyUsed() {
+    var cache = new ParsedQueryCache(2);
+    cache.put(params("a"), null, new TermQuery(new Term("f", "a")));
+    cache.put(params("b"), null, new TermQuery(new Term("f", "b")));
+    cache.get(params("a"), null);
+    cache.put(params("c"), null, new TermQuery(new Term("f", "c")));
+
+    assertEquals(2, cache.size());
+    assertNull(cache.get(params("b"), null));
+    assertEquals(new TermQuery(new Term("f", "a")), cache.get(params("a"), null));
+    assertEquals(1L, cache.toNamedList().get("evictions"));
+  }
+
+  private static SolrParams params(String value) {
+    return new ModifiableSolrParams().add("q", "f:" + value);
+  }
+}
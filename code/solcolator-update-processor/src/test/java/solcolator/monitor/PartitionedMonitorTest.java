@@ -0,0 +1,119 @@
+package solcolator.monitor;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.monitor.MatcherFactory;
+import org.apache.lucene.monitor.Monitor;
+import org.apache.lucene.monitor.MonitorQuery;
+import org.apache.lucene.monitor.QueryMatch;
+import org.apache.lucene.monitor.TermFilteredPresearcher;
+import org.apache.lucene.search.TermQuery;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PartitionedMonitorTest {
+  private static final ExecutorService partitionExecutor = Executors.newFixedThreadPool(2);
+  private static final ExecutorService matchExecutor = Executors.newFixedThreadPool(2, task -> new Thread(task, "test-lane-partition"));
+
+  @AfterAll
+  static void shutdownExecutor() {
+    partitionExecutor.shutdownNow();
+    matchExecutor.shutdownNow();
+  }
+
+  @Test
+  void shouldMergeMatchesOfAllPartitions() throws IOException {
+    try (var monitor = createMonitor(4)) {
+      List<MonitorQuery> queries = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        queries.add(new MonitorQuery(String.valueOf(i), new TermQuery(new Term("title", i % 2 == 0 ? "shoes" : "dress"))));
+      }
+      monitor.register(queries);
+      monitor.deleteById(List.of("0", "1"));
+
+      var matches = monitor.match(new Document[] { doc("red shoes") }, QueryMatch.SIMPLE_MATCHER, matchExecutor);
+
+      assertEquals(98, monitor.getQueryCount());
+      assertEquals(49, matches.getMatches(0).size());
+      assertEquals(Set.of("2", "98"), matches.getMatches(0).stream().map(QueryMatch::getQueryId)
+          .filter(id -> id.equals("2") || id.equals("98")).collect(Collectors.toSet()));
+    }
+  }
+
+  @Test
+  void shouldMatchPartitionsByExecutorOfBatch() throws IOException {
+    try (var monitor = createMonitor(4)) {
+      List<MonitorQuery> queries = new ArrayList<>();
+      for (int i = 0; i < 20; i++) {
+        queries.add(new MonitorQuery(String.valueOf(i), new TermQuery(new Term("title", "shoes"))));
+      }
+      monitor.register(queries);
+
+      Set<String> matchThreads = ConcurrentHashMap.newKeySet();
+      MatcherFactory<QueryMatch> factory = searcher -> {
+        matchThreads.add(Thread.currentThread().getName());
+        return QueryMatch.SIMPLE_MATCHER.createMatcher(searcher);
+      };
+      var matches = monitor.match(new Document[] { doc("red shoes") }, factory, matchExecutor);
+
+      assertEquals(20, matches.getMatches(0).size());
+      assertEquals(Set.of("test-lane-partition"), matchThreads);
+    }
+  }
+
+  @Test
+  void shouldMatchPartitionsByCallingThreadWithoutExecutor() throws IOException {
+    try (var monitor = createMonitor(4)) {
+      monitor.register(List.of(new MonitorQuery("1", new TermQuery(new Term("title", "shoes")))));
+
+      Set<String> matchThreads = ConcurrentHashMap.newKeySet();
+      MatcherFactory<QueryMatch> factory = searcher -> {
+        matchThreads.add(Thread.currentThread().getName());
+        return QueryMatch.SIMPLE_MATCHER.createMatcher(searcher);
+      };
+      var matches = monitor.match(new Document[] { doc("red shoes") }, factory, null);
+
+      assertEquals(1, matches.getMatches(0).size());
+      assertEquals(Set.of(Thread.currentThread().getName()), matchThreads);
+    }
+  }
+
+  @Test
+  void shouldAssignQueryToStablePartition() throws IOException {
+    try (var first = createMonitor(8); var second = createMonitor(8)) {
+      for (int i = 0; i < 100; i++) {
+        assertEquals(first.getPartition("query" + i), second.getPartition("query" + i));
+      }
+    }
+  }
+
+  private static PartitionedMonitor createMonitor(int partitionCount) throws IOException {
+    List<Monitor> partitions = new ArrayList<>();
+    for (int i = 0; i < partitionCount; i++) {
+      partitions.add(new Monitor(new StandardAnalyzer(), new TermFilteredPresearcher()));
+    }
+
+    return new PartitionedMonitor(partitions, partitionExecutor);
+  }
+
+  private static Document doc(String title) {
+    var doc = new Document();
+    doc.add(new TextField("title", title, Field.Store.NO));
+
+    return doc;
+  }
+}
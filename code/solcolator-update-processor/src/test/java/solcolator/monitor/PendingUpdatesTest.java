@@ -0,0 +1,70 @@
+package solcolator.monitor;
+
+import org.junit.jupiter.api.Test;
+import solcolator.io.api.SolcolatorQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PendingUpdatesTest {
+  private final List<String> replayed = new ArrayList<>();
+  private final PendingUpdates.IReplayer replayer = new PendingUpdates.IReplayer() {
+    @Override
+    public void update(SolcolatorQuery query) throws Exception {
+      if (query.getQuery().isEmpty()) {
+        throw new Exception("Empty query " + query.getQueryId());
+      }
+
+      replayed.add("update " + query.getQueryId() + " " + query.getQuery());
+    }
+
+    @Override
+    public void delete(String queryId) {
+      replayed.add("delete " + queryId);
+    }
+  };
+
+  @Test
+  void shouldReplayUpdatesInOrder() {
+    var updates = new PendingUpdates();
+    updates.update(query("1", "q=shoes"));
+    updates.delete("2");
+    updates.update(query("3", "q=boots"));
+
+    updates.replay(replayer);
+
+    assertEquals(List.of("update 1 q=shoes", "delete 2", "update 3 q=boots"), replayed);
+  }
+
+  @Test
+  void shouldReplayLastUpdateOfQuery() {
+    var updates = new PendingUpdates();
+    updates.update(query("1", "q=shoes"));
+    updates.update(query("2", "q=boots"));
+    updates.update(query("1", "q=red shoes"));
+    updates.delete("2");
+
+    updates.replay(replayer);
+
+    assertEquals(2, updates.size());
+    assertEquals(List.of("update 1 q=red shoes", "delete 2"), replayed);
+  }
+
+  @Test
+  void shouldContinueReplayAfterFailedUpdate() {
+    var updates = new PendingUpdates();
+    updates.update(query("1", ""));
+    updates.update(query("2", "q=boots"));
+
+    updates.replay(replayer);
+
+    assertEquals(List.of("update 2 q=boots"), replayed);
+  }
+
+  private static SolcolatorQuery query(String id, String query) {
+    return new SolcolatorQuery(id, null, query, Map.of());
+  }
+}
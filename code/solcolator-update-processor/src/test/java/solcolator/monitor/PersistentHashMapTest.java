@@ -0,0 +1,90 @@
+package solcolator.monitor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PersistentHashMapTest {
+
+  @Test
+  void shouldKeepPreviousVersionsUnchanged() {
+    PersistentHashMap<String, Integer> first = PersistentHashMap.<String, Integer>empty().plus("a", 1);
+    var second = first.plus("a", 2).plus("b", 3);
+
+    assertEquals(1, first.size());
+    assertEquals(1, first.get("a"));
+    assertFalse(first.containsKey("b"));
+    assertEquals(2, second.size());
+    assertEquals(2, second.get("a"));
+    assertEquals(3, second.get("b"));
+  }
+
+  @Test
+  void shouldKeepKeysWithNullValues() {
+    var map = PersistentHashMap.<String, Integer>empty().plus("a", null);
+
+    assertTrue(map.containsKey("a"));
+    assertNull(map.get("a"));
+    assertEquals(1, map.size());
+  }
+
+  @Test
+  void shouldKeepKeysWithEqualHashes() {
+    var map = PersistentHashMap.<CollidingKey, String>empty()
+        .plus(new CollidingKey("a"), "1")
+        .plus(new CollidingKey("b"), "2")
+        .plus(new CollidingKey("a"), "3");
+
+    assertEquals(2, map.size());
+    assertEquals("3", map.get(new CollidingKey("a")));
+    assertEquals("2", map.get(new CollidingKey("b")));
+    assertFalse(map.containsKey(new CollidingKey("c")));
+  }
+
+  @Test
+  void shouldMatchHashMapOnManyKeys() {
+    var random = new Random(42);
+    var expected = new HashMap<String, Integer>();
+    var map = PersistentHashMap.<String, Integer>empty();
+
+    for (int i = 0; i < 100_000; i++) {
+      String key = "q" + random.nextInt(50_000);
+      expected.put(key, i);
+      map = map.plus(key, i);
+    }
+
+    var actual = new HashMap<String, Integer>();
+    map.forEach(actual::put);
+
+    assertEquals(expected.size(), map.size());
+    assertEquals(expected, actual);
+    for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+      assertEquals(entry.getValue(), map.get(entry.getKey()));
+    }
+  }
+
+  private static class CollidingKey {
+    private final String name;
+
+    CollidingKey(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof CollidingKey && name.equals(((CollidingKey) other).name);
+    }
+
+    @Override
+    public int hashCode() {
+      return 7;
+    }
+  }
+}
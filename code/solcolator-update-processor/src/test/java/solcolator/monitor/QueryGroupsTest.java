@@ -0,0 +1,50 @@
+package solcolator.monitor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryGroupsTest {
+
+  @Test
+  void shouldFanOutToAllQueriesOfGroup() {
+    var groups = new QueryGroups();
+
+    assertEquals("1", groups.add("1", "q=a:b"));
+    assertEquals("1", groups.add("2", "q=a:b"));
+    assertEquals("3", groups.add("3", "q=c:d"));
+    groups.publish();
+
+    assertEquals(List.of("1", "2"), groups.getMembers("1"));
+    assertEquals(List.of("3"), groups.getMembers("3"));
+    assertTrue(groups.isDuplicate("2"));
+    assertFalse(groups.isDuplicate("1"));
+    assertEquals(1, groups.getDuplicateCount());
+  }
+
+  @Test
+  void shouldPromoteNextQueryWhenRepresentativeIsRemoved() {
+    var groups = new QueryGroups();
+    groups.add("1", "q=a:b");
+    groups.add("2", "q=a:b");
+    groups.add("3", "q=a:b");
+
+    assertNull(groups.remove("3"));
+    assertEquals("2", groups.remove("1"));
+    groups.publish();
+
+    assertEquals(List.of("2"), groups.getMembers("2"));
+    assertEquals(List.of("1"), groups.getMembers("1"));
+    assertEquals("2", groups.add("4", "q=a:b"));
+    assertEquals("4", groups.remove("2"));
+    groups.publish();
+
+    assertFalse(groups.contains("2"));
+    assertEquals(0, groups.getDuplicateCount());
+  }
+}
@@ -0,0 +1,85 @@
+package solcolator.monitor;
+
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryRegistryTest {
+
+  @Test
+  void shouldKeepSnapshotUnchangedByLaterUpdates() {
+    var registry = new QueryRegistry();
+    registry.putAll(List.of(query("1", "a:b"), query("2", "c:d")), q -> false);
+    var snapshot = registry.getSnapshot();
+
+    registry.putAll(List.of(query("1", "a:x")), q -> false);
+    registry.remove("2");
+
+    assertEquals("a:b", snapshot.get("1").getQueryString());
+    assertTrue(snapshot.contains("2"));
+    assertEquals(2, snapshot.size());
+    assertEquals("a:x", registry.getSnapshot().get("1").getQueryString());
+    assertFalse(registry.getSnapshot().contains("2"));
+    assertEquals(1, registry.getSnapshot().size());
+  }
+
+  @Test
+  void shouldMergeDeltaIntoBase() {
+    var registry = new QueryRegistry();
+    List<LuwakQuery> queries = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      queries.add(query(String.valueOf(i), "a:" + i));
+    }
+
+    for (LuwakQuery query : queries) {
+      registry.putAll(List.of(query), q -> false);
+    }
+    for (int i = 0; i < 5000; i += 2) {
+      registry.remove(String.valueOf(i));
+    }
+
+    var snapshot = registry.getSnapshot();
+    assertEquals(2500, snapshot.size());
+    assertEquals(2500, snapshot.toMap().size());
+    assertNull(snapshot.get("0"));
+    assertEquals("a:1", snapshot.get("1").getQueryString());
+    assertEquals(7500, snapshot.getVersion());
+  }
+
+  @Test
+  void shouldKeepVersionWhenQueryIsUnchanged() {
+    var registry = new QueryRegistry();
+    registry.putAll(List.of(query("1", "a:b")), q -> false);
+    var snapshot = registry.getSnapshot();
+
+    registry.putAll(List.of(query("1", "a:b")), q -> false);
+
+    assertSame(snapshot, registry.getSnapshot());
+  }
+
+  @Test
+  void shouldTrackDateMathQueries() {
+    var registry = new QueryRegistry();
+    registry.putAll(List.of(query("1", "d:[NOW TO *]"), query("2", "a:b")), q -> q.getQueryString().contains("NOW"));
+
+    assertEquals(Set.of("1"), registry.getDateMathQueryIds());
+
+    registry.putAll(List.of(query("1", "a:c")), q -> false);
+
+    assertTrue(registry.getDateMathQueryIds().isEmpty());
+  }
+
+  private static LuwakQuery query(String id, String queryString) {
+    return new LuwakQuery(id, "name" + id, new MatchAllDocsQuery(), queryString, Map.of());
+  }
+}
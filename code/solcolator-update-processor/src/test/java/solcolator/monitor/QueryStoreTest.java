@@ -0,0 +1,36 @@
+package solcolator.monitor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class QueryStoreTest {
+
+  @Test
+  void shouldReadAddedRecords() {
+    var store = new QueryStore();
+    int first = store.add("name", "q=title:\"caf\u00e9\"", Map.of("defType", "edismax"));
+    int second = store.add(null, "q=a:" + "b".repeat(5 * 1024 * 1024), Map.of());
+
+    var query = store.get("1", first);
+    assertEquals("name", query.getQueryName());
+    assertEquals("q=title:\"caf\u00e9\"", query.getQueryString());
+    assertEquals(Map.of("defType", "edismax"), query.getMetadata());
+    assertNull(store.get("2", second).getQueryName());
+    assertEquals(5 * 1024 * 1024 + 4, store.get("2", second).getQueryString().length());
+  }
+
+  @Test
+  void shouldInternMetadata() {
+    var store = new QueryStore();
+    int first = store.add("a", "q=a:b", Map.of("defType", "edismax"));
+    int second = store.add("b", "q=c:d", Map.of("defType", "edismax"));
+
+    assertSame(store.get("1", first).getMetadata(), store.get("2", second).getMetadata());
+    assertEquals(1, store.getMetadataCount());
+  }
+}
@@ -0,0 +1,120 @@
+package solcolator.monitor;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.monitor.Monitor;
+import org.apache.lucene.monitor.MonitorQuery;
+import org.apache.lucene.monitor.QueryMatch;
+import org.apache.lucene.monitor.TermFilteredPresearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.Test;
+import solcolator.TestSchema;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RoutedMonitorTest {
+
+  @Test
+  void shouldMatchDocumentByMonitorOfItsRouteAndGlobalMonitor() throws IOException {
+    try (var monitor = createMonitor("marketplace")) {
+      monitor.register(List.of(
+          query("us", "us"),
+          query("uk", "uk"),
+          query("global", null)));
+
+      var matches = match(monitor, "uk", "us", "de");
+
+      assertEquals(3, monitor.getRouteCount());
+      assertEquals(Set.of("uk", "global"), matchedIds(matches, 0));
+      assertEquals(Set.of("us", "global"), matchedIds(matches, 1));
+      assertEquals(Set.of("global"), matchedIds(matches, 2));
+    }
+  }
+
+  @Test
+  void shouldMoveQueryToItsNewRoute() throws IOException {
+    try (var monitor = createMonitor("marketplace")) {
+      monitor.register(List.of(query("1", "us")));
+      monitor.register(List.of(query("1", "uk")));
+
+      var matches = match(monitor, "us", "uk");
+
+      assertEquals(1, monitor.getQueryCount());
+      assertEquals(Set.of(), matchedIds(matches, 0));
+      assertEquals(Set.of("1"), matchedIds(matches, 1));
+
+      monitor.deleteById(List.of("1"));
+      assertEquals(0, monitor.getQueryCount());
+    }
+  }
+
+  @Test
+  void shouldRouteByNormalizedValues() throws IOException {
+    var schema = new TestSchema().integer("marketplace");
+
+    try (var monitor = new RoutedMonitor(RoutingField.create(schema, "marketplace"), Map.of(RoutedMonitor.GLOBAL_ROUTE, createPartitions()),
+        route -> createPartitions())) {
+      monitor.register(List.of(query("1", "01")));
+
+      var matches = monitor.match(new Document[] { doc() }, new SolrInputDocument[] { solrDoc(1) }, QueryMatch.SIMPLE_MATCHER, null);
+
+      assertEquals(Set.of("1"), matchedIds(matches, 0));
+    }
+  }
+
+  private static RoutedMonitor createMonitor(String routingField) throws IOException {
+    var routing = RoutingField.create(new TestSchema().str(routingField), routingField);
+
+    return new RoutedMonitor(routing, Map.of(RoutedMonitor.GLOBAL_ROUTE, createPartitions()), route -> createPartitions());
+  }
+
+  private static PartitionedMatches<QueryMatch> match(RoutedMonitor monitor, String... marketplaces) throws IOException {
+    var docs = new Document[marketplaces.length];
+    var solrDocs = new SolrInputDocument[marketplaces.length];
+    for (int i = 0; i < marketplaces.length; i++) {
+      docs[i] = doc();
+      solrDocs[i] = solrDoc(marketplaces[i]);
+    }
+
+    return monitor.match(docs, solrDocs, QueryMatch.SIMPLE_MATCHER, null);
+  }
+
+  private static PartitionedMonitor createPartitions() throws IOException {
+    return new PartitionedMonitor(List.of(new Monitor(new StandardAnalyzer(), new TermFilteredPresearcher())), null);
+  }
+
+  private static MonitorQuery query(String id, String marketplace) {
+    var metadata = marketplace == null ? Map.<String, String>of() : Map.of("marketplace", marketplace);
+
+    return new MonitorQuery(id, new TermQuery(new Term("title", "shoes")), null, metadata);
+  }
+
+  private static Document doc() {
+    var doc = new Document();
+    doc.add(new TextField("title", "red shoes", Field.Store.NO));
+
+    return doc;
+  }
+
+  private static SolrInputDocument solrDoc(Object marketplace) {
+    var doc = new SolrInputDocument();
+    doc.addField("title", "red shoes");
+    doc.addField("marketplace", marketplace);
+
+    return doc;
+  }
+
+  private static Set<String> matchedIds(PartitionedMatches<QueryMatch> matches, int docId) {
+    return matches.getMatches(docId).stream().map(QueryMatch::getQueryId).collect(Collectors.toSet());
+  }
+}
@@ -0,0 +1,50 @@
+package solcolator.monitor;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.Test;
+import solcolator.TestSchema;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RoutingFieldTest {
+  private final TestSchema schema = new TestSchema()
+      .str("marketplace").integer("shop").bool("prime").date("day")
+      .text("title").str("text").copyFieldTarget("text");
+
+  @Test
+  void shouldRejectUnsupportedFields() {
+    assertThrows(IllegalArgumentException.class, () -> RoutingField.create(schema, "unknown"));
+    assertThrows(IllegalArgumentException.class, () -> RoutingField.create(schema, "title"));
+    assertThrows(IllegalArgumentException.class, () -> RoutingField.create(schema, "text"));
+  }
+
+  @Test
+  void shouldNormalizeValuesByFieldType() {
+    assertEquals("us", RoutingField.create(schema, "marketplace").normalize("us"));
+    assertEquals("7", RoutingField.create(schema, "shop").normalize("07"));
+    assertEquals("7", RoutingField.create(schema, "shop").normalize(7L));
+    assertEquals("true", RoutingField.create(schema, "prime").normalize("T"));
+    assertEquals("2021-03-10T00:00:00Z", RoutingField.create(schema, "day").normalize(new Date(1615334400000L)));
+    assertEquals("2021-03-10T00:00:00Z", RoutingField.create(schema, "day").normalize("2021-03-10T00:00:00Z"));
+  }
+
+  @Test
+  void shouldKeepValuesCantBeParsedAndEmptyValuesGlobal() {
+    assertEquals("seven", RoutingField.create(schema, "shop").normalize("seven"));
+    assertEquals(RoutedMonitor.GLOBAL_ROUTE, RoutingField.create(schema, "prime").normalize(""));
+    assertEquals(RoutedMonitor.GLOBAL_ROUTE, RoutingField.create(schema, "shop").normalize(null));
+  }
+
+  @Test
+  void shouldTakeRoutesOfAllDocValues() {
+    var doc = new SolrInputDocument();
+    doc.addField("shop", List.of(1, "01", 2, ""));
+
+    assertEquals(Set.of("1", "2"), RoutingField.create(schema, "shop").getRoutes(doc));
+  }
+}
@@ -0,0 +1,105 @@
+package solcolator.presearcher;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.schema.LatLonPointSpatialField;
+import org.apache.solr.schema.LatLonType;
+import org.apache.solr.util.DistanceUnits;
+import org.junit.jupiter.api.Test;
+import solcolator.TestSchema;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GeoQueryHandlerTest {
+  private static final TestSchema SCHEMA = new TestSchema()
+      .field("location", new LatLonType())
+      .field("location_mi", new MilesField());
+
+  @Test
+  void shouldCoverCenterCellBySmallCircle() {
+    var handler = new GeoQueryHandler(SCHEMA, 1);
+
+    assertEquals("130:106", handler.getCell(40.5, -73.5));
+    assertEquals(Set.of("130:106"), handler.getCircleCells(40.5, -73.5, 10));
+  }
+
+  @Test
+  void shouldIncludeCenterCellInCellsOfQuery() {
+    var handler = new GeoQueryHandler(SCHEMA, 0.5);
+    var cells = handler.getCircleCells(48.8566, 2.3522, 50);
+
+    assertTrue(cells.size() > 1);
+    assertTrue(cells.contains(handler.getCell(48.8566, 2.3522)));
+  }
+
+  @Test
+  void shouldNotFilterCirclesCrossingPole() {
+    assertTrue(new GeoQueryHandler(SCHEMA, 1).getCircleCells(89.5, 0, 200).isEmpty());
+    assertTrue(new GeoQueryHandler(SCHEMA, 1).getCircleCells(-89.5, 0, 200).isEmpty());
+  }
+
+  @Test
+  void shouldNotFilterCirclesCrossingDateLine() {
+    assertTrue(new GeoQueryHandler(SCHEMA, 1).getCircleCells(0, 179.5, 200).isEmpty());
+    assertTrue(new GeoQueryHandler(SCHEMA, 1).getCircleCells(0, -179.5, 200).isEmpty());
+  }
+
+  @Test
+  void shouldNotFilterCirclesOverMaxCells() {
+    assertTrue(new GeoQueryHandler(SCHEMA, 0.01).getCircleCells(10, 10, 100).isEmpty());
+  }
+
+  @Test
+  void shouldTakeDistanceInKmForLatLonType() throws Exception {
+    var handler = new GeoQueryHandler(SCHEMA, 0.01);
+    var query = handler.wrapQuery(new MatchAllDocsQuery(), "{!geofilt sfield=location pt=45.15,-93.85 d=5}", new ModifiableSolrParams());
+
+    assertTrue(query instanceof GeoShapeQuery);
+    assertEquals(handler.getCircleCells(45.15, -93.85, 5), ((GeoShapeQuery) query).getCells());
+  }
+
+  @Test
+  void shouldTakeDistanceInUnitsOfFieldType() throws Exception {
+    var handler = new GeoQueryHandler(SCHEMA, 0.01);
+    var query = handler.wrapQuery(new MatchAllDocsQuery(), "{!geofilt sfield=location_mi pt=45.15,-93.85 d=5}", new ModifiableSolrParams());
+
+    assertTrue(query instanceof GeoShapeQuery);
+    assertTrue(((GeoShapeQuery) query).getCells().size() > handler.getCircleCells(45.15, -93.85, 5).size());
+  }
+
+  @Test
+  void shouldNotWrapQueryWithInvalidDistance() throws Exception {
+    var handler = new GeoQueryHandler(SCHEMA, 1);
+    var query = new MatchAllDocsQuery();
+
+    assertSame(query, handler.wrapQuery(query, "{!geofilt sfield=location pt=45.15,-93.85 d=five}", new ModifiableSolrParams()));
+    assertSame(query, handler.wrapQuery(query, "{!geofilt sfield=unknown pt=45.15,-93.85 d=5}", new ModifiableSolrParams()));
+  }
+
+  @Test
+  void shouldAddAnyCellForUnparsedLocations() throws Exception {
+    var handler = new GeoQueryHandler(SCHEMA, 1);
+    handler.wrapQuery(new MatchAllDocsQuery(), "{!geofilt sfield=location pt=45.15,-93.85 d=5}", new ModifiableSolrParams());
+
+    var solrDoc = new SolrInputDocument();
+    solrDoc.addField("location", "40.5,-73.5");
+    solrDoc.addField("location", "POINT(-93.85 45.15)");
+    var luceneDoc = new Document();
+    handler.enrichDocument(solrDoc, luceneDoc);
+
+    assertArrayEquals(new String[] { "130:106", "*" }, luceneDoc.getValues("location__geocell"));
+  }
+
+  private static class MilesField extends LatLonPointSpatialField {
+    MilesField() {
+      distanceUnits = DistanceUnits.MILES;
+    }
+  }
+}
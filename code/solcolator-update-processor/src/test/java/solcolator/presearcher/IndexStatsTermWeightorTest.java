@@ -0,0 +1,93 @@
+package solcolator.presearcher;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.junit.jupiter.api.Test;
+import solcolator.TestSchema;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexStatsTermWeightorTest {
+  private final TestSchema schema = new TestSchema().str("brand");
+  private final IndexStatsTermWeightor weightor = new IndexStatsTermWeightor(term -> 1.0);
+
+  @Test
+  void shouldWeightAllTermsAsRareWithoutStats() {
+    assertEquals(1.0, weight("nike"), 1e-9);
+  }
+
+  @Test
+  void shouldKeepTermsBelowMinDocFreqRare() throws IOException {
+    rebuild(brands("nike", "nike", "adidas"));
+
+    assertEquals(1.0, weight("adidas"), 1e-9);
+    assertTrue(weight("nike") < 1.0);
+  }
+
+  @Test
+  void shouldWeightCommonTermsByIdf() throws IOException {
+    rebuild(brands("nike", "nike", "nike", "nike", "nike", "nike", "nike", "nike", "puma", "puma"));
+
+    assertTrue(weight("nike") < weight("puma"));
+    assertTrue(weight("puma") < weight("adidas"));
+  }
+
+  @Test
+  void shouldReportChangeOfMoreThanTenPercentOfCommonTerms() throws IOException {
+    List<String> brands = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      brands.add("brand" + i);
+      brands.add("brand" + i);
+    }
+
+    assertTrue(rebuild(brands));					// the first stats
+    assertFalse(rebuild(brands));					// the same common terms
+
+    brands.add("brand20");
+    brands.add("brand20");
+    assertFalse(rebuild(brands));					// 1 of 21 terms
+
+    for (int i = 21; i < 25; i++) {
+      brands.add("brand" + i);
+      brands.add("brand" + i);
+    }
+    assertTrue(rebuild(brands));					// 4 of 25 terms
+  }
+
+  private double weight(String brand) {
+    return weightor.applyAsDouble(new Term("brand", brand));
+  }
+
+  private boolean rebuild(List<String> brands) throws IOException {
+    ByteBuffersDirectory directory = new ByteBuffersDirectory();
+
+    try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+      for (String brand : brands) {
+        Document doc = new Document();
+        doc.add(new StringField("brand", brand, Store.NO));
+        writer.addDocument(doc);
+      }
+    }
+
+    try (DirectoryReader reader = DirectoryReader.open(directory)) {
+      return weightor.rebuild(reader, schema);
+    }
+  }
+
+  private static List<String> brands(String... brands) {
+    return List.of(brands);
+  }
+}
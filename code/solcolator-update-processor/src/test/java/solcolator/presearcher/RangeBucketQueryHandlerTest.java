@@ -0,0 +1,60 @@
+package solcolator.presearcher;
+
+import org.apache.lucene.monitor.QueryTree;
+import org.apache.lucene.monitor.TermFilteredPresearcher;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RangeBucketQueryHandlerTest {
+  private static final String ANY_TERM = TermFilteredPresearcher.ANYTOKEN_FIELD + ":" + TermFilteredPresearcher.ANYTOKEN;
+  private static final long DAY_MS = 86_400_000L;
+
+  private final RangeBucketQueryHandler handler = new RangeBucketQueryHandler(null, Map.of("price", 10.0, "date", (double) DAY_MS), 4);
+
+  @Test
+  void shouldIndexRangeUnderOverlappedBuckets() {
+    assertEquals(Set.of("price__bucket:1", "price__bucket:2"), terms(handler.buildTree("price", 15, 25, TermFilteredPresearcher.DEFAULT_WEIGHTOR)));
+  }
+
+  @Test
+  void shouldNotFilterOpenRanges() {
+    assertEquals(Set.of(ANY_TERM), terms(handler.buildTree("price", Long.MIN_VALUE, 25, TermFilteredPresearcher.DEFAULT_WEIGHTOR)));
+    assertEquals(Set.of(ANY_TERM), terms(handler.buildTree("price", 15, Double.POSITIVE_INFINITY, TermFilteredPresearcher.DEFAULT_WEIGHTOR)));
+  }
+
+  @Test
+  void shouldNotFilterRangesOverMaxBuckets() {
+    assertEquals(4, terms(handler.buildTree("price", 0, 39, TermFilteredPresearcher.DEFAULT_WEIGHTOR)).size());
+    assertEquals(Set.of(ANY_TERM), terms(handler.buildTree("price", 0, 40, TermFilteredPresearcher.DEFAULT_WEIGHTOR)));
+  }
+
+  @Test
+  void shouldBucketNegativeValuesDownwards() {
+    assertEquals(-1, RangeBucketQueryHandler.getBucket(-0.5, 10));
+    assertEquals(-1, RangeBucketQueryHandler.getBucket(-10, 10));
+    assertEquals(-2, RangeBucketQueryHandler.getBucket(-10.5, 10));
+    assertEquals(Set.of("price__bucket:-2", "price__bucket:-1", "price__bucket:0"),
+        terms(handler.buildTree("price", -15, 5, TermFilteredPresearcher.DEFAULT_WEIGHTOR)));
+  }
+
+  @Test
+  void shouldBucketDatesByEpochMillis() {
+    var date = new Date(3 * DAY_MS + 5);
+
+    assertEquals(3, RangeBucketQueryHandler.getBucket(RangeBucketQueryHandler.toDouble(date), DAY_MS));
+    assertEquals(Set.of("date__bucket:3"), terms(handler.buildTree("date", date.getTime(), date.getTime() + 1, TermFilteredPresearcher.DEFAULT_WEIGHTOR)));
+  }
+
+  private static Set<String> terms(QueryTree tree) {
+    Set<String> terms = new TreeSet<>();
+    tree.collectTerms((field, term) -> terms.add(field + ":" + term.utf8ToString()));
+
+    return terms;
+  }
+}
@@ -0,0 +1,29 @@
+package solcolator.presearcher;
+
+import org.apache.lucene.index.Term;
+import org.apache.solr.schema.EnumFieldType;
+import org.junit.jupiter.api.Test;
+import solcolator.TestSchema;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SchemaTermWeightorTest {
+  private final TestSchema schema = new TestSchema().str("brand").bool("in_stock").field("priority", new EnumFieldType());
+  private final SchemaTermWeightor weightor = new SchemaTermWeightor(schema, term -> 2.0);
+
+  @Test
+  void shouldLowerWeightOfBooleanTerms() {
+    assertEquals(0.2, weightor.applyAsDouble(new Term("in_stock", "T")), 1e-9);
+  }
+
+  @Test
+  void shouldLowerWeightOfEnumTerms() {
+    assertEquals(1.0, weightor.applyAsDouble(new Term("priority", "high")), 1e-9);
+  }
+
+  @Test
+  void shouldKeepWeightOfOtherAndUnknownFields() {
+    assertEquals(2.0, weightor.applyAsDouble(new Term("brand", "nike")), 1e-9);
+    assertEquals(2.0, weightor.applyAsDouble(new Term("unknown", "nike")), 1e-9);
+  }
+}
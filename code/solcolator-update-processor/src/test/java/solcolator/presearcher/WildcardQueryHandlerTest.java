@@ -0,0 +1,43 @@
+package solcolator.presearcher;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class WildcardQueryHandlerTest {
+
+  @Test
+  void shouldSplitTrailingWildcard() {
+    assertArrayEquals(new String[] { "iph", "iph" }, WildcardQueryHandler.splitWildcard("iph*"));
+  }
+
+  @Test
+  void shouldSplitLeadingWildcard() {
+    assertArrayEquals(new String[] { "", "phon" }, WildcardQueryHandler.splitWildcard("*phon?"));
+  }
+
+  @Test
+  void shouldKeepEscapedWildcardInLiteral() {
+    assertArrayEquals(new String[] { "a*b", "a*b" }, WildcardQueryHandler.splitWildcard("a\\*b?"));
+  }
+
+  @Test
+  void shouldSplitRegexpOnSpecialChars() {
+    assertArrayEquals(new String[] { "ip", "one" }, WildcardQueryHandler.splitRegexp("ip.one"));
+  }
+
+  @Test
+  void shouldDropCharFollowedByOptionalQuantifier() {
+    assertArrayEquals(new String[] { "ab", "ab" }, WildcardQueryHandler.splitRegexp("abc?d"));
+  }
+
+  @Test
+  void shouldSkipCharacterClassesAndGroups() {
+    assertArrayEquals(new String[] { "", "phone" }, WildcardQueryHandler.splitRegexp("[a-z]+(12)?phone"));
+  }
+
+  @Test
+  void shouldNotSplitRegexpWithAlternation() {
+    assertArrayEquals(new String[] { "", "" }, WildcardQueryHandler.splitRegexp("iphone|galaxy"));
+  }
+}
@@ -0,0 +1,102 @@
+package solcolator.templates;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.Test;
+import solcolator.TestSchema;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryTemplateIndexTest {
+  private final TestSchema schema = new TestSchema().str("brand").text("title");
+  private final QueryTemplate template = QueryTemplate.parse("brandTitle", "brand:$brand AND title:$word", schema);
+  private final QueryTemplateIndex index = new QueryTemplateIndex(schema, Map.of("brandTitle", template));
+
+  @Test
+  void shouldMatchRegisteredQueriesByTerms() throws Exception {
+    index.register("q1", "brandTitle", Map.of("brand", "apple", "word", "iPhone"));
+    index.register("q2", "brandTitle", Map.of("brand", "apple", "word", "ipad"));
+
+    assertEquals(Set.of("q1"), index.match(doc("apple", "New iPhone 12")));
+    assertEquals(Set.of(), index.match(doc("samsung", "New iPhone 12")));
+  }
+
+  @Test
+  void shouldReplaceQueryOnRegisterAndForgetItOnDelete() throws Exception {
+    index.register("q1", "brandTitle", Map.of("brand", "apple", "word", "iphone"));
+    index.register("q1", "brandTitle", Map.of("brand", "apple", "word", "ipad"));
+
+    assertEquals(Set.of(), index.match(doc("apple", "iphone")));
+    assertEquals(Set.of("q1"), index.match(doc("apple", "ipad")));
+
+    assertTrue(index.delete("q1"));
+    assertFalse(index.delete("q1"));
+    assertFalse(index.contains("q1"));
+    assertEquals(0, index.getQueryCount());
+    assertEquals(Set.of(), index.match(doc("apple", "ipad")));
+  }
+
+  @Test
+  void shouldKeepSiblingQueriesWhenNodeIsPruned() throws Exception {
+    index.register("q1", "brandTitle", Map.of("brand", "apple", "word", "iphone"));
+    index.register("q2", "brandTitle", Map.of("brand", "apple", "word", "ipad"));
+    index.register("q3", "brandTitle", Map.of("brand", "apple", "word", "ipad"));
+
+    index.delete("q2");
+    index.delete("q1");
+
+    assertEquals(Set.of("q3"), index.match(doc("apple", "ipad iphone")));
+
+    index.delete("q3");
+    index.register("q4", "brandTitle", Map.of("brand", "apple", "word", "ipad"));
+
+    assertEquals(Set.of("q4"), index.match(doc("apple", "ipad")));
+  }
+
+  @Test
+  void shouldMatchAnyValueOfMultiValuedField() throws Exception {
+    index.register("q1", "brandTitle", Map.of("brand", "apple", "word", "iphone"));
+    index.register("q2", "brandTitle", Map.of("brand", "beats", "word", "iphone"));
+    var doc = new SolrInputDocument();
+    doc.addField("brand", List.of("apple", "beats"));
+    doc.addField("title", List.of("case", "for iPhone"));
+
+    assertEquals(Set.of("q1", "q2"), index.match(doc));
+  }
+
+  @Test
+  void shouldRejectParamAnalyzedToSeveralTerms() {
+    var e = assertThrows(Exception.class, () -> index.register("q1", "brandTitle", Map.of("brand", "apple", "word", "iphone case")));
+
+    assertTrue(e.getMessage().contains("must be a single term"));
+    assertFalse(index.contains("q1"));
+  }
+
+  @Test
+  void shouldRejectUnknownTemplateAndAbsentParam() {
+    assertThrows(Exception.class, () -> index.register("q1", "unknown", Map.of("brand", "apple")));
+    assertThrows(Exception.class, () -> index.register("q1", "brandTitle", Map.of("brand", "apple")));
+  }
+
+  @Test
+  void shouldRejectTemplateOnCopyFieldTarget() {
+    var copySchema = new TestSchema().str("brand").text("text").copyFieldTarget("text");
+
+    assertThrows(IllegalArgumentException.class, () -> QueryTemplate.parse("brandText", "brand:$brand AND text:$word", copySchema));
+    assertThrows(IllegalArgumentException.class, () -> QueryTemplate.parse("unknown", "brand:$brand AND color:$color", copySchema));
+  }
+
+  private static SolrInputDocument doc(String brand, String title) {
+    var doc = new SolrInputDocument();
+    doc.addField("brand", brand);
+    doc.addField("title", title);
+
+    return doc;
+  }
+}